@@ -0,0 +1,291 @@
+package eu.ncalex42.simplexbot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Global settings that apply to all modules. The config file is optional, if
+ * it does not exist the defaults are used.
+ */
+public class BotConfig {
+
+    public enum JsonParser {
+        /** parse responses with <code>org.json</code> */
+        DOM,
+        /** parse large responses in one pass without building an object tree */
+        STREAMING,
+        /** parse large responses both ways and report differences */
+        VALIDATE
+    }
+
+    public enum ProcessedMessageStoreType {
+        /** append-only journal file, see JournalProcessedMessageStore */
+        JOURNAL,
+        /** memory-mapped ring file, see MappedProcessedMessageStore */
+        MAPPED
+    }
+
+    public enum ThreadMode {
+        /** a bounded pool of platform threads for the modules */
+        PLATFORM,
+        /** one virtual thread per module iteration and request (Java 21+) */
+        VIRTUAL
+    }
+
+    public enum RegexEngine {
+        /** match every blacklist regex with <code>java.util.regex</code> */
+        PATTERN,
+        /** match the regexes together in one automaton where possible */
+        AUTOMATON,
+        /** match both ways and report differences */
+        VALIDATE
+    }
+
+    private static JsonParser jsonParser = JsonParser.DOM;
+    private static ProcessedMessageStoreType processedMessageStore = ProcessedMessageStoreType.JOURNAL;
+    private static long journalSyncIntervalMillis = 0;
+    private static ThreadMode threadMode = ThreadMode.PLATFORM;
+    private static int workerThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static long minPollIntervalSeconds = 5;
+    private static long shutdownTimeoutSeconds = 30;
+    private static RegexEngine regexEngine = RegexEngine.PATTERN;
+    private static long regexTimeBudgetMillis = 100;
+
+    public static void init(Path configFile) throws IOException {
+
+        if (!Files.exists(configFile)) {
+            return;
+        }
+
+        for (final String line : Files.lines(configFile, StandardCharsets.UTF_8).collect(Collectors.toList())) {
+
+            if (!line.contains("=")) {
+                continue;
+            }
+
+            final String[] splittedLine = line.split("=", 2);
+            final String key = splittedLine[0].strip();
+            final String value = splittedLine[1].strip();
+
+            switch (key.toLowerCase(Locale.US)) {
+
+            case BotConfigConstants.CONFIG_JSON_PARSER:
+                if (!value.isBlank()) {
+                    jsonParser = parseJsonParser(value);
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_PROCESSED_MESSAGE_STORE:
+                if (!value.isBlank()) {
+                    processedMessageStore = parseProcessedMessageStore(value);
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_JOURNAL_SYNC_INTERVAL_MILLIS:
+                if (!value.isBlank()) {
+                    journalSyncIntervalMillis = Long.parseLong(value);
+                    if (journalSyncIntervalMillis < 0) {
+                        throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName()
+                                + "] Invalid value for '" + BotConfigConstants.CONFIG_JOURNAL_SYNC_INTERVAL_MILLIS + "': " + value);
+                    }
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_THREAD_MODE:
+                if (!value.isBlank()) {
+                    threadMode = parseThreadMode(value);
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_WORKER_THREADS:
+                if (!value.isBlank()) {
+                    workerThreads = Integer.parseInt(value);
+                    if (workerThreads < 1) {
+                        throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName()
+                                + "] Invalid value for '" + BotConfigConstants.CONFIG_WORKER_THREADS + "': " + value);
+                    }
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_MIN_POLL_INTERVAL_SECONDS:
+                if (!value.isBlank()) {
+                    minPollIntervalSeconds = Long.parseLong(value);
+                    if (minPollIntervalSeconds < 0) {
+                        throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName()
+                                + "] Invalid value for '" + BotConfigConstants.CONFIG_MIN_POLL_INTERVAL_SECONDS + "': "
+                                + value);
+                    }
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_SHUTDOWN_TIMEOUT_SECONDS:
+                if (!value.isBlank()) {
+                    shutdownTimeoutSeconds = Long.parseLong(value);
+                    if (shutdownTimeoutSeconds < 0) {
+                        throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName()
+                                + "] Invalid value for '" + BotConfigConstants.CONFIG_SHUTDOWN_TIMEOUT_SECONDS + "': "
+                                + value);
+                    }
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_REGEX_ENGINE:
+                if (!value.isBlank()) {
+                    regexEngine = parseRegexEngine(value);
+                }
+                break;
+
+            case BotConfigConstants.CONFIG_REGEX_TIME_BUDGET_MILLIS:
+                if (!value.isBlank()) {
+                    regexTimeBudgetMillis = Long.parseLong(value);
+                    if (regexTimeBudgetMillis < 0) {
+                        throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName()
+                                + "] Invalid value for '" + BotConfigConstants.CONFIG_REGEX_TIME_BUDGET_MILLIS + "': "
+                                + value);
+                    }
+                }
+                break;
+
+            default: // ignore
+            }
+        }
+
+        Util.log("Bot config: *" + BotConfigConstants.CONFIG_JSON_PARSER + "*="
+                + jsonParser.name().toLowerCase(Locale.US) + " *" + BotConfigConstants.CONFIG_PROCESSED_MESSAGE_STORE
+                + "*=" + processedMessageStore.name().toLowerCase(Locale.US) + " *"
+                + BotConfigConstants.CONFIG_JOURNAL_SYNC_INTERVAL_MILLIS + "*=" + journalSyncIntervalMillis + " *"
+                + BotConfigConstants.CONFIG_THREAD_MODE + "*=" + threadMode.name().toLowerCase(Locale.US) + " *"
+                + BotConfigConstants.CONFIG_WORKER_THREADS + "*=" + workerThreads + " *"
+                + BotConfigConstants.CONFIG_MIN_POLL_INTERVAL_SECONDS + "*=" + minPollIntervalSeconds + " *"
+                + BotConfigConstants.CONFIG_SHUTDOWN_TIMEOUT_SECONDS + "*=" + shutdownTimeoutSeconds + " *"
+                + BotConfigConstants.CONFIG_REGEX_ENGINE + "*=" + regexEngine.name().toLowerCase(Locale.US) + " *"
+                + BotConfigConstants.CONFIG_REGEX_TIME_BUDGET_MILLIS + "*=" + regexTimeBudgetMillis, null, null,
+                null);
+    }
+
+    private static JsonParser parseJsonParser(String value) {
+
+        switch (value.toLowerCase(Locale.US)) {
+
+        case BotConfigConstants.VALUE_JSON_PARSER_DOM:
+            return JsonParser.DOM;
+
+        case BotConfigConstants.VALUE_JSON_PARSER_STREAMING:
+            return JsonParser.STREAMING;
+
+        case BotConfigConstants.VALUE_JSON_PARSER_VALIDATE:
+            return JsonParser.VALIDATE;
+
+        default:
+            throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName() + "] Invalid value for '"
+                    + BotConfigConstants.CONFIG_JSON_PARSER + "': " + value);
+        }
+    }
+
+    private static ProcessedMessageStoreType parseProcessedMessageStore(String value) {
+
+        switch (value.toLowerCase(Locale.US)) {
+
+        case BotConfigConstants.VALUE_PROCESSED_MESSAGE_STORE_JOURNAL:
+            return ProcessedMessageStoreType.JOURNAL;
+
+        case BotConfigConstants.VALUE_PROCESSED_MESSAGE_STORE_MAPPED:
+            return ProcessedMessageStoreType.MAPPED;
+
+        default:
+            throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName() + "] Invalid value for '"
+                    + BotConfigConstants.CONFIG_PROCESSED_MESSAGE_STORE + "': " + value);
+        }
+    }
+
+    private static ThreadMode parseThreadMode(String value) {
+
+        switch (value.toLowerCase(Locale.US)) {
+
+        case BotConfigConstants.VALUE_THREAD_MODE_PLATFORM:
+            return ThreadMode.PLATFORM;
+
+        case BotConfigConstants.VALUE_THREAD_MODE_VIRTUAL:
+            return ThreadMode.VIRTUAL;
+
+        default:
+            throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName() + "] Invalid value for '"
+                    + BotConfigConstants.CONFIG_THREAD_MODE + "': " + value);
+        }
+    }
+
+    private static RegexEngine parseRegexEngine(String value) {
+
+        switch (value.toLowerCase(Locale.US)) {
+
+        case BotConfigConstants.VALUE_REGEX_ENGINE_PATTERN:
+            return RegexEngine.PATTERN;
+
+        case BotConfigConstants.VALUE_REGEX_ENGINE_AUTOMATON:
+            return RegexEngine.AUTOMATON;
+
+        case BotConfigConstants.VALUE_REGEX_ENGINE_VALIDATE:
+            return RegexEngine.VALIDATE;
+
+        default:
+            throw new IllegalArgumentException("[" + BotConfig.class.getSimpleName() + "] Invalid value for '"
+                    + BotConfigConstants.CONFIG_REGEX_ENGINE + "': " + value);
+        }
+    }
+
+    public static JsonParser getJsonParser() {
+        return jsonParser;
+    }
+
+    public static ProcessedMessageStoreType getProcessedMessageStore() {
+        return processedMessageStore;
+    }
+
+    /**
+     * @return the minimum time between two fsyncs of a cache journal, 0 means
+     *         one fsync per processed batch of messages
+     */
+    public static long getJournalSyncIntervalMillis() {
+        return journalSyncIntervalMillis;
+    }
+
+    public static ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * @return the size of the thread pool that executes all module instances,
+     *         not used for {@link ThreadMode#VIRTUAL}
+     */
+    public static int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * @return the lower bound of the adaptive poll interval of busy groups, the
+     *         upper bound is the 'sleep-time-seconds' of the modules
+     */
+    public static long getMinPollIntervalSeconds() {
+        return minPollIntervalSeconds;
+    }
+
+    /**
+     * @return the time the modules get to finish their work when the bot is
+     *         stopped
+     */
+    public static long getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public static RegexEngine getRegexEngine() {
+        return regexEngine;
+    }
+
+    public static long getRegexTimeBudgetMillis() {
+        return regexTimeBudgetMillis;
+    }
+}
@@ -0,0 +1,30 @@
+package eu.ncalex42.simplexbot;
+
+public class BotConfigConstants {
+
+    public static final String CFG_FILE_NAME = "simplex-bot.txt";
+
+    static final String CONFIG_JSON_PARSER = "json-parser";
+    static final String CONFIG_PROCESSED_MESSAGE_STORE = "processed-message-store";
+    static final String CONFIG_JOURNAL_SYNC_INTERVAL_MILLIS = "journal-sync-interval-millis";
+    static final String CONFIG_THREAD_MODE = "thread-mode";
+    static final String CONFIG_WORKER_THREADS = "worker-threads";
+    static final String CONFIG_MIN_POLL_INTERVAL_SECONDS = "min-poll-interval-seconds";
+    static final String CONFIG_SHUTDOWN_TIMEOUT_SECONDS = "shutdown-timeout-seconds";
+    static final String CONFIG_REGEX_ENGINE = "regex-engine";
+    static final String CONFIG_REGEX_TIME_BUDGET_MILLIS = "regex-time-budget-millis";
+
+    static final String VALUE_JSON_PARSER_DOM = "dom";
+    static final String VALUE_JSON_PARSER_STREAMING = "streaming";
+    static final String VALUE_JSON_PARSER_VALIDATE = "validate";
+
+    static final String VALUE_PROCESSED_MESSAGE_STORE_JOURNAL = "journal";
+    static final String VALUE_PROCESSED_MESSAGE_STORE_MAPPED = "mapped";
+
+    static final String VALUE_THREAD_MODE_PLATFORM = "platform";
+    static final String VALUE_THREAD_MODE_VIRTUAL = "virtual";
+
+    static final String VALUE_REGEX_ENGINE_PATTERN = "pattern";
+    static final String VALUE_REGEX_ENGINE_AUTOMATON = "automaton";
+    static final String VALUE_REGEX_ENGINE_VALIDATE = "validate";
+}
@@ -0,0 +1,178 @@
+package eu.ncalex42.simplexbot;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import eu.ncalex42.simplexbot.modules.BotModule;
+
+/**
+ * Watches the config directory and its module subdirectories and passes
+ * changed config files and blacklists to the modules of the directory (see
+ * {@link BotModule#reload(Path)}), so that e.g. a blacklist can be changed
+ * while the bot is running. Editors often write a file in several steps, so
+ * the changes are collected until no config file has changed for a moment.
+ * Other files in the same directories (e.g. the journals of the modules,
+ * which are written all the time) do not delay the reload.
+ */
+public class ConfigWatcher {
+
+    /** wait for further events before the changes are applied */
+    private static final long DEBOUNCE_MILLISECONDS = 500;
+    private static final String CONFIG_FILE_EXTENSION = ".txt";
+
+    private final Map<Path, List<RegisteredModule>> modulesByDirectory = new LinkedHashMap<>();
+
+    private static class RegisteredModule {
+
+        private final String name;
+        private final BotModule module;
+        private final Path configFile;
+
+        private RegisteredModule(String name, BotModule module, Path configFile) {
+            this.name = name;
+            this.module = module;
+            this.configFile = configFile;
+        }
+    }
+
+    /**
+     * Registers a module for the changes in the directory of its config file.
+     * Must be called before {@link #start()}.
+     */
+    public void register(String name, BotModule module, Path configFile) {
+        modulesByDirectory.computeIfAbsent(normalize(configFile.getParent()), directory -> new LinkedList<>())
+                .add(new RegisteredModule(name, module, configFile));
+    }
+
+    /**
+     * Starts watching on a daemon thread. Failing to watch is logged, the bot
+     * keeps running without reloading.
+     */
+    public void start() {
+
+        final WatchService watchService;
+        final Map<WatchKey, Path> directories = new HashMap<>();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+
+            final Path mainDirectory = normalize(Path.of(Start.CONFIG_DIRECTORY));
+            final Set<Path> directoriesToWatch = new LinkedHashSet<>();
+            directoriesToWatch.add(mainDirectory); // for the global config
+            directoriesToWatch.addAll(modulesByDirectory.keySet());
+            for (final Path directory : directoriesToWatch) {
+                directories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+            }
+
+        } catch (final IOException ex) {
+            Util.logError("Failed to watch the config directory, changes take effect after a restart: " + ex, null,
+                    null, null);
+            return;
+        }
+
+        final Thread thread = new Thread(() -> watch(watchService, directories),
+                ConfigWatcher.class.getSimpleName());
+        thread.setDaemon(true); // the main thread waits for the modules
+        thread.start();
+    }
+
+    private void watch(WatchService watchService, Map<WatchKey, Path> directories) {
+
+        try {
+            while (true) {
+
+                final Set<Path> changedFiles = new LinkedHashSet<>();
+                while (changedFiles.isEmpty()) {
+                    final WatchKey key = watchService.take();
+                    collectChangedFiles(key, directories.get(key), changedFiles);
+                }
+
+                // only further changes of config files extend the wait:
+                long quietUntil = System.currentTimeMillis() + DEBOUNCE_MILLISECONDS;
+                long remainingMilliseconds;
+                while ((remainingMilliseconds = quietUntil - System.currentTimeMillis()) > 0) {
+                    final WatchKey key = watchService.poll(remainingMilliseconds, TimeUnit.MILLISECONDS);
+                    if (null == key) {
+                        break;
+                    }
+                    if (collectChangedFiles(key, directories.get(key), changedFiles)) {
+                        quietUntil = System.currentTimeMillis() + DEBOUNCE_MILLISECONDS;
+                    }
+                }
+
+                for (final Path changedFile : changedFiles) {
+                    dispatch(changedFile);
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a config file has changed
+     */
+    private static boolean collectChangedFiles(WatchKey key, Path directory, Set<Path> changedFiles) {
+
+        boolean configFileChanged = false;
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (StandardWatchEventKinds.OVERFLOW == event.kind()) {
+                continue;
+            }
+
+            // only config files and blacklists, e.g. no cache files:
+            final Path fileName = (Path) event.context();
+            if (fileName.toString().endsWith(CONFIG_FILE_EXTENSION)) {
+                changedFiles.add(directory.resolve(fileName));
+                configFileChanged = true;
+            }
+        }
+        key.reset();
+        return configFileChanged;
+    }
+
+    private void dispatch(Path changedFile) {
+
+        if (changedFile.getFileName().toString().equals(BotConfigConstants.CFG_FILE_NAME)
+                && changedFile.getParent().equals(normalize(Path.of(Start.CONFIG_DIRECTORY)))) {
+            Util.logWarning("'" + changedFile + "' has changed, the changes take effect after a restart!", null,
+                    null, null);
+            return;
+        }
+
+        final List<RegisteredModule> modules = modulesByDirectory.get(changedFile.getParent());
+        if (null == modules) {
+            return;
+        }
+
+        for (final RegisteredModule registeredModule : modules) {
+            try {
+                if (!registeredModule.module.reload(changedFile)
+                        && changedFile.getFileName().equals(registeredModule.configFile.getFileName())) {
+                    Util.logWarning("'" + changedFile + "' has changed, the changes of " + registeredModule.name
+                            + " take effect after a restart!", null, null, null);
+                }
+            } catch (final Exception ex) {
+                Util.logError(registeredModule.name + " failed to reload '" + changedFile
+                        + "', the previous settings stay active: " + ex, null, null, null);
+            }
+        }
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
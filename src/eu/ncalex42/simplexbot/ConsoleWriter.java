@@ -0,0 +1,88 @@
+package eu.ncalex42.simplexbot;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Prints the log lines on a background thread, so that a slow console does
+ * not hold up the modules. If the queue is full, the lines are printed by the
+ * caller instead, so no line is lost.
+ */
+class ConsoleWriter {
+
+    private static final int CAPACITY = 10_000;
+
+    private static final ConcurrentLinkedQueue<ConsoleLine> queue = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger size = new AtomicInteger();
+    private static final Thread writer = startWriter();
+
+    private static class ConsoleLine {
+
+        private final String text;
+        private final boolean error;
+
+        private ConsoleLine(String text, boolean error) {
+            this.text = text;
+            this.error = error;
+        }
+
+        private void print() {
+            if (error) {
+                System.err.println(text);
+            } else {
+                System.out.println(text);
+            }
+        }
+    }
+
+    private static Thread startWriter() {
+
+        final Thread thread = new Thread(ConsoleWriter::write, ConsoleWriter.class.getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @param error <code>true</code> for stderr, otherwise stdout
+     */
+    static void println(String text, boolean error) {
+
+        final ConsoleLine line = new ConsoleLine(text, error);
+        if (size.incrementAndGet() > CAPACITY) {
+            size.decrementAndGet();
+            line.print();
+            return;
+        }
+
+        queue.add(line);
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Waits until the queued lines are printed, e.g. before the JVM exits.
+     */
+    static void flush(long timeoutMilliseconds) {
+
+        final long deadlineMilliseconds = System.currentTimeMillis() + timeoutMilliseconds;
+        while ((size.get() > 0) && (System.currentTimeMillis() < deadlineMilliseconds)) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(1_000_000);
+        }
+        System.out.flush();
+        System.err.flush();
+    }
+
+    private static void write() {
+
+        while (true) {
+            ConsoleLine line;
+            while (null != (line = queue.poll())) {
+                line.print();
+                size.decrementAndGet(); // after printing, see flush()
+            }
+            LockSupport.park(); // a permit from unpark() is kept, so no line can be missed
+        }
+    }
+}
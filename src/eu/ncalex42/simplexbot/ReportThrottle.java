@@ -0,0 +1,250 @@
+package eu.ncalex42.simplexbot;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import eu.ncalex42.simplexbot.simplex.SimplexConnection;
+
+/**
+ * Keeps the reports for the bot admins from amplifying a problem: if the
+ * simplex-cli is slow, every timeout is reported via the same slow connection.
+ * Identical warnings and errors (ignoring numbers such as ids and timestamps)
+ * for the same recipients are reported once per window, followed by one
+ * message with the number of repeats. On top of that every admin contact and group has a budget of log
+ * lines, lines beyond it are suppressed and counted. The console always gets
+ * every line.
+ */
+class ReportThrottle {
+
+    private static final long WINDOW_MILLISECONDS = TimeUtil.MILLISECONDS_PER_MINUTE;
+    private static final long FLUSH_INTERVAL_MILLISECONDS = 10L * TimeUtil.MILLISECONDS_PER_SECOND;
+    private static final int MAX_FINGERPRINT_LENGTH = 200;
+
+    /** log lines per recipient at once */
+    private static final int RECIPIENT_BURST = 60;
+    /** log lines per recipient and minute in the long run */
+    private static final int RECIPIENT_LINES_PER_MINUTE = 30;
+
+    private static final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    private static final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, ReportThrottle.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        flusher.scheduleWithFixedDelay(ReportThrottle::flushRepeats, FLUSH_INTERVAL_MILLISECONDS,
+                FLUSH_INTERVAL_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the line unless an identical one was already sent to the same
+     * recipients within the current window.
+     *
+     * @param level            e.g. "ERROR", part of the fingerprint
+     * @param message          the unformatted message, used for the
+     *                         fingerprint
+     * @param formattedMessage the line to send
+     * @param format           formats the summary of the repeats like the
+     *                         message
+     */
+    static void sendDeduplicated(String level, String message, String formattedMessage, UnaryOperator<String> format,
+            SimplexConnection simplexConnection, List<String> contacts, List<String> groups) {
+
+        // the recipients are part of the key, so that modules with other admins get the line as well:
+        final String key = simplexConnection.getPort() + ":" + level + ":" + contacts + ":" + groups + ":"
+                + fingerprint(message);
+        final Fingerprint fingerprint = fingerprints.computeIfAbsent(key, k -> new Fingerprint());
+        for (final String line : fingerprint.occur(System.currentTimeMillis(), message, formattedMessage, format,
+                simplexConnection, contacts, groups)) {
+            send(line, simplexConnection, contacts, groups);
+        }
+    }
+
+    /**
+     * Sends the line to the recipients that have budget left.
+     */
+    static void send(String formattedMessage, SimplexConnection simplexConnection, List<String> contacts,
+            List<String> groups) {
+
+        final long now = System.currentTimeMillis();
+        final List<String> contactsWithBudget = withBudget(simplexConnection, contacts, "@", now);
+        final List<String> groupsWithBudget = withBudget(simplexConnection, groups, "#", now);
+        if (contactsWithBudget.isEmpty() && groupsWithBudget.isEmpty()) {
+            return;
+        }
+        simplexConnection.logToBotAdmins(formattedMessage, contactsWithBudget, groupsWithBudget);
+    }
+
+    /**
+     * Numbers (e.g. ids, timestamps and counters) are ignored.
+     */
+    private static String fingerprint(String message) {
+
+        final String fingerprint = message.replaceAll("\\d+", "#");
+        return (fingerprint.length() > MAX_FINGERPRINT_LENGTH) ? fingerprint.substring(0, MAX_FINGERPRINT_LENGTH)
+                : fingerprint;
+    }
+
+    private static List<String> withBudget(SimplexConnection simplexConnection, List<String> recipients,
+            String prefix, long now) {
+
+        final List<String> recipientsWithBudget = new LinkedList<>();
+        if (null == recipients) {
+            return recipientsWithBudget;
+        }
+
+        for (final String recipient : recipients) {
+            final Budget budget = budgets.computeIfAbsent(simplexConnection.getPort() + ":" + prefix + recipient,
+                    key -> new Budget(now));
+            final long suppressed = budget.tryAcquire(now);
+            if (suppressed < 0) {
+                continue;
+            }
+            if (suppressed > 0) {
+                final List<String> recipientOnly = List.of(recipient);
+                simplexConnection.logToBotAdmins("[" + suppressed + " log line(s) suppressed, see the console]",
+                        "@".equals(prefix) ? recipientOnly : null, "#".equals(prefix) ? recipientOnly : null);
+            }
+            recipientsWithBudget.add(recipient);
+        }
+        return recipientsWithBudget;
+    }
+
+    /**
+     * Reports the repeats of the windows that have ended and forgets idle
+     * fingerprints.
+     */
+    private static void flushRepeats() {
+
+        try {
+            final long now = System.currentTimeMillis();
+            for (final Map.Entry<String, Fingerprint> entry : fingerprints.entrySet()) {
+                final Fingerprint fingerprint = entry.getValue();
+                final String repeats;
+                final SimplexConnection simplexConnection;
+                final List<String> contacts;
+                final List<String> groups;
+                synchronized (fingerprint) {
+                    repeats = fingerprint.flush(now);
+                    simplexConnection = fingerprint.simplexConnection;
+                    contacts = fingerprint.contacts;
+                    groups = fingerprint.groups;
+                }
+
+                if (null != repeats) {
+                    send(repeats, simplexConnection, contacts, groups);
+                } else if (fingerprint.isIdle(now)) {
+                    fingerprints.remove(entry.getKey(), fingerprint);
+                }
+            }
+        } catch (final RuntimeException ex) {
+            Util.logError("Failed to report repeated log lines: " + ex, null, null, null);
+        }
+    }
+
+    private static class Fingerprint {
+
+        // guarded by 'this':
+        private long windowStart = 0;
+        private int repeats = 0;
+        private String lastMessage;
+        private UnaryOperator<String> format;
+        private SimplexConnection simplexConnection;
+        private List<String> contacts;
+        private List<String> groups;
+
+        /**
+         * @return the lines to send: the summary of the repeats of the previous
+         *         window and the line itself if it starts a new window
+         */
+        private synchronized List<String> occur(long now, String message, String formattedMessage,
+                UnaryOperator<String> messageFormat, SimplexConnection connection, List<String> messageContacts,
+                List<String> messageGroups) {
+
+            final List<String> lines = new LinkedList<>();
+            final String summary = flush(now);
+            if (null != summary) {
+                lines.add(summary);
+            }
+
+            lastMessage = message;
+            format = messageFormat;
+            simplexConnection = connection;
+            contacts = messageContacts;
+            groups = messageGroups;
+
+            if ((now - windowStart) >= WINDOW_MILLISECONDS) {
+                windowStart = now;
+                lines.add(formattedMessage);
+            } else {
+                repeats++;
+            }
+            return lines;
+        }
+
+        /**
+         * @return the summary of the repeats if the window has ended, or
+         *         <code>null</code>
+         */
+        private synchronized String flush(long now) {
+
+            if ((0 == repeats) || ((now - windowStart) < WINDOW_MILLISECONDS)) {
+                return null;
+            }
+
+            final String summary = format.apply("(repeated " + repeats + " more time(s) within "
+                    + (WINDOW_MILLISECONDS / TimeUtil.MILLISECONDS_PER_SECOND) + " s) " + lastMessage);
+            repeats = 0;
+            return summary;
+        }
+
+        private synchronized boolean isIdle(long now) {
+            return (0 == repeats) && ((now - windowStart) >= (2 * WINDOW_MILLISECONDS));
+        }
+    }
+
+    /**
+     * A token bucket that also counts the suppressed lines.
+     */
+    private static class Budget {
+
+        // guarded by 'this':
+        private double tokens = RECIPIENT_BURST;
+        private long lastRefill;
+        private long suppressed = 0;
+
+        private Budget(long now) {
+            lastRefill = now;
+        }
+
+        /**
+         * @return the number of lines suppressed since the last line that was
+         *         sent, or -1 if this line has to be suppressed as well
+         */
+        private synchronized long tryAcquire(long now) {
+
+            tokens = Math.min(RECIPIENT_BURST, tokens
+                    + (((now - lastRefill) * RECIPIENT_LINES_PER_MINUTE) / (double) TimeUtil.MILLISECONDS_PER_MINUTE));
+            lastRefill = now;
+
+            if (tokens < 1) {
+                suppressed++;
+                return -1;
+            }
+
+            tokens--;
+            final long result = suppressed;
+            suppressed = 0;
+            return result;
+        }
+    }
+}
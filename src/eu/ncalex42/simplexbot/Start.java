@@ -1,12 +1,20 @@
 package eu.ncalex42.simplexbot;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import eu.ncalex42.simplexbot.modules.BotModule;
 import eu.ncalex42.simplexbot.modules.ai.summarybot.SummaryBot;
 import eu.ncalex42.simplexbot.modules.ai.summarybot.SummaryBotConstants;
 import eu.ncalex42.simplexbot.modules.ai.translatebot.TranslateBot;
@@ -17,94 +25,174 @@ import eu.ncalex42.simplexbot.modules.moderatebot.ModerateBot;
 import eu.ncalex42.simplexbot.modules.moderatebot.ModerateBotConstants;
 import eu.ncalex42.simplexbot.modules.promotebot.PromoteBot;
 import eu.ncalex42.simplexbot.modules.promotebot.PromoteBotConstants;
+import eu.ncalex42.simplexbot.scheduler.ModuleScheduler;
+import eu.ncalex42.simplexbot.scheduler.Threads;
+import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 
 public class Start {
 
     public static final String VERSION = "1.2.2";
     public static final String CONFIG_DIRECTORY = "bot-config";
 
+    private static final long CONSOLE_FLUSH_TIMEOUT_MILLISECONDS = 5L * TimeUtil.MILLISECONDS_PER_SECOND;
+
     public static void main(String[] args) {
 
         Util.log("SimpleX-bot " + VERSION + " started at " + TimeUtil.formatUtcTimestamp() + " ヽ(♡‿♡)ノ", null, null,
                 null);
 
-        final List<Runnable> modules = initModules();
+        final ConfigWatcher configWatcher = new ConfigWatcher();
+        final Map<String, BotModule> modules = initModules(configWatcher);
 
         Util.log("Found " + modules.size() + " module(s) in "
                 + Path.of(System.getProperty("user.dir"), CONFIG_DIRECTORY), null, null, null);
 
-        final List<Thread> moduleThreads = startModules(modules);
+        final ModuleScheduler moduleScheduler = new ModuleScheduler(BotConfig.getWorkerThreads());
+        for (final Map.Entry<String, BotModule> module : modules.entrySet()) {
+            moduleScheduler.schedule(module.getKey(), module.getValue());
+        }
+        configWatcher.start();
+
+        // e.g. on SIGTERM or Ctrl+C:
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(moduleScheduler), "Shutdown"));
 
-        joinModuleThreads(moduleThreads);
+        moduleScheduler.awaitModules();
 
         Util.log("SimpleX-bot finished at " + TimeUtil.formatUtcTimestamp(), null, null, null);
+        Util.flushConsole(CONSOLE_FLUSH_TIMEOUT_MILLISECONDS);
     }
 
-    private static List<Runnable> initModules() {
-
-        final List<Runnable> modules = new LinkedList<>();
-
-        try (Stream<Path> files = Files.list(Path.of(CONFIG_DIRECTORY))) {
-
-            for (final Path filePath : files.collect(Collectors.toList())) {
-
-                switch (filePath.getFileName().toString()) {
+    /**
+     * Lets the modules finish their pending work and save their state, so that
+     * the next start does not have to process the same messages again.
+     */
+    private static void shutdown(ModuleScheduler moduleScheduler) {
+
+        Util.log("SimpleX-bot is stopping ...", null, null, null);
+        moduleScheduler.shutdown(BotConfig.getShutdownTimeoutSeconds() * TimeUtil.MILLISECONDS_PER_SECOND);
+        SimplexConnection.closeAll();
+        Util.log("SimpleX-bot stopped at " + TimeUtil.formatUtcTimestamp(), null, null, null);
+        Util.flushConsole(CONSOLE_FLUSH_TIMEOUT_MILLISECONDS);
+    }
 
-                case PromoteBotConstants.CFG_FILE_NAME:
-                    modules.add(PromoteBot.init(filePath));
-                    break;
+    /**
+     * Every module config file in the config directory or in one of its
+     * subdirectories is a module instance. Each subdirectory is a separate
+     * namespace for the blacklists and cache files of its instances, so that
+     * e.g. one ModerateBot per group can be configured. The modules are
+     * initialized in parallel, their connections are established in the
+     * background.
+     *
+     * @param configWatcher every module is registered for the changes of its
+     *                      config directory
+     * @return the modules by their instance names
+     */
+    private static Map<String, BotModule> initModules(ConfigWatcher configWatcher) {
+
+        final Map<String, BotModule> modules = new LinkedHashMap<>();
+
+        try {
+            BotConfig.init(Path.of(CONFIG_DIRECTORY, BotConfigConstants.CFG_FILE_NAME));
+        } catch (final Exception ex) {
+            Util.logError("Failed to initialize SimpleX-bot!", null, null, null);
+            Util.logError(ex.toString(), null, null, null);
+            ex.printStackTrace();
+            return Map.of();
+        }
 
-                case ModerateBotConstants.CFG_FILE_NAME:
-                    modules.add(ModerateBot.init(filePath));
-                    break;
+        final ExecutorService initExecutor = Threads.newTaskExecutor("ModuleInit");
+        try (Stream<Path> directories = Files.list(Path.of(CONFIG_DIRECTORY))) {
 
-                case MessageQuotaBotConstants.CFG_FILE_NAME:
-                    modules.add(MessageQuotaBot.init(filePath));
-                    break;
+            final List<Path> configDirectories = new LinkedList<>();
+            configDirectories.add(Path.of(CONFIG_DIRECTORY));
+            configDirectories.addAll(directories.filter(Files::isDirectory).sorted().collect(Collectors.toList()));
 
-                case SummaryBotConstants.CFG_FILE_NAME:
-                    modules.add(SummaryBot.init(filePath));
-                    break;
+            final Map<Path, CompletableFuture<BotModule>> initializations = new LinkedHashMap<>();
+            for (final Path configDirectory : configDirectories) {
+                try (Stream<Path> files = Files.list(configDirectory)) {
+                    for (final Path filePath : files.sorted().collect(Collectors.toList())) {
+                        initializations.put(filePath,
+                                CompletableFuture.supplyAsync(() -> initModuleTimed(filePath), initExecutor));
+                    }
+                }
+            }
 
-                case TranslateBotConstants.CFG_FILE_NAME:
-                    modules.add(TranslateBot.init(filePath));
-                    break;
+            // keep the order of the config files:
+            for (final Map.Entry<Path, CompletableFuture<BotModule>> initialization : initializations.entrySet()) {
 
-                // you can add your custom modules here ...
+                final BotModule module = initialization.getValue().join();
+                if (null == module) {
+                    continue;
+                }
 
-                default: // skip file
+                final Path configDirectory = initialization.getKey().getParent();
+                String name = module.getClass().getSimpleName();
+                if (!configDirectory.equals(Path.of(CONFIG_DIRECTORY))) {
+                    name += "[" + configDirectory.getFileName() + "]";
                 }
+                modules.put(name, module);
+                configWatcher.register(name, module, initialization.getKey());
             }
 
         } catch (final Exception ex) {
+            final Throwable cause = ((ex instanceof CompletionException) && (null != ex.getCause())) ? ex.getCause()
+                    : ex;
             Util.logError("Failed to initialize SimpleX-bot!", null, null, null);
-            Util.logError(ex.toString(), null, null, null);
-            ex.printStackTrace();
-            return List.of();
+            Util.logError(cause.toString(), null, null, null);
+            cause.printStackTrace();
+            return Map.of();
+        } finally {
+            initExecutor.shutdown();
         }
 
         return modules;
     }
 
-    private static List<Thread> startModules(List<Runnable> modules) {
-
-        final List<Thread> threadList = new LinkedList<>();
-        for (final Runnable module : modules) {
-            final Thread thread = new Thread(module, module.getClass().getSimpleName());
-            threadList.add(thread);
-            thread.start();
+    /**
+     * {@link #initModule(Path)} with the time it took in the log.
+     */
+    private static BotModule initModuleTimed(Path filePath) {
+
+        final long startMillis = System.currentTimeMillis();
+        try {
+            final BotModule module = initModule(filePath);
+            if (null != module) {
+                Util.log("Initialized '" + filePath + "' in " + (System.currentTimeMillis() - startMillis) + " ms",
+                        null, null, null);
+            }
+            return module;
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
         }
-        return threadList;
     }
 
-    private static void joinModuleThreads(List<Thread> moduleThreads) {
+    /**
+     * @return the module for the given config file or <code>null</code> if it
+     *         is no module config file
+     */
+    private static BotModule initModule(Path filePath) throws IOException {
 
-        for (final Thread moduleThread : moduleThreads) {
-            try {
-                moduleThread.join();
-            } catch (final InterruptedException ex) {
-                ex.printStackTrace();
-            }
+        switch (filePath.getFileName().toString()) {
+
+        case PromoteBotConstants.CFG_FILE_NAME:
+            return PromoteBot.init(filePath);
+
+        case ModerateBotConstants.CFG_FILE_NAME:
+            return ModerateBot.init(filePath);
+
+        case MessageQuotaBotConstants.CFG_FILE_NAME:
+            return MessageQuotaBot.init(filePath);
+
+        case SummaryBotConstants.CFG_FILE_NAME:
+            return SummaryBot.init(filePath);
+
+        case TranslateBotConstants.CFG_FILE_NAME:
+            return TranslateBot.init(filePath);
+
+        // you can add your custom modules here ...
+
+        default: // skip file
+            return null;
         }
     }
 }
@@ -3,15 +3,14 @@ package eu.ncalex42.simplexbot;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
-import java.util.LinkedList;
 import java.util.List;
 
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+import eu.ncalex42.simplexbot.store.JournalProcessedMessageStore;
+import eu.ncalex42.simplexbot.store.MappedProcessedMessageStore;
+import eu.ncalex42.simplexbot.store.ProcessedMessageStore;
 
 public class Util {
 
@@ -37,39 +36,57 @@ public class Util {
             List<String> groups) {
 
         final String formattedMessage = formatLogMessage(message, LogLevel.DEBUG);
-        System.out.println(formattedMessage);
+        ConsoleWriter.println(formattedMessage, false);
 
         if (null == simplexConnection) {
             return;
         }
 
-        simplexConnection.logToBotAdmins(formattedMessage, contacts, groups);
+        ReportThrottle.send(formattedMessage, simplexConnection, contacts, groups);
     }
 
     public static void logWarning(String message, SimplexConnection simplexConnection, List<String> contacts,
             List<String> groups) {
 
         final String formattedMessage = formatLogMessage(message, LogLevel.WARNING);
-        System.out.println(formattedMessage);
+        ConsoleWriter.println(formattedMessage, false);
 
         if (null == simplexConnection) {
             return;
         }
 
-        simplexConnection.logToBotAdmins(formattedMessage, contacts, groups);
+        ReportThrottle.sendDeduplicated(LogLevel.WARNING.name(), message, formattedMessage,
+                text -> formatLogMessage(text, LogLevel.WARNING), simplexConnection, contacts, groups);
     }
 
     public static void logError(String message, SimplexConnection simplexConnection, List<String> contacts,
             List<String> groups) {
         final String formattedMessage = formatLogMessage(message, LogLevel.ERROR);
 
-        System.err.println(formattedMessage);
+        ConsoleWriter.println(formattedMessage, true);
 
         if (null == simplexConnection) {
             return;
         }
 
-        simplexConnection.logToBotAdmins(formattedMessage, contacts, groups);
+        ReportThrottle.sendDeduplicated(LogLevel.ERROR.name(), message, formattedMessage,
+                text -> formatLogMessage(text, LogLevel.ERROR), simplexConnection, contacts, groups);
+    }
+
+    /**
+     * Prints the text to the console without a log prefix, e.g. an original
+     * message that is reported.
+     */
+    public static void printToConsole(String text) {
+        ConsoleWriter.println(text, false);
+    }
+
+    /**
+     * Waits until the log lines are printed to the console, e.g. before the
+     * bot exits.
+     */
+    public static void flushConsole(long timeoutMilliseconds) {
+        ConsoleWriter.flush(timeoutMilliseconds);
     }
 
     private static String formatOutputMessage(String message) {
@@ -175,104 +192,33 @@ public class Util {
         return stackTrace;
     }
 
-    public static void trimProcessedMessages(List<GroupMessage> alreadyProcessedMessages,
-            int numberOfMessagesToRetrieve) {
-
-        while (alreadyProcessedMessages.size() > (numberOfMessagesToRetrieve + 500)) { // +500 as safety buffer
-            alreadyProcessedMessages.remove(0);
-        }
-    }
-
-    public static List<GroupMessage> initCacheFile(Path fileName, String groupToProcess, int numberOfMessagesToRetrieve,
-            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting)
-            throws IOException {
-
-        if (!Files.exists(fileName)) {
-            return createInitialCacheFile(fileName, groupToProcess, numberOfMessagesToRetrieve, simplexConnection,
-                    contactsForReporting, groupsForReporting);
-        }
+    /**
+     * Opens the cache of processed messages of a module. If the cache is empty
+     * (e.g. it did not exist yet or was outdated), the latest messages of the
+     * group are treated as processed.
+     */
+    public static ProcessedMessageStore initProcessedMessageStore(Path fileName, String groupToProcess,
+            int numberOfMessagesToRetrieve, SimplexConnection simplexConnection, List<String> contactsForReporting,
+            List<String> groupsForReporting) throws IOException {
 
-        final List<String> content = Files.readAllLines(fileName, StandardCharsets.UTF_8);
-        if (2 != content.size()) {
-            Util.logWarning("Invalid cache file found, resetting cache: " + fileName.toAbsolutePath(),
-                    simplexConnection, contactsForReporting, groupsForReporting);
-            return createInitialCacheFile(fileName, groupToProcess, numberOfMessagesToRetrieve, simplexConnection,
+        final ProcessedMessageStore store;
+        if (BotConfig.ProcessedMessageStoreType.MAPPED == BotConfig.getProcessedMessageStore()) {
+            store = MappedProcessedMessageStore.open(fileName, numberOfMessagesToRetrieve, simplexConnection,
                     contactsForReporting, groupsForReporting);
-        }
-
-        final int numberFromFile = Integer.parseInt(content.get(0).strip());
-        if (numberOfMessagesToRetrieve > numberFromFile) {
-            Util.logWarning("Outdated cache file found, resetting cache: " + fileName.toAbsolutePath(),
-                    simplexConnection, contactsForReporting, groupsForReporting);
-            return createInitialCacheFile(fileName, groupToProcess, numberOfMessagesToRetrieve, simplexConnection,
+        } else {
+            store = JournalProcessedMessageStore.open(fileName, numberOfMessagesToRetrieve, simplexConnection,
                     contactsForReporting, groupsForReporting);
         }
 
-        return readAlreadyProcessedMessagesFromFile(fileName);
-    }
-
-    private static List<GroupMessage> createInitialCacheFile(Path fileName, String groupToProcess,
-            int numberOfMessagesToRetrieve, SimplexConnection simplexConnection, List<String> contactsForReporting,
-            List<String> groupsForReporting) throws IOException {
-
-        final List<GroupMessage> pastMessages = new LinkedList<>();
-        simplexConnection.getNewGroupMessages(groupToProcess, pastMessages, true, numberOfMessagesToRetrieve,
-                contactsForReporting, groupsForReporting);
-
-        writeAlreadyProcessedMessagesToFile(fileName, numberOfMessagesToRetrieve, pastMessages);
-
-        return pastMessages;
-    }
-
-    public static List<GroupMessage> readAlreadyProcessedMessagesFromFile(Path fileName) throws IOException {
-
-        final List<GroupMessage> result = new LinkedList<>();
-
-        final String fileContent = Files.readString(fileName, StandardCharsets.UTF_8);
-        final String messageCache = fileContent.split("\n", 2)[1];
-        for (final String message : messageCache.split(";")) {
-            if (message.isBlank()) {
-                continue;
-            }
-
-            final String[] metaDataPair = message.split(",");
-            if ((metaDataPair.length != 2) || metaDataPair[0].isBlank() || metaDataPair[1].isBlank()) {
-                continue;
+        if (store.getProcessedMessages().isEmpty()) {
+            final List<GroupMessage> pastMessages = simplexConnection.getGroupMessages(groupToProcess,
+                    numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting);
+            for (final GroupMessage message : pastMessages) {
+                store.add(message);
             }
-
-            final long messageId = Long.parseLong(metaDataPair[0].strip());
-            final long groupId = Long.parseLong(metaDataPair[1].strip());
-            result.add(new GroupMessage(messageId, groupId, GroupMessage.TYPE_UNKNOWN, null, null, null, null));
-        }
-
-        return result;
-    }
-
-    public static void addProcessedMessageToFile(GroupMessage messageToAdd, Path fileName,
-            int numberOfMessagesToRetrieve) throws IOException {
-
-        final List<GroupMessage> alreadyProcessedMessages = readAlreadyProcessedMessagesFromFile(fileName);
-        if (!alreadyProcessedMessages.contains(messageToAdd)) {
-            alreadyProcessedMessages.add(messageToAdd);
-            trimProcessedMessages(alreadyProcessedMessages, numberOfMessagesToRetrieve);
-            writeAlreadyProcessedMessagesToFile(fileName, numberOfMessagesToRetrieve, alreadyProcessedMessages);
-        }
-    }
-
-    private static void writeAlreadyProcessedMessagesToFile(Path fileName, int numberOfMessagesToRetrieve,
-            final List<GroupMessage> alreadyProcessedMessages) throws IOException {
-
-        final StringBuilder messageIds = new StringBuilder();
-        messageIds.append(numberOfMessagesToRetrieve);
-        messageIds.append("\n");
-        for (final GroupMessage message : alreadyProcessedMessages) {
-            messageIds.append(message.getId());
-            messageIds.append(",");
-            messageIds.append(message.getGroupId());
-            messageIds.append(";");
+            store.commit();
         }
 
-        Files.writeString(fileName, messageIds, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
-                StandardOpenOption.SYNC, StandardOpenOption.TRUNCATE_EXISTING);
+        return store;
     }
 }
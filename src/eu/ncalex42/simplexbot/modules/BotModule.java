@@ -0,0 +1,87 @@
+package eu.ncalex42.simplexbot.modules;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A module instance that is executed by the
+ * {@link eu.ncalex42.simplexbot.scheduler.ModuleScheduler}. Instead of running
+ * an endless loop on its own thread, the module does one iteration per
+ * {@link #runOnce()} and tells the scheduler when to call it again, so that
+ * many instances can share a few worker threads.
+ */
+public interface BotModule {
+
+    /**
+     * @return completes when the dependencies of the module (e.g. its SimpleX
+     *         connection) are ready, the first iteration waits for it
+     */
+    default CompletableFuture<?> whenReady() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Called once before the first iteration, e.g. to log the config and to
+     * subscribe to the group feed.
+     *
+     * @param wakeUp runs the next iteration as soon as possible, e.g. when new
+     *               messages arrived
+     */
+    void start(Runnable wakeUp) throws Exception;
+
+    /**
+     * Does one iteration of the module's work. Expected problems should be
+     * handled (and reported) by the module itself.
+     *
+     * @return the delay in milliseconds until the next iteration or a negative
+     *         value if the module has finished
+     */
+    long runOnce() throws Exception;
+
+    /**
+     * Called when the bot is stopped, possibly while an iteration is running
+     * on another thread. The module should not take new work anymore and end
+     * the current iteration soon, e.g. leave the remaining messages of a batch
+     * unprocessed, so that they are processed again after the restart.
+     */
+    default void requestStop() {
+    }
+
+    /**
+     * Called once when the bot is stopped, after the last iteration has ended
+     * (or the time is up). The module finishes its pending work until the
+     * given deadline and saves its state, e.g. commits and closes its message
+     * cache file.
+     *
+     * @param deadlineMilliseconds point in time in epoch milliseconds
+     */
+    default void stop(long deadlineMilliseconds) throws Exception {
+    }
+
+    /**
+     * Reports that the module has finished because {@link #start(Runnable)} or
+     * {@link #runOnce()} has thrown the given exception.
+     */
+    void onFinishedWithError(Exception ex);
+
+    /**
+     * Called by the {@link eu.ncalex42.simplexbot.ConfigWatcher} thread when a
+     * file in the config directory of the module has changed, while the module
+     * keeps running. The module re-reads the file into a new immutable
+     * snapshot and replaces the old one in a single write, so that an
+     * iteration never sees half of the changes. Runtime state (e.g. counters
+     * or caches) must be kept.
+     *
+     * An invalid file is reported by the module to its bot admins, the old
+     * settings stay active.
+     *
+     * @return <code>true</code> if the module has handled the change,
+     *         <code>false</code> if the file is not used by the module or the
+     *         change needs a restart
+     * @throws Exception if reloading failed unexpectedly, it is only logged to
+     *                   the console
+     */
+    default boolean reload(Path changedFile) throws Exception {
+        return false;
+    }
+}
@@ -7,12 +7,15 @@ import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import eu.ncalex42.simplexbot.Start;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
 import eu.ncalex42.simplexbot.ai.ollama.OllamaConnection;
+import eu.ncalex42.simplexbot.scheduler.CronTrigger;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.SimplexConstants;
 import eu.ncalex42.simplexbot.simplex.model.GroupMember;
@@ -23,7 +26,7 @@ import eu.ncalex42.simplexbot.simplex.model.QuotedGroupMessage;
  * This module can summarize group messages with a locally provided Ollama LLM
  * instance.
  */
-public class SummaryBot implements Runnable {
+public class SummaryBot implements BotModule {
 
     private final SimplexConnection simplexConnection;
     private final String groupToProcess;
@@ -35,7 +38,8 @@ public class SummaryBot implements Runnable {
     private final int[] hoursToRunDaily;
     private final int[] weekdaysToRunWeekly;
     private final int[] hoursToRunWeekly;
-    private final int sleepTimeInMinutes;
+    private final CronTrigger dailySchedule;
+    private final CronTrigger weeklySchedule;
     private final int numberOfMessagesToRetrieve;
     private final boolean revealModelInOutput;
     private final boolean showAiWarningInOutput;
@@ -50,10 +54,9 @@ public class SummaryBot implements Runnable {
 
     private final List<String> contactsForReporting;
     private final List<String> groupsForReporting;
-    private String lastRunDateDaily = "";
-    private int lastRunHourDaily = -1;
-    private String lastRunDateWeekly = "";
-    private int lastRunHourWeekly = -1;
+
+    private long nextDailyRunMilliseconds = 0;
+    private long nextWeeklyRunMilliseconds = 0;
 
     public static SummaryBot init(Path configFile) throws IOException {
 
@@ -66,7 +69,6 @@ public class SummaryBot implements Runnable {
         int[] hoursToRunDaily = null;
         int[] weekDaysToRunWeekly = null;
         int[] hoursToRunWeekly = null;
-        int sleepTimeInMinutes = -59;
         int numberOfMessagesToRetrieve = -3000;
         String revealModelInOutput = "";
         String showAiWarningInOutput = "";
@@ -162,12 +164,6 @@ public class SummaryBot implements Runnable {
                 }
                 break;
 
-            case SummaryBotConstants.CONFIG_SLEEP_TIME_MINUTES:
-                if (!value.isBlank()) {
-                    sleepTimeInMinutes = Integer.parseInt(value);
-                }
-                break;
-
             case SummaryBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE:
                 if (!value.isBlank()) {
                     numberOfMessagesToRetrieve = Integer.parseInt(value);
@@ -256,7 +252,7 @@ public class SummaryBot implements Runnable {
         }
 
         if ((null == weekDaysToRunDaily) || (null == hoursToRunDaily) || (null == weekDaysToRunWeekly)
-                || (null == hoursToRunWeekly) || (sleepTimeInMinutes < 0) || (numberOfMessagesToRetrieve < 0)
+                || (null == hoursToRunWeekly) || (numberOfMessagesToRetrieve < 0)
                 || (!revealModelInOutput.equalsIgnoreCase("true") && !revealModelInOutput.equalsIgnoreCase("false"))
                 || (!showAiWarningInOutput.equalsIgnoreCase("true") && !showAiWarningInOutput.equalsIgnoreCase("false"))
                 || (ollamaReadTimeoutMinutes < 0) || (ollamaCooldownSeconds < 0)
@@ -275,19 +271,19 @@ public class SummaryBot implements Runnable {
         SimplexConnection.initSimplexConnection(port);
         return new SummaryBot(SimplexConnection.get(port), groupToProcess, groupContext, contactsForOutput,
                 groupsForOutput, weekDaysToRunDaily, hoursToRunDaily, weekDaysToRunWeekly, hoursToRunWeekly,
-                sleepTimeInMinutes, numberOfMessagesToRetrieve, revealModelInOutput, showAiWarningInOutput,
-                ollamaDefaultModels, ollamaFallbackModels, ollamaReadTimeoutMinutes, ollamaCooldownSeconds,
+                numberOfMessagesToRetrieve, revealModelInOutput, showAiWarningInOutput, ollamaDefaultModels,
+                ollamaFallbackModels, ollamaReadTimeoutMinutes, ollamaCooldownSeconds,
                 defaultModelPromptCharacterLimit, secretPromptMarker, outputLanguage, contactsForReporting,
                 groupsForReporting);
     }
 
     private SummaryBot(SimplexConnection simplexConnection, String groupToProcess, String groupContext,
             List<String> contactsForOutput, List<String> groupsForOutput, int[] weekdaysToRunDaily,
-            int[] hoursToRunDaily, int[] weekdaysToRunWeekly, int[] hoursToRunWeekly, int sleepTimeInMinutes,
-            int numberOfMessagesToRetrieve, String revealModelInOutput, String showAiWarningInOutput,
-            List<String> ollamaDefaultModels, List<String> ollamaFallbackModels, int ollamaReadTimeoutMinutes,
-            int ollamaCooldownSeconds, int defaultModelPromptCharacterLimit, String secretPromptMarker,
-            String outputLanguage, List<String> contactsForReporting, List<String> groupsForReporting) {
+            int[] hoursToRunDaily, int[] weekdaysToRunWeekly, int[] hoursToRunWeekly, int numberOfMessagesToRetrieve,
+            String revealModelInOutput, String showAiWarningInOutput, List<String> ollamaDefaultModels,
+            List<String> ollamaFallbackModels, int ollamaReadTimeoutMinutes, int ollamaCooldownSeconds,
+            int defaultModelPromptCharacterLimit, String secretPromptMarker, String outputLanguage,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
         this.simplexConnection = simplexConnection;
         this.groupToProcess = groupToProcess;
         this.groupContext = groupContext;
@@ -297,7 +293,8 @@ public class SummaryBot implements Runnable {
         this.hoursToRunDaily = hoursToRunDaily;
         this.weekdaysToRunWeekly = weekdaysToRunWeekly;
         this.hoursToRunWeekly = hoursToRunWeekly;
-        this.sleepTimeInMinutes = Math.abs(sleepTimeInMinutes);
+        this.dailySchedule = new CronTrigger(weekdaysToRunDaily, hoursToRunDaily);
+        this.weeklySchedule = new CronTrigger(weekdaysToRunWeekly, hoursToRunWeekly);
         this.numberOfMessagesToRetrieve = Math.abs(numberOfMessagesToRetrieve);
         this.revealModelInOutput = revealModelInOutput.equalsIgnoreCase("false") ? false : true;
         this.showAiWarningInOutput = showAiWarningInOutput.equalsIgnoreCase("false") ? false : true;
@@ -314,7 +311,12 @@ public class SummaryBot implements Runnable {
     }
 
     @Override
-    public void run() {
+    public CompletableFuture<?> whenReady() {
+        return simplexConnection.whenConnected();
+    }
+
+    @Override
+    public void start(Runnable wakeUp) {
 
         Util.log(SummaryBot.class.getSimpleName() + " " + Start.VERSION + " has started with config: *"
                 + SummaryBotConstants.CONFIG_PORT + "*=" + simplexConnection.getPort() + " *"
@@ -327,7 +329,7 @@ public class SummaryBot implements Runnable {
                 + SummaryBotConstants.CONFIG_HOURS_DAILY + "*=" + Util.intArrayToString(hoursToRunDaily) + " *"
                 + SummaryBotConstants.CONFIG_WEEKDAYS_WEEKLY + "*=" + Util.intArrayToString(weekdaysToRunWeekly) + " *"
                 + SummaryBotConstants.CONFIG_HOURS_WEEKLY + "*=" + Util.intArrayToString(hoursToRunWeekly) + " *"
-                + SummaryBotConstants.CONFIG_SLEEP_TIME_MINUTES + "*=" + sleepTimeInMinutes + " *"
+                + "daily-schedule*='" + dailySchedule + "' *weekly-schedule*='" + weeklySchedule + "' *"
                 + SummaryBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE + "*=" + numberOfMessagesToRetrieve + " *"
                 + SummaryBotConstants.CONFIG_REVEAL_MODEL_IN_OUTPUT + "*=" + revealModelInOutput + " *"
                 + SummaryBotConstants.CONFIG_SHOW_AI_WARNING_IN_OUTPUT + "*=" + showAiWarningInOutput + " *"
@@ -343,42 +345,56 @@ public class SummaryBot implements Runnable {
                 + Util.listToString(contactsForReporting) + " *" + SummaryBotConstants.CONFIG_REPORT_TO_GROUPS + "*="
                 + Util.listToString(groupsForReporting), simplexConnection, contactsForReporting, groupsForReporting);
 
-        try {
-            while (true) {
+        final long now = System.currentTimeMillis();
+        nextDailyRunMilliseconds = dailySchedule.firstFireTime(now);
+        nextWeeklyRunMilliseconds = weeklySchedule.firstFireTime(now);
+    }
 
-                final boolean runDaily = shouldRunDaily();
-                final boolean runWeekly = shouldRunWeekly();
+    @Override
+    public long runOnce() {
 
-                if (runDaily || runWeekly) {
+        final long startTime = System.currentTimeMillis();
+        final boolean runDaily = startTime >= nextDailyRunMilliseconds;
+        final boolean runWeekly = startTime >= nextWeeklyRunMilliseconds;
 
-                    try {
+        if (runDaily || runWeekly) {
 
-                        final List<GroupMessage> messages = simplexConnection.getNewGroupMessages(groupToProcess,
-                                new LinkedList<>(), true, numberOfMessagesToRetrieve, contactsForReporting,
-                                groupsForReporting);
+            try {
 
-                        final String timestamp = TimeUtil.formatUtcTimestamp();
+                final List<GroupMessage> messages = simplexConnection.getGroupMessages(groupToProcess,
+                        numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting);
 
-                        final StringBuilder dailyPrompt = new StringBuilder();
-                        final StringBuilder weeklyPrompt = new StringBuilder();
-                        generatePrompts(messages, runDaily ? dailyPrompt : null, runWeekly ? weeklyPrompt : null);
+                final String timestamp = TimeUtil.formatUtcTimestamp();
 
-                        generateAiSummaries(dailyPrompt, "!5 day!", timestamp);
-                        generateAiSummaries(weeklyPrompt, "!3 week!", timestamp);
+                final StringBuilder dailyPrompt = new StringBuilder();
+                final StringBuilder weeklyPrompt = new StringBuilder();
+                generatePrompts(messages, runDaily ? dailyPrompt : null, runWeekly ? weeklyPrompt : null);
 
-                    } catch (final Exception ex) {
-                        Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                contactsForReporting, groupsForReporting);
-                    }
-                }
+                generateAiSummaries(dailyPrompt, "!5 day!", timestamp);
+                generateAiSummaries(weeklyPrompt, "!3 week!", timestamp);
 
-                Thread.sleep(sleepTimeInMinutes * TimeUtil.MILLISECONDS_PER_MINUTE);
+            } catch (final Exception ex) {
+                Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                        contactsForReporting, groupsForReporting);
             }
-        } catch (final Exception ex) {
-            Util.logError(
-                    SummaryBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
-                    simplexConnection, contactsForReporting, groupsForReporting);
         }
+
+        // no wake-ups until the next scheduled hour:
+        final long now = System.currentTimeMillis();
+        if (runDaily) {
+            nextDailyRunMilliseconds = dailySchedule.nextFireTime(now);
+        }
+        if (runWeekly) {
+            nextWeeklyRunMilliseconds = weeklySchedule.nextFireTime(now);
+        }
+        return Math.min(nextDailyRunMilliseconds, nextWeeklyRunMilliseconds) - now;
+    }
+
+    @Override
+    public void onFinishedWithError(Exception ex) {
+        Util.logError(
+                SummaryBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
+                simplexConnection, contactsForReporting, groupsForReporting);
     }
 
     private void generatePrompts(List<GroupMessage> messages, StringBuilder dailyPrompt, StringBuilder weeklyPrompt) {
@@ -535,58 +551,4 @@ public class SummaryBot implements Runnable {
         return aiResponseWithoutThinking.replace(secretPromptMarker, "").replace("**", "*")
                 .replaceAll("\n\\s*\\* ", "\n - ").strip();
     }
-
-    private boolean shouldRunDaily() {
-        if (checkWeekdays(weekdaysToRunDaily) && checkHours(hoursToRunDaily)
-                && checkLastRun(lastRunHourDaily, lastRunDateDaily)) {
-            lastRunDateDaily = TimeUtil.getDate();
-            lastRunHourDaily = TimeUtil.getHourOfDay();
-            return true;
-        }
-        return false;
-    }
-
-    private boolean shouldRunWeekly() {
-        if (checkWeekdays(weekdaysToRunWeekly) && checkHours(hoursToRunWeekly)
-                && checkLastRun(lastRunHourWeekly, lastRunDateWeekly)) {
-            lastRunDateWeekly = TimeUtil.getDate();
-            lastRunHourWeekly = TimeUtil.getHourOfDay();
-            return true;
-        }
-        return false;
-    }
-
-    private boolean checkWeekdays(int[] weekdaysToRun) {
-
-        if (null == weekdaysToRun) {
-            return true;
-        }
-
-        for (final int day : weekdaysToRun) {
-            if (TimeUtil.getDayOfWeek() == day) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean checkHours(int[] hoursToRun) {
-
-        if (null == hoursToRun) {
-            return true;
-        }
-
-        for (final int hour : hoursToRun) {
-            if (TimeUtil.getHourOfDay() == hour) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean checkLastRun(int lastRunHour, String lastRunDate) {
-        return (lastRunHour != TimeUtil.getHourOfDay()) || !lastRunDate.equals(TimeUtil.getDate());
-    }
 }
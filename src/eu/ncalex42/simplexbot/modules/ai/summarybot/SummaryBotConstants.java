@@ -13,7 +13,6 @@ public class SummaryBotConstants {
     static final String CONFIG_HOURS_DAILY = "hours-daily";
     static final String CONFIG_WEEKDAYS_WEEKLY = "weekdays-weekly";
     static final String CONFIG_HOURS_WEEKLY = "hours-weekly";
-    static final String CONFIG_SLEEP_TIME_MINUTES = "sleep-time-minutes";
     static final String CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE = "number-of-messages-to-retrieve";
     static final String CONFIG_REVEAL_MODEL_IN_OUTPUT = "reveal-model-in-output";
     static final String CONFIG_SHOW_AI_WARNING_IN_OUTPUT = "show-ai-warning-in-output";
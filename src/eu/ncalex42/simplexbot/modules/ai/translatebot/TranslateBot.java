@@ -7,20 +7,25 @@ import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import eu.ncalex42.simplexbot.Start;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
 import eu.ncalex42.simplexbot.ai.ollama.OllamaConnection;
+import eu.ncalex42.simplexbot.scheduler.CronTrigger;
+import eu.ncalex42.simplexbot.simplex.GroupFeed;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+import eu.ncalex42.simplexbot.store.ProcessedMessageStore;
 
 /**
  * This module can translate group messages with a locally provided Ollama LLM
  * instance.
  */
-public class TranslateBot implements Runnable {
+public class TranslateBot implements BotModule {
 
     private final SimplexConnection simplexConnection;
     private final String groupToProcess;
@@ -31,6 +36,7 @@ public class TranslateBot implements Runnable {
     private final int[] weekdaysToRun;
     private final int[] hoursToRun;
     private final int sleepTimeInSeconds;
+    private final CronTrigger schedule;
     private final int numberOfMessagesToRetrieve;
 
     private final List<String> ollamaModels;
@@ -45,6 +51,12 @@ public class TranslateBot implements Runnable {
     private final List<String> contactsForReporting;
     private final List<String> groupsForReporting;
 
+    private final Path cacheFile;
+
+    private ProcessedMessageStore processedMessageStore = null;
+    private GroupFeed.Subscription groupFeed = null;
+    private volatile boolean stopRequested = false;
+
     public static TranslateBot init(Path configFile) throws IOException {
 
         int port = -1;
@@ -227,7 +239,8 @@ public class TranslateBot implements Runnable {
         return new TranslateBot(SimplexConnection.get(port), groupToProcess, groupContext, contactsForOutput,
                 groupsForOutput, weekDaysToRun, hoursToRun, sleepTimeInSeconds, numberOfMessagesToRetrieve,
                 alwaysTranslate, persistState, ollamaModels, ollamaReadTimeoutMinutes, ollamaCooldownSeconds,
-                secretPromptMarker, outputLanguage, contactsForReporting, groupsForReporting);
+                secretPromptMarker, outputLanguage, contactsForReporting, groupsForReporting,
+                configFile.resolveSibling(TranslateBotConstants.PROCESSED_MESSAGES_CACHE_FILE));
     }
 
     private TranslateBot(SimplexConnection simplexConnection, String groupToProcess, String groupContext,
@@ -235,7 +248,7 @@ public class TranslateBot implements Runnable {
             int sleepTimeInSeconds, int numberOfMessagesToRetrieve, String alwaysTranslate, String persistState,
             List<String> ollamaModels, int ollamaReadTimeoutMinutes, int ollamaCooldownSeconds,
             String secretPromptMarker, String outputLanguage, List<String> contactsForReporting,
-            List<String> groupsForReporting) {
+            List<String> groupsForReporting, Path cacheFile) {
         this.simplexConnection = simplexConnection;
         this.groupToProcess = groupToProcess;
         this.groupContext = groupContext;
@@ -244,6 +257,7 @@ public class TranslateBot implements Runnable {
         this.weekdaysToRun = weekdaysToRun;
         this.hoursToRun = hoursToRun;
         this.sleepTimeInSeconds = Math.abs(sleepTimeInSeconds);
+        this.schedule = new CronTrigger(weekdaysToRun, hoursToRun);
         this.numberOfMessagesToRetrieve = Math.abs(numberOfMessagesToRetrieve);
         this.alwaysTranslate = alwaysTranslate.equalsIgnoreCase("true") ? true : false;
         this.persistState = persistState.equalsIgnoreCase("true") ? true : false;
@@ -256,10 +270,16 @@ public class TranslateBot implements Runnable {
                 : outputLanguage;
         this.contactsForReporting = contactsForReporting;
         this.groupsForReporting = groupsForReporting;
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public CompletableFuture<?> whenReady() {
+        return simplexConnection.whenConnected();
     }
 
     @Override
-    public void run() {
+    public void start(Runnable wakeUp) throws IOException {
 
         Util.log(TranslateBot.class.getSimpleName() + " " + Start.VERSION + " has started with config: *"
                 + TranslateBotConstants.CONFIG_PORT + "*=" + simplexConnection.getPort() + " *"
@@ -270,6 +290,7 @@ public class TranslateBot implements Runnable {
                 + TranslateBotConstants.CONFIG_OUTPUT_GROUPS + "*=" + Util.listToString(groupsForOutput) + " *"
                 + TranslateBotConstants.CONFIG_WEEKDAYS + "*=" + Util.intArrayToString(weekdaysToRun) + " *"
                 + TranslateBotConstants.CONFIG_HOURS + "*=" + Util.intArrayToString(hoursToRun) + " *"
+                + "schedule*='" + schedule + "' *"
                 + TranslateBotConstants.CONFIG_SLEEP_TIME_SECONDS + "*=" + sleepTimeInSeconds + " *"
                 + TranslateBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE + "*=" + numberOfMessagesToRetrieve + " *"
                 + TranslateBotConstants.CONFIG_ALWAYS_TRANSLATE + "*=" + alwaysTranslate + " *"
@@ -283,64 +304,98 @@ public class TranslateBot implements Runnable {
                 + " *" + TranslateBotConstants.CONFIG_REPORT_TO_GROUPS + "*=" + Util.listToString(groupsForReporting),
                 simplexConnection, contactsForReporting, groupsForReporting);
 
-        try {
-
-            final List<GroupMessage> alreadyProcessedMessages;
-            if (persistState) {
-                alreadyProcessedMessages = Util.initCacheFile(
-                        Path.of(Start.CONFIG_DIRECTORY, TranslateBotConstants.PROCESSED_MESSAGES_CACHE_FILE),
-                        groupToProcess, numberOfMessagesToRetrieve, simplexConnection, contactsForReporting,
-                        groupsForReporting);
-            } else {
-                try {
-                    Files.deleteIfExists(
-                            Path.of(Start.CONFIG_DIRECTORY, TranslateBotConstants.PROCESSED_MESSAGES_CACHE_FILE));
-                } catch (final Exception ex) {
-                    Util.logWarning("Unused cache file could not be deleted: " + Util.getStackTraceAsString(ex),
-                            simplexConnection, contactsForReporting, groupsForReporting);
-                }
-                alreadyProcessedMessages = new LinkedList<>();
+        final List<GroupMessage> alreadyProcessedMessages;
+        if (persistState) {
+            processedMessageStore = Util.initProcessedMessageStore(cacheFile, groupToProcess,
+                    numberOfMessagesToRetrieve, simplexConnection, contactsForReporting, groupsForReporting);
+            alreadyProcessedMessages = processedMessageStore.getProcessedMessages();
+        } else {
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (final Exception ex) {
+                Util.logWarning("Unused cache file could not be deleted: " + Util.getStackTraceAsString(ex),
+                        simplexConnection, contactsForReporting, groupsForReporting);
             }
+            alreadyProcessedMessages = new LinkedList<>();
+        }
 
-            while (true) {
+        groupFeed = GroupFeed.get(simplexConnection, groupToProcess).subscribe(alreadyProcessedMessages, false,
+                numberOfMessagesToRetrieve, sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND, contactsForReporting,
+                groupsForReporting);
+        groupFeed.keepLatestMessagesOnly();
+        groupFeed.onNewMessages(() -> {
+            // outside of the configured hours new messages wait for the next scheduled hour:
+            if (schedule.matches(System.currentTimeMillis())) {
+                wakeUp.run();
+            }
+        });
+    }
 
-                if (shouldRun()) {
+    @Override
+    public long runOnce() {
 
-                    try {
+        // outside of the configured hours the feed keeps the latest messages until they are reached again:
+        final long now = System.currentTimeMillis();
+        if (!schedule.matches(now)) {
+            return schedule.nextFireTime(now) - now;
+        }
 
-                        for (final GroupMessage message : simplexConnection.getNewGroupMessages(groupToProcess,
-                                alreadyProcessedMessages, false, numberOfMessagesToRetrieve, contactsForReporting,
-                                groupsForReporting)) {
+        try {
 
-                            try {
-                                translateMessage(message);
-                            } catch (final Exception ex) {
-                                Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex),
-                                        simplexConnection, contactsForReporting, groupsForReporting);
-                            } finally {
-                                if (persistState) {
-                                    Util.addProcessedMessageToFile(message,
-                                            Path.of(Start.CONFIG_DIRECTORY,
-                                                    TranslateBotConstants.PROCESSED_MESSAGES_CACHE_FILE),
-                                            numberOfMessagesToRetrieve);
-                                }
-                            }
+            for (final GroupMessage message : groupFeed.awaitNewMessages(0)) {
 
-                        }
+                if (stopRequested) {
+                    break; // the remaining messages are translated after the restart
+                }
 
-                    } catch (final Exception ex) {
-                        Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                contactsForReporting, groupsForReporting);
+                try {
+                    translateMessage(message);
+                } catch (final Exception ex) {
+                    Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                            contactsForReporting, groupsForReporting);
+                } finally {
+                    if (persistState) {
+                        processedMessageStore.add(message);
                     }
                 }
 
-                Thread.sleep(sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND);
             }
+
+            if (persistState) {
+                processedMessageStore.commit(); // once per batch
+            }
+
         } catch (final Exception ex) {
-            Util.logError(
-                    TranslateBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
-                    simplexConnection, contactsForReporting, groupsForReporting);
+            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                    contactsForReporting, groupsForReporting);
         }
+
+        // new messages wake the module up earlier, the interval adapts to the activity of the group:
+        return groupFeed.getPollDelayMilliseconds();
+    }
+
+    @Override
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    @Override
+    public void stop(long deadlineMilliseconds) throws IOException {
+
+        if (null != groupFeed) {
+            groupFeed.close();
+        }
+
+        if (null != processedMessageStore) {
+            processedMessageStore.close(); // commits the translated messages
+        }
+    }
+
+    @Override
+    public void onFinishedWithError(Exception ex) {
+        Util.logError(
+                TranslateBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
+                simplexConnection, contactsForReporting, groupsForReporting);
     }
 
     private void translateMessage(GroupMessage message) {
@@ -414,41 +469,4 @@ public class TranslateBot implements Runnable {
         sanitizedAiResponse = sanitizedAiResponse.equals("<translated text>") ? "" : sanitizedAiResponse;
         return sanitizedAiResponse;
     }
-
-    private boolean shouldRun() {
-        if (checkWeekdays() && checkHours()) {
-            return true;
-        }
-        return false;
-    }
-
-    private boolean checkWeekdays() {
-
-        if (null == weekdaysToRun) {
-            return true;
-        }
-
-        for (final int day : weekdaysToRun) {
-            if (TimeUtil.getDayOfWeek() == day) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    private boolean checkHours() {
-
-        if (null == hoursToRun) {
-            return true;
-        }
-
-        for (final int hour : hoursToRun) {
-            if (TimeUtil.getHourOfDay() == hour) {
-                return true;
-            }
-        }
-
-        return false;
-    }
 }
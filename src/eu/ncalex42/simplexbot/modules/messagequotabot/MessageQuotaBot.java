@@ -10,11 +10,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import eu.ncalex42.simplexbot.Start;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
+import eu.ncalex42.simplexbot.simplex.GroupFeed;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.model.GroupMember;
 import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
@@ -23,38 +26,29 @@ import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
  * This module can downgrade members to observers if they exceed their message
  * quota.
  */
-public class MessageQuotaBot implements Runnable {
+public class MessageQuotaBot implements BotModule {
 
     private final SimplexConnection simplexConnection;
     private final String groupToProcess;
     private final int sleepTimeInSeconds;
     private final int numberOfMessagesToRetrieve;
 
-    private final int messageQuotaPerHour;
-    private final int messageQuotaPerDay;
-    private final int spamQuotaPerHour;
-    private final int spamQuotaPerDay;
-    private final Map<GroupMember, List<GroupMessage>> quotaRecord = new HashMap<>();
-    private final List<String> contactsForOutput;
-    private final List<String> groupsForOutput;
-    private final boolean silentMode;
+    private final Map<GroupMember, List<GroupMessage>> quotaRecord = new HashMap<>(); // kept on reloading
+    private volatile MessageQuotas quotas; // replaced as a whole on reloading
 
     private final List<String> contactsForReporting;
     private final List<String> groupsForReporting;
 
+    private final Path configFile;
+
+    private GroupFeed.Subscription groupFeed = null;
+
     public static MessageQuotaBot init(Path configFile) throws IOException {
 
         // read config file:
         int port = -1;
         String groupToProcess = null;
-        int messageQuotaPerHour = -1;
-        int messageQuotaPerDay = -1;
-        int spamQuotaPerHour = -1;
-        int spamQuotaPerDay = -1;
-        final List<String> contactsForOutput = new LinkedList<>();
-        final List<String> groupsForOutput = new LinkedList<>();
         int sleepTimeInSeconds = -30;
-        String silentmode = "";
         int numberOfMessagesToRetrieve = Math.negateExact(GroupMessage.DEFAULT_NUMBER_OF_GROUPMESSAGES_TO_RETRIEVE);
         final List<String> contactsForReporting = new LinkedList<>();
         final List<String> groupsForReporting = new LinkedList<>();
@@ -79,50 +73,12 @@ public class MessageQuotaBot implements Runnable {
                 groupToProcess = value;
                 break;
 
-            case MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR:
-                messageQuotaPerHour = Integer.parseInt(value);
-                break;
-
-            case MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY:
-                messageQuotaPerDay = Integer.parseInt(value);
-                break;
-
-            case MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR:
-                spamQuotaPerHour = Integer.parseInt(value);
-                break;
-
-            case MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY:
-                spamQuotaPerDay = Integer.parseInt(value);
-                break;
-
-            case MessageQuotaBotConstants.CONFIG_OUTPUT_CONTACTS:
-                final String[] names = value.split(",");
-                for (final String name : names) {
-                    if (!name.isBlank()) {
-                        contactsForOutput.add(name.strip());
-                    }
-                }
-                break;
-
-            case MessageQuotaBotConstants.CONFIG_OUTPUT_GROUPS:
-                final String[] groups = value.split(",");
-                for (final String group : groups) {
-                    if (!group.isBlank()) {
-                        groupsForOutput.add(group.strip());
-                    }
-                }
-                break;
-
             case MessageQuotaBotConstants.CONFIG_SLEEP_TIME_SECONDS:
                 if (!value.isBlank()) {
                     sleepTimeInSeconds = Integer.parseInt(value);
                 }
                 break;
 
-            case MessageQuotaBotConstants.CONFIG_SILENTMODE:
-                silentmode = value;
-                break;
-
             case MessageQuotaBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE:
                 if (!value.isBlank()) {
                     numberOfMessagesToRetrieve = Integer.parseInt(value);
@@ -151,106 +107,129 @@ public class MessageQuotaBot implements Runnable {
             }
         }
 
-        if ((port < 0) || (null == groupToProcess) || groupToProcess.isBlank() || (messageQuotaPerHour < 0)
-                || (messageQuotaPerDay < 0) || (spamQuotaPerHour < 0) || (spamQuotaPerDay < 0)) {
+        if ((port < 0) || (null == groupToProcess) || groupToProcess.isBlank()) {
             throw new IllegalArgumentException("[" + MessageQuotaBot.class.getSimpleName()
                     + "] Some mandatory config properties are missing or are invalid! Required are: '"
-                    + MessageQuotaBotConstants.CONFIG_PORT + "', '" + MessageQuotaBotConstants.CONFIG_GROUP + "', '"
-                    + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR + "', '"
-                    + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY + "', '"
-                    + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR + "' and '"
-                    + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY + "'");
+                    + MessageQuotaBotConstants.CONFIG_PORT + "' and '" + MessageQuotaBotConstants.CONFIG_GROUP + "'");
         }
 
-        if ((sleepTimeInSeconds < 0) || (!silentmode.equalsIgnoreCase("true") && !silentmode.equalsIgnoreCase("false"))
-                || (numberOfMessagesToRetrieve < 0)) {
+        // quotas, silent mode and output:
+        final MessageQuotas quotas = MessageQuotas.read(configFile);
+
+        if ((sleepTimeInSeconds < 0) || (numberOfMessagesToRetrieve < 0)) {
             Util.logWarning("[" + MessageQuotaBot.class.getSimpleName()
                     + "] Some config properties are missing or are invalid, using defaults!", null, null, null);
         }
 
         SimplexConnection.initSimplexConnection(port);
-        return new MessageQuotaBot(SimplexConnection.get(port), groupToProcess, messageQuotaPerHour, messageQuotaPerDay,
-                spamQuotaPerHour, spamQuotaPerDay, contactsForOutput, groupsForOutput, sleepTimeInSeconds, silentmode,
-                numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting);
+        return new MessageQuotaBot(SimplexConnection.get(port), groupToProcess, quotas, sleepTimeInSeconds,
+                numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting, configFile);
     }
 
-    private MessageQuotaBot(SimplexConnection simplexConnection, String groupToProcess, int messageQuotaPerHour,
-            int messageQuotaPerDay, int spamQuotaPerHour, int spamQuotaPerDay, List<String> contactsForOutput,
-            List<String> groupsForOutput, int sleepTimeInSeconds, String silentMode, int numberOfMessagesToRetrieve,
-            List<String> contactsForReporting, List<String> groupsForReporting) {
+    private MessageQuotaBot(SimplexConnection simplexConnection, String groupToProcess, MessageQuotas quotas,
+            int sleepTimeInSeconds, int numberOfMessagesToRetrieve, List<String> contactsForReporting,
+            List<String> groupsForReporting, Path configFile) {
         this.simplexConnection = simplexConnection;
         this.groupToProcess = groupToProcess;
-        this.messageQuotaPerHour = messageQuotaPerHour;
-        this.messageQuotaPerDay = messageQuotaPerDay;
-        this.spamQuotaPerHour = spamQuotaPerHour;
-        this.spamQuotaPerDay = spamQuotaPerDay;
-        this.contactsForOutput = contactsForOutput;
-        this.groupsForOutput = groupsForOutput;
+        this.quotas = quotas;
         this.sleepTimeInSeconds = Math.abs(sleepTimeInSeconds);
-        this.silentMode = silentMode.equalsIgnoreCase("false") ? false : true;
         this.numberOfMessagesToRetrieve = Math.abs(numberOfMessagesToRetrieve);
         this.contactsForReporting = contactsForReporting;
         this.groupsForReporting = groupsForReporting;
+        this.configFile = configFile;
+    }
+
+    @Override
+    public CompletableFuture<?> whenReady() {
+        return simplexConnection.whenConnected();
     }
 
     @Override
-    public void run() {
+    public void start(Runnable wakeUp) {
 
         Util.log(MessageQuotaBot.class.getSimpleName() + " " + Start.VERSION + " has started with config: *"
                 + MessageQuotaBotConstants.CONFIG_PORT + "*=" + simplexConnection.getPort() + " *"
-                + MessageQuotaBotConstants.CONFIG_GROUP + "*='" + groupToProcess + "' *"
-                + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR + "*=" + messageQuotaPerHour + " *"
-                + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY + "*=" + messageQuotaPerDay + " *"
-                + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR + "*=" + spamQuotaPerHour + " *"
-                + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY + "*=" + spamQuotaPerDay + " *"
-                + MessageQuotaBotConstants.CONFIG_OUTPUT_CONTACTS + "*=" + Util.listToString(contactsForOutput) + " *"
-                + MessageQuotaBotConstants.CONFIG_OUTPUT_GROUPS + "*=" + Util.listToString(groupsForOutput) + " *"
+                + MessageQuotaBotConstants.CONFIG_GROUP + "*='" + groupToProcess + "' " + quotas.toLogString() + " *"
                 + MessageQuotaBotConstants.CONFIG_SLEEP_TIME_SECONDS + "*=" + sleepTimeInSeconds + " *"
-                + MessageQuotaBotConstants.CONFIG_SILENTMODE + "*=" + silentMode + " *"
                 + MessageQuotaBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE + "*=" + numberOfMessagesToRetrieve
                 + " *" + MessageQuotaBotConstants.CONFIG_REPORT_TO_CONTACTS + "*="
                 + Util.listToString(contactsForReporting) + " *" + MessageQuotaBotConstants.CONFIG_REPORT_TO_GROUPS
                 + "*=" + Util.listToString(groupsForReporting), simplexConnection, contactsForReporting,
                 groupsForReporting);
 
-        final List<GroupMessage> alreadyProcessedMessages = new LinkedList<>();
+        groupFeed = GroupFeed.get(simplexConnection, groupToProcess).subscribe(List.of(), true,
+                numberOfMessagesToRetrieve, sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND, contactsForReporting,
+                groupsForReporting);
+        groupFeed.onNewMessages(wakeUp);
+    }
 
-        try {
-            while (true) {
-                try {
+    @Override
+    public long runOnce() {
 
-                    final List<GroupMessage> newMessages = simplexConnection.getNewGroupMessages(groupToProcess,
-                            alreadyProcessedMessages, true, numberOfMessagesToRetrieve, contactsForReporting,
-                            groupsForReporting);
+        try {
 
-                    if (!newMessages.isEmpty()) {
-                        for (final GroupMessage message : newMessages) {
+            final List<GroupMessage> newMessages = groupFeed.awaitNewMessages(0);
 
-                            try {
-                                addNewMessage(message);
-                            } catch (final Exception ex) {
-                                Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex),
-                                        simplexConnection, contactsForReporting, groupsForReporting);
-                            }
-                        }
+            if (!newMessages.isEmpty()) {
+                for (final GroupMessage message : newMessages) {
 
-                        processMessages();
+                    try {
+                        addNewMessage(message);
+                    } catch (final Exception ex) {
+                        Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                                contactsForReporting, groupsForReporting);
                     }
-
-                } catch (final Exception ex) {
-                    Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                            contactsForReporting, groupsForReporting);
                 }
 
-                Thread.sleep(sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND);
+                processMessages();
             }
 
         } catch (final Exception ex) {
-            Util.logError(
-                    MessageQuotaBot.class.getSimpleName() + " has finished with error: "
-                            + Util.getStackTraceAsString(ex),
-                    simplexConnection, contactsForReporting, groupsForReporting);
+            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                    contactsForReporting, groupsForReporting);
+        }
+
+        // new messages wake the module up earlier, the interval adapts to the activity of the group:
+        return groupFeed.getPollDelayMilliseconds();
+    }
+
+    @Override
+    public void stop(long deadlineMilliseconds) {
+
+        if (null != groupFeed) {
+            groupFeed.close();
+        }
+    }
+
+    @Override
+    public void onFinishedWithError(Exception ex) {
+        Util.logError(
+                MessageQuotaBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
+                simplexConnection, contactsForReporting, groupsForReporting);
+    }
+
+    @Override
+    public boolean reload(Path changedFile) {
+
+        // only files of the own config directory are passed:
+        if (!changedFile.getFileName().equals(configFile.getFileName())) {
+            return false;
+        }
+
+        final MessageQuotas newQuotas;
+        try {
+            newQuotas = MessageQuotas.read(configFile);
+        } catch (final IOException | RuntimeException ex) {
+            Util.logError(MessageQuotaBot.class.getSimpleName() + " failed to reload the quotas of group '"
+                    + groupToProcess + "', the previous ones stay active: " + ex, simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            return true;
         }
+        quotas = newQuotas;
+        Util.log(MessageQuotaBot.class.getSimpleName() + " has reloaded the quotas of group '" + groupToProcess + "': "
+                + newQuotas.toLogString() + " (changes of other settings take effect after a restart)",
+                simplexConnection, contactsForReporting, groupsForReporting);
+        return true;
     }
 
     private void addNewMessage(GroupMessage message) {
@@ -269,6 +248,7 @@ public class MessageQuotaBot implements Runnable {
 
     private void processMessages() {
 
+        final MessageQuotas currentQuotas = quotas; // the same quotas for all members
         final List<GroupMember> membersToClear = new LinkedList<>();
         for (final GroupMember member : quotaRecord.keySet()) {
 
@@ -315,16 +295,16 @@ public class MessageQuotaBot implements Runnable {
             for (final Integer spamCount : spamCountWithinDayMap.values()) {
                 maxSpamCountWithinDay = (spamCount > maxSpamCountWithinDay) ? spamCount : maxSpamCountWithinDay;
             }
-            final boolean spam = (maxSpamCountWithinHour > spamQuotaPerHour)
-                    || (maxSpamCountWithinDay > spamQuotaPerDay);
+            final boolean spam = (maxSpamCountWithinHour > currentQuotas.getSpamQuotaPerHour())
+                    || (maxSpamCountWithinDay > currentQuotas.getSpamQuotaPerDay());
 
             // check quota:
-            if ((messageCountWithinHour > messageQuotaPerHour) || (messageCountWithinDay > messageQuotaPerDay)
-                    || spam) {
+            if ((messageCountWithinHour > currentQuotas.getMessageQuotaPerHour())
+                    || (messageCountWithinDay > currentQuotas.getMessageQuotaPerDay()) || spam) {
                 if (member.isPresent() && !member.hasPrivileges()) {
                     if (!GroupMember.ROLE_OBSERVER.equals(member.getRole())) {
-                        downgradeMember(member, messageCountWithinHour, messageCountWithinDay, maxSpamCountWithinHour,
-                                maxSpamCountWithinDay, spam);
+                        downgradeMember(currentQuotas, member, messageCountWithinHour, messageCountWithinDay,
+                                maxSpamCountWithinHour, maxSpamCountWithinDay, spam);
                     } else {
                         Util.logWarning(
                                 "Member *'" + member.getDisplayName() + "'* [" + member.getLocalName() + "] in group *'"
@@ -370,8 +350,8 @@ public class MessageQuotaBot implements Runnable {
         }
     }
 
-    private void downgradeMember(GroupMember member, int messageCountWithinHour, int messageCountWithinDay,
-            int maxSpamCountWithinHour, int maxSpamCountWithinDay, boolean spam) {
+    private void downgradeMember(MessageQuotas currentQuotas, GroupMember member, int messageCountWithinHour,
+            int messageCountWithinDay, int maxSpamCountWithinHour, int maxSpamCountWithinDay, boolean spam) {
 
         final String downgradeMessage = "!6 Downgrading! member *'" + member.getDisplayName() + "'* ["
                 + member.getLocalName() + "] in group *'" + groupToProcess
@@ -379,15 +359,15 @@ public class MessageQuotaBot implements Runnable {
                 + messageCountWithinDay + " maxSpamCountWithinHour=" + maxSpamCountWithinHour
                 + " maxSpamCountWithinDay=" + maxSpamCountWithinDay;
         Util.log(downgradeMessage, simplexConnection, contactsForReporting, groupsForReporting);
-        Util.outputToContactsAndGroups(downgradeMessage, simplexConnection, contactsForOutput, groupsForOutput,
-                contactsForReporting, groupsForReporting);
+        Util.outputToContactsAndGroups(downgradeMessage, simplexConnection, currentQuotas.getContactsForOutput(),
+                currentQuotas.getGroupsForOutput(), contactsForReporting, groupsForReporting);
 
         if (!simplexConnection.changeGroupMemberRole(groupToProcess, member.getLocalName(), GroupMember.ROLE_OBSERVER,
                 contactsForReporting, groupsForReporting)) {
             return;
         }
 
-        if (!silentMode) {
+        if (!currentQuotas.isSilentMode()) {
             final String reason = spam ? "Spam detected" : "Message quota reached";
             simplexConnection.sendToGroup(groupToProcess,
                     "!1 " + reason + "! by member '" + member.getDisplayName() + "' => downgrading to 'observer'!",
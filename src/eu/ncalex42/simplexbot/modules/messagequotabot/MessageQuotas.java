@@ -0,0 +1,167 @@
+package eu.ncalex42.simplexbot.modules.messagequotabot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import eu.ncalex42.simplexbot.Util;
+
+/**
+ * The settings of a {@link MessageQuotaBot} that can be reloaded while it is
+ * running: the quotas, the silent mode and the output. Immutable, a reload
+ * replaces them as a whole.
+ */
+public class MessageQuotas {
+
+    private final int messageQuotaPerHour;
+    private final int messageQuotaPerDay;
+    private final int spamQuotaPerHour;
+    private final int spamQuotaPerDay;
+    private final List<String> contactsForOutput;
+    private final List<String> groupsForOutput;
+    private final boolean silentMode;
+
+    private MessageQuotas(int messageQuotaPerHour, int messageQuotaPerDay, int spamQuotaPerHour, int spamQuotaPerDay,
+            List<String> contactsForOutput, List<String> groupsForOutput, boolean silentMode) {
+        this.messageQuotaPerHour = messageQuotaPerHour;
+        this.messageQuotaPerDay = messageQuotaPerDay;
+        this.spamQuotaPerHour = spamQuotaPerHour;
+        this.spamQuotaPerDay = spamQuotaPerDay;
+        this.contactsForOutput = Collections.unmodifiableList(contactsForOutput);
+        this.groupsForOutput = Collections.unmodifiableList(groupsForOutput);
+        this.silentMode = silentMode;
+    }
+
+    /**
+     * Reads the quota settings from the module config file, other settings are
+     * ignored.
+     */
+    public static MessageQuotas read(Path configFile) throws IOException {
+
+        int messageQuotaPerHour = -1;
+        int messageQuotaPerDay = -1;
+        int spamQuotaPerHour = -1;
+        int spamQuotaPerDay = -1;
+        final List<String> contactsForOutput = new LinkedList<>();
+        final List<String> groupsForOutput = new LinkedList<>();
+        String silentmode = "";
+
+        for (final String line : Files.lines(configFile, StandardCharsets.UTF_8).collect(Collectors.toList())) {
+
+            if (!line.contains("=")) {
+                continue;
+            }
+
+            final String[] splittedLine = line.split("=", 2);
+            final String key = splittedLine[0].strip();
+            final String value = splittedLine[1].strip();
+
+            switch (key.toLowerCase(Locale.US)) {
+
+            case MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR:
+                messageQuotaPerHour = Integer.parseInt(value);
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY:
+                messageQuotaPerDay = Integer.parseInt(value);
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR:
+                spamQuotaPerHour = Integer.parseInt(value);
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY:
+                spamQuotaPerDay = Integer.parseInt(value);
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_OUTPUT_CONTACTS:
+                final String[] names = value.split(",");
+                for (final String name : names) {
+                    if (!name.isBlank()) {
+                        contactsForOutput.add(name.strip());
+                    }
+                }
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_OUTPUT_GROUPS:
+                final String[] groups = value.split(",");
+                for (final String group : groups) {
+                    if (!group.isBlank()) {
+                        groupsForOutput.add(group.strip());
+                    }
+                }
+                break;
+
+            case MessageQuotaBotConstants.CONFIG_SILENTMODE:
+                silentmode = value;
+                break;
+
+            default: // ignore
+            }
+        }
+
+        if ((messageQuotaPerHour < 0) || (messageQuotaPerDay < 0) || (spamQuotaPerHour < 0) || (spamQuotaPerDay < 0)) {
+            throw new IllegalArgumentException("[" + MessageQuotaBot.class.getSimpleName()
+                    + "] Some mandatory config properties are missing or are invalid! Required are: '"
+                    + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR + "', '"
+                    + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY + "', '"
+                    + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR + "' and '"
+                    + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY + "'");
+        }
+
+        if (!silentmode.equalsIgnoreCase("true") && !silentmode.equalsIgnoreCase("false")) {
+            Util.logWarning("[" + MessageQuotaBot.class.getSimpleName()
+                    + "] Some config properties are missing or are invalid, using defaults!", null, null, null);
+        }
+
+        return new MessageQuotas(messageQuotaPerHour, messageQuotaPerDay, spamQuotaPerHour, spamQuotaPerDay,
+                contactsForOutput, groupsForOutput, silentmode.equalsIgnoreCase("false") ? false : true);
+    }
+
+    public int getMessageQuotaPerHour() {
+        return messageQuotaPerHour;
+    }
+
+    public int getMessageQuotaPerDay() {
+        return messageQuotaPerDay;
+    }
+
+    public int getSpamQuotaPerHour() {
+        return spamQuotaPerHour;
+    }
+
+    public int getSpamQuotaPerDay() {
+        return spamQuotaPerDay;
+    }
+
+    public List<String> getContactsForOutput() {
+        return contactsForOutput;
+    }
+
+    public List<String> getGroupsForOutput() {
+        return groupsForOutput;
+    }
+
+    public boolean isSilentMode() {
+        return silentMode;
+    }
+
+    /**
+     * @return the settings for the log
+     */
+    public String toLogString() {
+        return "*" + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_HOUR + "*=" + messageQuotaPerHour + " *"
+                + MessageQuotaBotConstants.CONFIG_MESSAGE_QUOTA_PER_DAY + "*=" + messageQuotaPerDay + " *"
+                + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_HOUR + "*=" + spamQuotaPerHour + " *"
+                + MessageQuotaBotConstants.CONFIG_SPAM_QUOTA_PER_DAY + "*=" + spamQuotaPerDay + " *"
+                + MessageQuotaBotConstants.CONFIG_OUTPUT_CONTACTS + "*=" + Util.listToString(contactsForOutput) + " *"
+                + MessageQuotaBotConstants.CONFIG_OUTPUT_GROUPS + "*=" + Util.listToString(groupsForOutput) + " *"
+                + MessageQuotaBotConstants.CONFIG_SILENTMODE + "*=" + silentMode;
+    }
+}
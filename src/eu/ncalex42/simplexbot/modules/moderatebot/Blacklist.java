@@ -0,0 +1,166 @@
+package eu.ncalex42.simplexbot.modules.moderatebot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The immutable content of one blacklist file, so that a reloaded blacklist can
+ * replace the old one while messages are checked.
+ */
+public class Blacklist {
+
+    private final boolean images;
+    private final boolean videos;
+    private final boolean files;
+    private final boolean links;
+    private final boolean voice;
+    private final List<String> keywords;
+    private final Map<String, Pattern> regexes;
+    private final List<String> users;
+
+    private Blacklist(boolean images, boolean videos, boolean files, boolean links, boolean voice,
+            List<String> keywords, Map<String, Pattern> regexes, List<String> users) {
+        this.images = images;
+        this.videos = videos;
+        this.files = files;
+        this.links = links;
+        this.voice = voice;
+        this.keywords = Collections.unmodifiableList(keywords);
+        this.regexes = Collections.unmodifiableMap(regexes);
+        this.users = Collections.unmodifiableList(users);
+    }
+
+    /**
+     * @return an empty blacklist if the file does not exist
+     * @throws java.util.regex.PatternSyntaxException if a regex is invalid
+     */
+    public static Blacklist read(Path blacklistFile) throws IOException {
+
+        final List<String> keywords = new LinkedList<>();
+        final Map<String, Pattern> regexes = new LinkedHashMap<>();
+        final List<String> users = new LinkedList<>();
+        boolean images = false;
+        boolean videos = false;
+        boolean files = false;
+        boolean links = false;
+        boolean voice = false;
+
+        if (!Files.exists(blacklistFile)) {
+            return new Blacklist(images, videos, files, links, voice, keywords, regexes, users);
+        }
+
+        for (String line : Files.lines(blacklistFile, StandardCharsets.UTF_8).collect(Collectors.toList())) {
+
+            if (line.startsWith("#")) {
+                continue;
+            }
+
+            if (line.startsWith("\"#")) {
+                line = line.substring(1);
+            }
+
+            if (line.startsWith(ModerateBotConstants.IMAGE_KEYWORD)) {
+                images = true;
+                continue;
+            }
+            if (line.startsWith(ModerateBotConstants.VIDEO_KEYWORD)) {
+                videos = true;
+                continue;
+            }
+            if (line.startsWith(ModerateBotConstants.FILE_KEYWORD)) {
+                files = true;
+                continue;
+            }
+            if (line.startsWith(ModerateBotConstants.LINK_KEYWORD)) {
+                links = true;
+                continue;
+            }
+            if (line.startsWith(ModerateBotConstants.VOICE_KEYWORD)) {
+                voice = true;
+                continue;
+            }
+
+            if (line.startsWith(ModerateBotConstants.REGEX_KEYWORD + " ")) {
+                line = line.substring(ModerateBotConstants.REGEX_KEYWORD.length()).strip();
+                regexes.put(line, Pattern.compile(line));
+                continue;
+            }
+
+            if (line.startsWith(ModerateBotConstants.USER_KEYWORD + " ")) {
+                line = line.substring(ModerateBotConstants.USER_KEYWORD.length()).strip();
+                users.add(line);
+                continue;
+            }
+
+            if (!line.isBlank()) {
+                keywords.add(line.toLowerCase());
+                continue;
+            }
+        }
+
+        return new Blacklist(images, videos, files, links, voice, keywords, regexes, users);
+    }
+
+    public boolean isImages() {
+        return images;
+    }
+
+    public boolean isVideos() {
+        return videos;
+    }
+
+    public boolean isFiles() {
+        return files;
+    }
+
+    public boolean isLinks() {
+        return links;
+    }
+
+    public boolean isVoice() {
+        return voice;
+    }
+
+    /**
+     * @return lower case keywords
+     */
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @return the compiled patterns by their source
+     */
+    public Map<String, Pattern> getRegexes() {
+        return regexes;
+    }
+
+    public List<String> getUsers() {
+        return users;
+    }
+
+    /**
+     * @param name e.g. "block"
+     * @return the settings for the log, e.g. <code>*blockImages*=false *...</code>
+     */
+    public String toLogString(String name) {
+        return "*" + name + "Images*=" + images + " *" + name + "Videos*=" + videos + " *" + name + "Files*=" + files
+                + " *" + name + "Links*=" + links + " *" + name + "Voice*=" + voice + " *keyword"
+                + capitalize(name) + "Blacklist.size*=" + keywords.size() + " *regex" + capitalize(name)
+                + "Blacklist.size*=" + regexes.size() + " *user" + capitalize(name) + "Blacklist.size*="
+                + users.size();
+    }
+
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+}
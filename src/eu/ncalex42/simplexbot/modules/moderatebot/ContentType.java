@@ -0,0 +1,52 @@
+package eu.ncalex42.simplexbot.modules.moderatebot;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import eu.ncalex42.simplexbot.simplex.SimplexConstants;
+
+/**
+ * The message content types that the blacklists distinguish, resolved once
+ * per message instead of comparing the type string again for every rule.
+ */
+enum ContentType {
+
+    TEXT(SimplexConstants.VALUE_MSG_CONTENT_TYPE_TEXT, null),
+    IMAGE(SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE, "*IMAGE*"),
+    VIDEO(SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO, "*VIDEO*"),
+    FILE(SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE, "*FILE*"),
+    LINK(SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK, "*LINK*"),
+    VOICE(SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE, "*VOICE*"),
+    /** e.g. reports or events, only the report blacklist applies to them */
+    OTHER(null, null);
+
+    private static final Map<String, ContentType> BY_TYPE = new HashMap<>();
+
+    static {
+        for (final ContentType contentType : values()) {
+            if (null != contentType.type) {
+                BY_TYPE.put(contentType.type, contentType);
+            }
+        }
+    }
+
+    private final String type;
+    private final String reason;
+
+    private ContentType(String type, String reason) {
+        this.type = type;
+        this.reason = reason;
+    }
+
+    /**
+     * @return the reason for a blacklisted content type, e.g. "*IMAGE*"
+     */
+    String getReason() {
+        return reason;
+    }
+
+    static ContentType of(String type) {
+        return (null == type) ? OTHER : BY_TYPE.getOrDefault(type.toLowerCase(Locale.US), OTHER);
+    }
+}
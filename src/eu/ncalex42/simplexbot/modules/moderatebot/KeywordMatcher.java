@@ -0,0 +1,171 @@
+package eu.ncalex42.simplexbot.modules.moderatebot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds the keywords of all blacklists of a {@link ModerationRules} in one
+ * pass over the (lower case) message, using an Aho-Corasick automaton that is
+ * built once when the blacklists are read. Like the former one-by-one search,
+ * the reported keyword of a blacklist is the first one in the file that is
+ * contained in the message.
+ */
+public class KeywordMatcher {
+
+    private static final ModerateAction[] ACTIONS = ModerateAction.values();
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final Node root;
+    private final Map<ModerateAction, List<String>> keywords;
+
+    private static class Node {
+
+        // sorted by key, for a binary search:
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private Node fail;
+
+        /** lowest keyword index per action that ends here or in a suffix */
+        private final int[] matches = new int[ACTIONS.length];
+
+        private Node() {
+            Arrays.fill(matches, NO_MATCH);
+        }
+
+        private Node child(char key) {
+            final int index = Arrays.binarySearch(keys, key);
+            return (index < 0) ? null : children[index];
+        }
+
+        private Node addChild(char key) {
+
+            final int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            final int insertAt = -index - 1;
+            final Node child = new Node();
+            keys = insert(keys, insertAt, key);
+            final Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newChildren[insertAt] = child;
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            children = newChildren;
+            return child;
+        }
+
+        private static char[] insert(char[] array, int index, char value) {
+
+            final char[] result = new char[array.length + 1];
+            System.arraycopy(array, 0, result, 0, index);
+            result[index] = value;
+            System.arraycopy(array, index, result, index + 1, array.length - index);
+            return result;
+        }
+    }
+
+    /**
+     * @param keywords the lower case keywords of each blacklist, in file order
+     */
+    KeywordMatcher(Map<ModerateAction, List<String>> keywords) {
+
+        this.keywords = new EnumMap<>(ModerateAction.class);
+        root = new Node();
+
+        for (final Map.Entry<ModerateAction, List<String>> blacklist : keywords.entrySet()) {
+            this.keywords.put(blacklist.getKey(), new ArrayList<>(blacklist.getValue()));
+            final int action = blacklist.getKey().ordinal();
+            int keywordIndex = 0;
+            for (final String keyword : blacklist.getValue()) {
+                Node node = root;
+                for (int i = 0; i < keyword.length(); i++) {
+                    node = node.addChild(keyword.charAt(i));
+                }
+                node.matches[action] = Math.min(node.matches[action], keywordIndex);
+                keywordIndex++;
+            }
+        }
+
+        linkFailures();
+    }
+
+    /**
+     * Breadth-first, so that the failure node of a node (a shorter suffix) is
+     * always complete before the node itself.
+     */
+    private void linkFailures() {
+
+        final Queue<Node> queue = new LinkedList<>();
+        root.fail = root;
+        for (final Node child : root.children) {
+            child.fail = root;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            final Node node = queue.poll();
+            for (int i = 0; i < node.keys.length; i++) {
+                final char key = node.keys[i];
+                final Node child = node.children[i];
+
+                Node fail = node.fail;
+                while ((fail != root) && (null == fail.child(key))) {
+                    fail = fail.fail;
+                }
+                final Node failChild = fail.child(key);
+                child.fail = ((null == failChild) || (failChild == child)) ? root : failChild;
+
+                // keywords that are a suffix of this one match as well:
+                for (int action = 0; action < ACTIONS.length; action++) {
+                    child.matches[action] = Math.min(child.matches[action], child.fail.matches[action]);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @return the first keyword (in file order) of each blacklist that is
+     *         contained in the text, blacklists without a match are missing
+     */
+    public Map<ModerateAction, String> match(String text) {
+
+        final Map<ModerateAction, String> result = new EnumMap<>(ModerateAction.class);
+        if ((null == text) || (root.keys.length == 0)) {
+            return result;
+        }
+
+        final int[] best = new int[ACTIONS.length];
+        Arrays.fill(best, NO_MATCH);
+
+        final String lowerCaseText = text.toLowerCase(); // once per message instead of once per keyword
+        Node node = root;
+        for (int i = 0; i < lowerCaseText.length(); i++) {
+            final char c = lowerCaseText.charAt(i);
+
+            Node next = node.child(c);
+            while ((null == next) && (node != root)) {
+                node = node.fail;
+                next = node.child(c);
+            }
+            node = (null == next) ? root : next;
+
+            for (int action = 0; action < ACTIONS.length; action++) {
+                best[action] = Math.min(best[action], node.matches[action]);
+            }
+        }
+
+        for (int action = 0; action < ACTIONS.length; action++) {
+            if (NO_MATCH != best[action]) {
+                result.put(ACTIONS[action], keywords.get(ACTIONS[action]).get(best[action]));
+            }
+        }
+        return result;
+    }
+}
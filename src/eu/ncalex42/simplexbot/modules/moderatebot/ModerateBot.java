@@ -4,28 +4,29 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.PriorityBlockingQueue;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import eu.ncalex42.simplexbot.Start;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
+import eu.ncalex42.simplexbot.simplex.GroupFeed;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
-import eu.ncalex42.simplexbot.simplex.SimplexConstants;
 import eu.ncalex42.simplexbot.simplex.model.GroupMember;
 import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+import eu.ncalex42.simplexbot.store.ProcessedMessageStore;
 
 /**
  * This module can report/moderate messages and block group members based on
  * keywords from a blacklist file.
  */
-public class ModerateBot implements Runnable {
+public class ModerateBot implements BotModule {
 
     private final SimplexConnection simplexConnection;
     private final String groupToProcess;
@@ -39,34 +40,20 @@ public class ModerateBot implements Runnable {
     private final List<String> contactsForReporting;
     private final List<String> groupsForReporting;
 
-    private final boolean blockImages;
-    private final boolean blockVideos;
-    private final boolean blockFiles;
-    private final boolean blockLinks;
-    private final boolean blockVoice;
-    private final List<String> keywordBlockBlacklist;
-    private final Map<String, Pattern> regexBlockBlacklist;
-    private final List<String> userBlockBlacklist;
-
-    private final boolean moderateImages;
-    private final boolean moderateVideos;
-    private final boolean moderateFiles;
-    private final boolean moderateLinks;
-    private final boolean moderateVoice;
-    private final List<String> keywordModerateBlacklist;
-    private final Map<String, Pattern> regexModerateBlacklist;
-    private final List<String> userModerateBlacklist;
-
-    private final boolean reportImages;
-    private final boolean reportVideos;
-    private final boolean reportFiles;
-    private final boolean reportLinks;
-    private final boolean reportVoice;
-    private final List<String> keywordReportBlacklist;
-    private final Map<String, Pattern> regexReportBlacklist;
-    private final List<String> userReportBlacklist;
+    private final Path configFile;
+    private final Path cacheFile;
+
+    private volatile ModerationRules rules; // replaced as a whole on reloading
+    private final RuleStatistics ruleStatistics;
+    private final int ruleStatisticsIntervalMinutes;
+    private long nextRuleStatisticsReport = Long.MAX_VALUE;
 
     private final PriorityBlockingQueue<MessageActionItem> actionQueue = new PriorityBlockingQueue<>();
+    private final ModerateActionRunnable moderateActionRunnable = new ModerateActionRunnable();
+
+    private ProcessedMessageStore processedMessageStore = null;
+    private GroupFeed.Subscription groupFeed = null;
+    private volatile boolean stopRequested = false;
 
     public static ModerateBot init(Path configFile) throws IOException {
 
@@ -80,6 +67,7 @@ public class ModerateBot implements Runnable {
         String persistState = "";
         final List<String> contactsForReporting = new LinkedList<>();
         final List<String> groupsForReporting = new LinkedList<>();
+        int ruleStatisticsIntervalMinutes = ModerateBotConstants.DEFAULT_RULE_STATISTICS_INTERVAL_MINUTES;
 
         for (final String line : Files.lines(configFile, StandardCharsets.UTF_8).collect(Collectors.toList())) {
 
@@ -153,192 +141,19 @@ public class ModerateBot implements Runnable {
                 }
                 break;
 
-            default: // ignore
-            }
-        }
-
-        // read block-blacklist file:
-        final List<String> keywordBlockBlacklist = new LinkedList<>();
-        final Map<String, Pattern> regexBlockBlacklist = new HashMap<>();
-        final List<String> userBlockBlacklist = new LinkedList<>();
-        boolean blockImages = false;
-        boolean blockVideos = false;
-        boolean blockFiles = false;
-        boolean blockLinks = false;
-        boolean blockVoice = false;
-        final Path blockListFile = configFile.getParent().resolve(ModerateBotConstants.BLOCK_BLACKLIST_FILENAME);
-        if (Files.exists(blockListFile)) {
-            for (String line : Files.lines(blockListFile, StandardCharsets.UTF_8).collect(Collectors.toList())) {
-
-                if (line.startsWith("#")) {
-                    continue;
-                }
-
-                if (line.startsWith("\"#")) {
-                    line = line.substring(1);
-                }
-
-                if (line.startsWith(ModerateBotConstants.IMAGE_KEYWORD)) {
-                    blockImages = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VIDEO_KEYWORD)) {
-                    blockVideos = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.FILE_KEYWORD)) {
-                    blockFiles = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.LINK_KEYWORD)) {
-                    blockLinks = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VOICE_KEYWORD)) {
-                    blockVoice = true;
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.REGEX_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.REGEX_KEYWORD.length()).strip();
-                    regexBlockBlacklist.put(line, Pattern.compile(line));
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.USER_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.USER_KEYWORD.length()).strip();
-                    userBlockBlacklist.add(line);
-                    continue;
-                }
-
-                if (!line.isBlank()) {
-                    keywordBlockBlacklist.add(line.toLowerCase());
-                    continue;
-                }
-            }
-        }
-
-        // read moderate-blacklist file:
-        final List<String> keywordModerateBlacklist = new LinkedList<>();
-        final Map<String, Pattern> regexModerateBlacklist = new HashMap<>();
-        final List<String> userModerateBlacklist = new LinkedList<>();
-        boolean moderateImages = false;
-        boolean moderateVideos = false;
-        boolean moderateFiles = false;
-        boolean moderateLinks = false;
-        boolean moderateVoice = false;
-        final Path moderateBlacklist = configFile.getParent().resolve(ModerateBotConstants.MODERATE_BLACKLIST_FILENAME);
-        if (Files.exists(moderateBlacklist)) {
-            for (String line : Files.lines(moderateBlacklist, StandardCharsets.UTF_8).collect(Collectors.toList())) {
-
-                if (line.startsWith("#")) {
-                    continue;
-                }
-
-                if (line.startsWith("\"#")) {
-                    line = line.substring(1);
-                }
-
-                if (line.startsWith(ModerateBotConstants.IMAGE_KEYWORD)) {
-                    moderateImages = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VIDEO_KEYWORD)) {
-                    moderateVideos = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.FILE_KEYWORD)) {
-                    moderateFiles = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.LINK_KEYWORD)) {
-                    moderateLinks = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VOICE_KEYWORD)) {
-                    moderateVoice = true;
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.REGEX_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.REGEX_KEYWORD.length()).strip();
-                    regexModerateBlacklist.put(line, Pattern.compile(line));
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.USER_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.USER_KEYWORD.length()).strip();
-                    userModerateBlacklist.add(line);
-                    continue;
+            case ModerateBotConstants.CONFIG_RULE_STATISTICS_INTERVAL_MINUTES:
+                if (!value.isBlank()) {
+                    ruleStatisticsIntervalMinutes = Integer.parseInt(value);
                 }
+                break;
 
-                if (!line.isBlank()) {
-                    keywordModerateBlacklist.add(line.toLowerCase());
-                    continue;
-                }
+            default: // ignore
             }
         }
 
-        // read report-blacklist file:
-        final List<String> keywordReportBlacklist = new LinkedList<>();
-        final Map<String, Pattern> regexReportBlacklist = new HashMap<>();
-        final List<String> userReportBlacklist = new LinkedList<>();
-        boolean reportImages = false;
-        boolean reportVideos = false;
-        boolean reportFiles = false;
-        boolean reportLinks = false;
-        boolean reportVoice = false;
-        final Path reportBlacklist = configFile.getParent().resolve(ModerateBotConstants.REPORT_BLACKLIST_FILENAME);
-        if (Files.exists(reportBlacklist)) {
-            for (String line : Files.lines(reportBlacklist, StandardCharsets.UTF_8).collect(Collectors.toList())) {
-
-                if (line.startsWith("#")) {
-                    continue;
-                }
-
-                if (line.startsWith("\"#")) {
-                    line = line.substring(1);
-                }
-
-                if (line.startsWith(ModerateBotConstants.IMAGE_KEYWORD)) {
-                    reportImages = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VIDEO_KEYWORD)) {
-                    reportVideos = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.FILE_KEYWORD)) {
-                    reportFiles = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.LINK_KEYWORD)) {
-                    reportLinks = true;
-                    continue;
-                }
-                if (line.startsWith(ModerateBotConstants.VOICE_KEYWORD)) {
-                    reportVoice = true;
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.REGEX_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.REGEX_KEYWORD.length()).strip();
-                    regexReportBlacklist.put(line, Pattern.compile(line));
-                    continue;
-                }
-
-                if (line.startsWith(ModerateBotConstants.USER_KEYWORD + " ")) {
-                    line = line.substring(ModerateBotConstants.USER_KEYWORD.length()).strip();
-                    userReportBlacklist.add(line);
-                    continue;
-                }
-
-                if (!line.isBlank()) {
-                    keywordReportBlacklist.add(line.toLowerCase());
-                    continue;
-                }
-            }
-        }
+        // read blacklist files:
+        final RuleStatistics ruleStatistics = new RuleStatistics();
+        final ModerationRules rules = ModerationRules.read(configFile.getParent(), ruleStatistics);
 
         if ((port < 0) || (null == groupToProcess) || groupToProcess.isBlank()) {
             throw new IllegalArgumentException("[" + ModerateBot.class.getSimpleName()
@@ -346,7 +161,7 @@ public class ModerateBot implements Runnable {
                     + ModerateBotConstants.CONFIG_PORT + "' and '" + ModerateBotConstants.CONFIG_GROUP + "'");
         }
 
-        if ((sleepTimeInSeconds < 0) || (numberOfMessagesToRetrieve < 0)
+        if ((sleepTimeInSeconds < 0) || (numberOfMessagesToRetrieve < 0) || (ruleStatisticsIntervalMinutes < 0)
                 || (!persistState.equalsIgnoreCase("true") && !persistState.equalsIgnoreCase("false"))) {
             Util.logWarning("[" + ModerateBot.class.getSimpleName()
                     + "] Some config properties are missing or are invalid, using defaults!", null, null, null);
@@ -355,24 +170,14 @@ public class ModerateBot implements Runnable {
         SimplexConnection.initSimplexConnection(port);
         return new ModerateBot(SimplexConnection.get(port), groupToProcess, contactsForOutput, groupsForOutput,
                 sleepTimeInSeconds, numberOfMessagesToRetrieve, persistState, contactsForReporting, groupsForReporting,
-                blockImages, blockVideos, blockFiles, blockLinks, blockVoice, keywordBlockBlacklist,
-                regexBlockBlacklist, userBlockBlacklist, moderateImages, moderateVideos, moderateFiles, moderateLinks,
-                moderateVoice, keywordModerateBlacklist, regexModerateBlacklist, userModerateBlacklist, reportImages,
-                reportVideos, reportFiles, reportLinks, reportVoice, keywordReportBlacklist, regexReportBlacklist,
-                userReportBlacklist);
+                rules, ruleStatistics, ruleStatisticsIntervalMinutes, configFile,
+                configFile.resolveSibling(ModerateBotConstants.PROCESSED_MESSAGES_CACHE_FILE));
     }
 
     private ModerateBot(SimplexConnection simplexConnection, String groupToProcess, List<String> contactsForOutput,
             List<String> groupsForOutput, int sleepTimeInSeconds, int numberOfMessagesToRetrieve, String persistState,
-            List<String> contactsForReporting, List<String> groupsForReporting, boolean blockImages,
-            boolean blockVideos, boolean blockFiles, boolean blockLinks, boolean blockVoice,
-            List<String> keywordBlockBlacklist, Map<String, Pattern> regexBlockBlacklist,
-            List<String> userBlockBlacklist, boolean moderateImages, boolean moderateVideos, boolean moderateFiles,
-            boolean moderateLinks, boolean moderateVoice, List<String> keywordModerateBlacklist,
-            Map<String, Pattern> regexModerateBlacklist, List<String> userModerateBlacklist, boolean reportImages,
-            boolean reportVideos, boolean reportFiles, boolean reportLinks, boolean reportVoice,
-            List<String> keywordReportBlacklist, Map<String, Pattern> regexReportBlacklist,
-            List<String> userReportBlacklist) {
+            List<String> contactsForReporting, List<String> groupsForReporting, ModerationRules rules,
+            RuleStatistics ruleStatistics, int ruleStatisticsIntervalMinutes, Path configFile, Path cacheFile) {
         this.simplexConnection = simplexConnection;
         this.groupToProcess = groupToProcess;
         this.contactsForOutput = contactsForOutput;
@@ -382,34 +187,22 @@ public class ModerateBot implements Runnable {
         this.persistState = persistState.equalsIgnoreCase("true") ? true : false;
         this.contactsForReporting = contactsForReporting;
         this.groupsForReporting = groupsForReporting;
-        this.blockImages = blockImages;
-        this.blockVideos = blockVideos;
-        this.blockFiles = blockFiles;
-        this.blockLinks = blockLinks;
-        this.blockVoice = blockVoice;
-        this.keywordBlockBlacklist = keywordBlockBlacklist;
-        this.regexBlockBlacklist = regexBlockBlacklist;
-        this.userBlockBlacklist = userBlockBlacklist;
-        this.moderateImages = moderateImages;
-        this.moderateVideos = moderateVideos;
-        this.moderateFiles = moderateFiles;
-        this.moderateLinks = moderateLinks;
-        this.moderateVoice = moderateVoice;
-        this.keywordModerateBlacklist = keywordModerateBlacklist;
-        this.regexModerateBlacklist = regexModerateBlacklist;
-        this.userModerateBlacklist = userModerateBlacklist;
-        this.reportImages = reportImages;
-        this.reportVideos = reportVideos;
-        this.reportFiles = reportFiles;
-        this.reportLinks = reportLinks;
-        this.reportVoice = reportVoice;
-        this.keywordReportBlacklist = keywordReportBlacklist;
-        this.regexReportBlacklist = regexReportBlacklist;
-        this.userReportBlacklist = userReportBlacklist;
+        this.rules = rules;
+        this.ruleStatistics = ruleStatistics;
+        this.ruleStatisticsIntervalMinutes = (ruleStatisticsIntervalMinutes < 0)
+                ? ModerateBotConstants.DEFAULT_RULE_STATISTICS_INTERVAL_MINUTES
+                : ruleStatisticsIntervalMinutes;
+        this.configFile = configFile;
+        this.cacheFile = cacheFile;
     }
 
     @Override
-    public void run() {
+    public CompletableFuture<?> whenReady() {
+        return simplexConnection.whenConnected();
+    }
+
+    @Override
+    public void start(Runnable wakeUp) throws IOException {
 
         Util.log(ModerateBot.class.getSimpleName() + " " + Start.VERSION + " has started with config: *"
                 + ModerateBotConstants.CONFIG_PORT + "*=" + simplexConnection.getPort() + " *"
@@ -420,296 +213,207 @@ public class ModerateBot implements Runnable {
                 + ModerateBotConstants.CONFIG_NUMBER_OF_MESSAGES_TO_RETRIEVE + "*=" + numberOfMessagesToRetrieve + " *"
                 + ModerateBotConstants.CONFIG_PERSIST_STATE + "*=" + persistState + " *"
                 + ModerateBotConstants.CONFIG_REPORT_TO_CONTACTS + "*=" + Util.listToString(contactsForReporting) + " *"
-                + ModerateBotConstants.CONFIG_REPORT_TO_GROUPS + "*=" + Util.listToString(groupsForReporting)
-                + " *blockImages*=" + blockImages + " *blockVideos*=" + blockVideos + " *blockFiles*=" + blockFiles
-                + " *blockLinks*=" + blockLinks + " *blockVoice*=" + blockVoice + " *keywordBlockBlacklist.size*="
-                + keywordBlockBlacklist.size() + " *regexBlockBlacklist.size*=" + regexBlockBlacklist.size()
-                + " *userBlockBlacklist.size*=" + userBlockBlacklist.size() + " *moderateImages*=" + moderateImages
-                + " *moderateVideos*=" + moderateVideos + " *moderateFiles*=" + moderateFiles + " *moderateLinks*="
-                + moderateLinks + " *moderateVoice*=" + moderateVoice + " *keywordModerateBlacklist.size*="
-                + keywordModerateBlacklist.size() + " *regexModerateBlacklist.size*=" + regexModerateBlacklist.size()
-                + " *userModerateBlacklist.size*=" + userModerateBlacklist.size() + " *reportImages*=" + reportImages
-                + " *reportVideos*=" + reportVideos + " *reportFiles*=" + reportFiles + " *reportLinks*=" + reportLinks
-                + " *reportVoice*=" + reportVoice + " *keywordReportBlacklist.size*=" + keywordReportBlacklist.size()
-                + " *regexReportBlacklist.size*=" + regexReportBlacklist.size() + " *userReportBlacklist.size*="
-                + userReportBlacklist.size(), simplexConnection, contactsForReporting, groupsForReporting);
-
-        final Thread moderateActionThread = new Thread(new ModerateActionRunnable(),
-                ModerateBot.class.getSimpleName() + "." + ModerateActionRunnable.class.getSimpleName());
-        moderateActionThread.start();
+                + ModerateBotConstants.CONFIG_REPORT_TO_GROUPS + "*=" + Util.listToString(groupsForReporting) + " *"
+                + ModerateBotConstants.CONFIG_RULE_STATISTICS_INTERVAL_MINUTES + "*=" + ruleStatisticsIntervalMinutes
+                + " " + rules.toLogString(), simplexConnection, contactsForReporting, groupsForReporting);
+
+        final List<GroupMessage> alreadyProcessedMessages;
+        if (persistState) {
+            processedMessageStore = Util.initProcessedMessageStore(cacheFile, groupToProcess,
+                    numberOfMessagesToRetrieve, simplexConnection, contactsForReporting, groupsForReporting);
+            alreadyProcessedMessages = processedMessageStore.getProcessedMessages();
+        } else {
+            try {
+                Files.deleteIfExists(cacheFile);
+            } catch (final Exception ex) {
+                Util.logWarning("Unused cache file could not be deleted: " + Util.getStackTraceAsString(ex),
+                        simplexConnection, contactsForReporting, groupsForReporting);
+            }
+            alreadyProcessedMessages = new LinkedList<>();
+        }
+
+        groupFeed = GroupFeed.get(simplexConnection, groupToProcess).subscribe(alreadyProcessedMessages, false,
+                numberOfMessagesToRetrieve, sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND, contactsForReporting,
+                groupsForReporting);
+        groupFeed.onNewMessages(wakeUp);
+
+        if (ruleStatisticsIntervalMinutes > 0) {
+            nextRuleStatisticsReport = System.currentTimeMillis()
+                    + (ruleStatisticsIntervalMinutes * (long) TimeUtil.MILLISECONDS_PER_MINUTE);
+        }
+    }
+
+    @Override
+    public long runOnce() {
 
         try {
 
-            final List<GroupMessage> alreadyProcessedMessages;
-            if (persistState) {
-                alreadyProcessedMessages = Util.initCacheFile(
-                        Path.of(Start.CONFIG_DIRECTORY, ModerateBotConstants.PROCESSED_MESSAGES_CACHE_FILE),
-                        groupToProcess, numberOfMessagesToRetrieve, simplexConnection, contactsForReporting,
-                        groupsForReporting);
-            } else {
-                try {
-                    Files.deleteIfExists(
-                            Path.of(Start.CONFIG_DIRECTORY, ModerateBotConstants.PROCESSED_MESSAGES_CACHE_FILE));
-                } catch (final Exception ex) {
-                    Util.logWarning("Unused cache file could not be deleted: " + Util.getStackTraceAsString(ex),
-                            simplexConnection, contactsForReporting, groupsForReporting);
+            final ModerationRules currentRules = rules; // the same rules for the whole batch
+            final List<GroupMessage> checkedMessages = new LinkedList<>();
+            for (final GroupMessage message : groupFeed.awaitNewMessages(0)) {
+
+                if (stopRequested) {
+                    break; // the remaining messages are checked again after the restart
                 }
-                alreadyProcessedMessages = new LinkedList<>();
-            }
 
-            while (true) {
                 try {
-
-                    for (final GroupMessage message : simplexConnection.getNewGroupMessages(groupToProcess,
-                            alreadyProcessedMessages, false, numberOfMessagesToRetrieve, contactsForReporting,
-                            groupsForReporting)) {
-
-                        try {
-                            checkBlocking(message);
-                        } catch (final Exception ex) {
-                            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                    contactsForReporting, groupsForReporting);
-                        }
-
-                        try {
-                            checkModeration(message);
-                        } catch (final Exception ex) {
-                            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                    contactsForReporting, groupsForReporting);
-                        }
-
-                        try {
-                            checkReporting(message);
-                        } catch (final Exception ex) {
-                            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                    contactsForReporting, groupsForReporting);
-                        }
-
-                        if (persistState) {
-                            Util.addProcessedMessageToFile(message,
-                                    Path.of(Start.CONFIG_DIRECTORY, ModerateBotConstants.PROCESSED_MESSAGES_CACHE_FILE),
-                                    numberOfMessagesToRetrieve);
-                        }
+                    // all three blacklists at once:
+                    for (final Map.Entry<ModerateAction, String> reason : currentRules.evaluate(message).entrySet()) {
+                        actionQueue.add(new MessageActionItem(reason.getKey(), message, reason.getValue()));
+                    }
+                    for (final String quarantineReport : currentRules.takeQuarantineReports()) {
+                        Util.logWarning(quarantineReport, simplexConnection, contactsForReporting, groupsForReporting);
                     }
-
                 } catch (final Exception ex) {
                     Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
                             contactsForReporting, groupsForReporting);
                 }
 
-                Thread.sleep(sleepTimeInSeconds * TimeUtil.MILLISECONDS_PER_SECOND);
+                checkedMessages.add(message);
             }
 
-        } catch (final Exception ex) {
-            Util.logError(
-                    ModerateBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
-                    simplexConnection, contactsForReporting, groupsForReporting);
-        }
-    }
-
-    private void checkBlocking(GroupMessage message) {
-
-        // only process defined message types:
-        if (!SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_TEXT.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE.equalsIgnoreCase(message.getType())) {
-            return;
-        }
-
-        if (blockImages && SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*IMAGE*"));
-            return;
-        }
-
-        if (blockVideos && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*VIDEO*"));
-            return;
-        }
-
-        if (blockFiles && SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*FILE*"));
-            return;
-        }
-
-        if (blockLinks && SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*LINK*"));
-            return;
-        }
-
-        if (blockVoice && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*VOICE*"));
-            return;
-        }
+            // the messages are only marked as processed when their actions are done, the store may write at once:
+            moderateActionRunnable.run();
 
-        for (final String keyword : keywordBlockBlacklist) {
-            if (message.getText().toLowerCase().contains(keyword.toLowerCase())) {
-                actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*KEYWORD* '" + keyword + "'"));
-                return;
-            }
-        }
-
-        for (final String regex : regexBlockBlacklist.keySet()) {
-            if (regexBlockBlacklist.get(regex).matcher(message.getText()).matches()) {
-                actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*REGEX* '" + regex + "'"));
-                return;
+            if (persistState) {
+                for (final GroupMessage message : checkedMessages) {
+                    processedMessageStore.add(message);
+                }
+                processedMessageStore.commit(); // once per batch
             }
-        }
 
-        for (final String user : userBlockBlacklist) {
-            if (message.getMember().getDisplayName().equals(user)) {
-                actionQueue.add(new MessageActionItem(ModerateAction.BLOCK, message, "*USER* '" + user + "'"));
-                return;
+            final long now = System.currentTimeMillis();
+            if (now >= nextRuleStatisticsReport) {
+                nextRuleStatisticsReport = now
+                        + (ruleStatisticsIntervalMinutes * (long) TimeUtil.MILLISECONDS_PER_MINUTE);
+                reportRuleStatistics();
             }
-        }
-    }
-
-    private void checkModeration(GroupMessage message) {
 
-        // only process defined message types:
-        if (!SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_TEXT.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK.equalsIgnoreCase(message.getType())
-                && !SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE.equalsIgnoreCase(message.getType())) {
-            return;
+        } catch (final Exception ex) {
+            Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                    contactsForReporting, groupsForReporting);
         }
 
-        if (moderateImages && SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*IMAGE*"));
-            return;
-        }
+        // new messages wake the module up earlier, the interval adapts to the activity of the group:
+        return groupFeed.getPollDelayMilliseconds();
+    }
 
-        if (moderateVideos && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*VIDEO*"));
-            return;
-        }
+    @Override
+    public void onFinishedWithError(Exception ex) {
+        Util.logError(ModerateBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
+                simplexConnection, contactsForReporting, groupsForReporting);
+    }
 
-        if (moderateFiles && SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*FILE*"));
-            return;
-        }
+    @Override
+    public void requestStop() {
+        stopRequested = true;
+    }
 
-        if (moderateLinks && SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*LINK*"));
-            return;
-        }
+    @Override
+    public void stop(long deadlineMilliseconds) throws IOException {
 
-        if (moderateVoice && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*VOICE*"));
-            return;
+        if (null != groupFeed) {
+            groupFeed.close();
         }
 
-        for (final String keyword : keywordModerateBlacklist) {
-            if (message.getText().toLowerCase().contains(keyword.toLowerCase())) {
-                actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*KEYWORD* '" + keyword + "'"));
-                return;
-            }
+        // e.g. left over by an exception:
+        moderateActionRunnable.drain(deadlineMilliseconds);
+        if (!actionQueue.isEmpty()) {
+            Util.logWarning(ModerateBot.class.getSimpleName() + " of group '" + groupToProcess + "' has dropped "
+                    + actionQueue.size() + " pending action(s) at shutdown!", null, null, null);
         }
 
-        for (final String regex : regexModerateBlacklist.keySet()) {
-            if (regexModerateBlacklist.get(regex).matcher(message.getText()).matches()) {
-                actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*REGEX* '" + regex + "'"));
-                return;
-            }
+        if (null != processedMessageStore) {
+            processedMessageStore.close(); // commits the processed messages
         }
 
-        for (final String user : userModerateBlacklist) {
-            if (message.getMember().getDisplayName().equals(user)) {
-                actionQueue.add(new MessageActionItem(ModerateAction.MODERATE, message, "*USER* '" + user + "'"));
-                return;
-            }
+        if (ruleStatisticsIntervalMinutes > 0) {
+            writeRuleStatistics(); // up to date for the next look at the rules
         }
     }
 
-    private void checkReporting(GroupMessage message) {
-
-        if (reportImages && SimplexConstants.VALUE_MSG_CONTENT_TYPE_IMAGE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*IMAGE*"));
-            return;
-        }
-
-        if (reportVideos && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VIDEO.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*VIDEO*"));
-            return;
-        }
+    @Override
+    public boolean reload(Path changedFile) {
 
-        if (reportFiles && SimplexConstants.VALUE_MSG_CONTENT_TYPE_FILE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*FILE*"));
-            return;
+        if (!ModerationRules.isBlacklistFile(changedFile)) {
+            return false;
         }
 
-        if (reportLinks && SimplexConstants.VALUE_MSG_CONTENT_TYPE_LINK.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*LINK*"));
-            return;
+        final ModerationRules newRules;
+        try {
+            newRules = ModerationRules.read(configFile.getParent(), ruleStatistics);
+        } catch (final IOException | RuntimeException ex) {
+            Util.logError(ModerateBot.class.getSimpleName() + " failed to reload the blacklists of group '"
+                    + groupToProcess + "', the previous ones stay active: " + ex, simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            return true;
         }
+        rules = newRules;
+        Util.log(ModerateBot.class.getSimpleName() + " has reloaded the blacklists of group '" + groupToProcess
+                + "': " + newRules.toLogString(), simplexConnection, contactsForReporting, groupsForReporting);
+        return true;
+    }
 
-        if (reportVoice && SimplexConstants.VALUE_MSG_CONTENT_TYPE_VOICE.equalsIgnoreCase(message.getType())) {
-            actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*VOICE*"));
-            return;
-        }
+    /**
+     * Sends the summary of the rule statistics to the bot admins and writes
+     * all of them to the dump file.
+     */
+    private void reportRuleStatistics() {
 
-        for (final String keyword : keywordReportBlacklist) {
-            if (message.getText().toLowerCase().contains(keyword.toLowerCase())) {
-                actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*KEYWORD* '" + keyword + "'"));
-                return;
-            }
-        }
+        writeRuleStatistics();
+        Util.log(ModerateBot.class.getSimpleName() + " rule statistics of group '" + groupToProcess
+                + "' (all rules in '" + ModerateBotConstants.RULE_STATISTICS_FILE + "'): " + ruleStatistics.toReport(),
+                simplexConnection, contactsForReporting, groupsForReporting);
+    }
 
-        for (final String regex : regexReportBlacklist.keySet()) {
-            if (regexReportBlacklist.get(regex).matcher(message.getText()).matches()) {
-                actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*REGEX* '" + regex + "'"));
-                return;
-            }
-        }
+    private void writeRuleStatistics() {
 
-        for (final String user : userReportBlacklist) {
-            if (message.getMember().getDisplayName().equals(user)) {
-                actionQueue.add(new MessageActionItem(ModerateAction.REPORT, message, "*USER* '" + user + "'"));
-                return;
-            }
+        try {
+            ruleStatistics.writeDump(configFile.resolveSibling(ModerateBotConstants.RULE_STATISTICS_FILE));
+        } catch (final IOException ex) {
+            Util.logWarning("Rule statistics could not be written: " + Util.getStackTraceAsString(ex),
+                    simplexConnection, contactsForReporting, groupsForReporting);
         }
     }
 
+    /**
+     * Executes the queued actions, the most severe first.
+     */
     private class ModerateActionRunnable implements Runnable {
 
         @Override
         public void run() {
+            drain(Long.MAX_VALUE);
+        }
 
-            try {
+        /**
+         * Executes the queued actions until the queue is empty or the deadline
+         * (in epoch milliseconds) is reached.
+         */
+        private void drain(long deadlineMilliseconds) {
 
-                while (true) {
-                    final MessageActionItem messageAction = actionQueue.take();
-                    try {
-                        switch (messageAction.getAction()) {
-                        case BLOCK:
-                            blockUser(messageAction.getMessage(), messageAction.getReason());
-                            break;
-                        case MODERATE:
-                            moderateMessage(messageAction.getMessage(), messageAction.getReason());
-                            break;
-                        case REPORT:
-                            reportMessage(messageAction.getMessage(), messageAction.getReason());
-                            break;
-                        default:
-                            throw new IllegalStateException("unknown " + ModerateAction.class.getSimpleName() + ": "
-                                    + messageAction.getAction());
-                        }
-                    } catch (final Exception ex) {
-                        Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                contactsForReporting, groupsForReporting);
+            MessageActionItem messageAction;
+            while ((System.currentTimeMillis() < deadlineMilliseconds)
+                    && (null != (messageAction = actionQueue.poll()))) {
+                try {
+                    switch (messageAction.getAction()) {
+                    case BLOCK:
+                        blockUser(messageAction.getMessage(), messageAction.getReason());
+                        break;
+                    case MODERATE:
+                        moderateMessage(messageAction.getMessage(), messageAction.getReason());
+                        break;
+                    case REPORT:
+                        reportMessage(messageAction.getMessage(), messageAction.getReason());
+                        break;
+                    default:
+                        throw new IllegalStateException("unknown " + ModerateAction.class.getSimpleName() + ": "
+                                + messageAction.getAction());
                     }
+                } catch (final Exception ex) {
+                    Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                            contactsForReporting, groupsForReporting);
                 }
-
-            } catch (final Exception ex) {
-
-                Util.logError(
-                        ModerateActionRunnable.class.getSimpleName() + " has finished with error: "
-                                + Util.getStackTraceAsString(ex),
-                        simplexConnection, contactsForReporting, groupsForReporting);
             }
         }
 
@@ -779,7 +483,7 @@ public class ModerateBot implements Runnable {
                     contactsForReporting, groupsForReporting);
 
             if (!groupMessageText.isEmpty()) {
-                System.out.println(groupMessageText);
+                Util.printToConsole(groupMessageText);
                 simplexConnection.logToBotAdmins(groupMessageText, contactsForReporting, groupsForReporting);
                 simplexConnection.sendToContactsAndGroups(groupMessageText, contactsForOutput, groupsForOutput,
                         contactsForReporting, groupsForReporting);
@@ -7,6 +7,7 @@ public class ModerateBotConstants {
     static final String MODERATE_BLACKLIST_FILENAME = "moderate-bot-moderate-blacklist.txt";
     static final String REPORT_BLACKLIST_FILENAME = "moderate-bot-report-blacklist.txt";
     static final String PROCESSED_MESSAGES_CACHE_FILE = "moderate-bot-message-cache.tmp";
+    static final String RULE_STATISTICS_FILE = "moderate-bot-rule-statistics.csv";
 
     static final String CONFIG_PORT = "port";
     static final String CONFIG_GROUP = "group";
@@ -17,6 +18,9 @@ public class ModerateBotConstants {
     static final String CONFIG_PERSIST_STATE = "persist-state";
     static final String CONFIG_REPORT_TO_CONTACTS = "report-to-contacts";
     static final String CONFIG_REPORT_TO_GROUPS = "report-to-groups";
+    static final String CONFIG_RULE_STATISTICS_INTERVAL_MINUTES = "rule-statistics-interval-minutes";
+
+    static final int DEFAULT_RULE_STATISTICS_INTERVAL_MINUTES = 24 * 60;
 
     static final String IMAGE_KEYWORD = "@image";
     static final String VIDEO_KEYWORD = "@video";
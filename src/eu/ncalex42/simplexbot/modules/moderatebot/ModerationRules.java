@@ -0,0 +1,453 @@
+package eu.ncalex42.simplexbot.modules.moderatebot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Pattern;
+
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.moderatebot.regex.DeadlineCharSequence;
+import eu.ncalex42.simplexbot.modules.moderatebot.regex.RegexSet;
+import eu.ncalex42.simplexbot.modules.moderatebot.regex.RegexTimeoutException;
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * The block, moderate and report blacklists of one {@link ModerateBot}
+ * instance, compiled into one decision structure that checks a message
+ * against all three in a single pass. Immutable, a reload replaces all three
+ * at once.
+ */
+public class ModerationRules {
+
+    private static final ModerateAction[] ACTIONS = ModerateAction.values();
+
+    /** a single overrun might also be a GC pause or a busy CPU */
+    private static final int MAX_REGEX_OVERRUNS = 3;
+
+    private final Blacklist block;
+    private final Blacklist moderate;
+    private final Blacklist report;
+
+    // compiled from the blacklists:
+    private final Map<ModerateAction, Set<ContentType>> blockedContentTypes = new EnumMap<>(ModerateAction.class);
+    private final KeywordMatcher keywordMatcher;
+    private final Map<ModerateAction, List<Map.Entry<String, Pattern>>> regexes = new EnumMap<>(
+            ModerateAction.class);
+    private final Map<String, Set<ModerateAction>> actionsByUser = new HashMap<>();
+
+    // the regexes of all blacklists in one set, the first one of each action at its offset:
+    private final BotConfig.RegexEngine regexEngine = BotConfig.getRegexEngine();
+    private final RegexSet regexSet;
+    private final Map<ModerateAction, Integer> regexOffsets = new EnumMap<>(ModerateAction.class);
+
+    // the regexes of one message share the time budget. The slowest regex of a message that exceeds it gets an
+    // overrun, regexes (by index in the set) with too many overruns are skipped until the next reload:
+    private final long regexTimeBudgetMillis = BotConfig.getRegexTimeBudgetMillis();
+    private final AtomicIntegerArray regexOverruns;
+    private final Set<Integer> quarantinedRegexes = ConcurrentHashMap.newKeySet();
+    private final Queue<String> quarantineReports = new ConcurrentLinkedQueue<>();
+
+    // the counters of the rules, resolved once so that counting needs no lookup by name:
+    private final RuleStatistics statistics;
+    private final Map<ModerateAction, Map<ContentType, RuleStatistics.Counter>> contentTypeCounters = new EnumMap<>(
+            ModerateAction.class);
+    private final Map<ModerateAction, Map<String, RuleStatistics.Counter>> keywordCounters = new EnumMap<>(
+            ModerateAction.class);
+    private final RuleStatistics.Counter keywordMatcherCounter;
+    private final RuleStatistics.Counter[] regexCounters;
+    private final RuleStatistics.Counter regexAutomatonCounter;
+    private final Map<ModerateAction, Map<String, RuleStatistics.Counter>> userCounters = new EnumMap<>(
+            ModerateAction.class);
+
+    private ModerationRules(Blacklist block, Blacklist moderate, Blacklist report, RuleStatistics statistics) {
+        this.block = block;
+        this.moderate = moderate;
+        this.report = report;
+        this.statistics = statistics;
+
+        final Map<ModerateAction, List<String>> keywords = new EnumMap<>(ModerateAction.class);
+        final List<Pattern> allRegexes = new ArrayList<>();
+        for (final ModerateAction action : ACTIONS) {
+            final Blacklist blacklist = get(action);
+
+            final Set<ContentType> contentTypes = EnumSet.noneOf(ContentType.class);
+            if (blacklist.isImages()) {
+                contentTypes.add(ContentType.IMAGE);
+            }
+            if (blacklist.isVideos()) {
+                contentTypes.add(ContentType.VIDEO);
+            }
+            if (blacklist.isFiles()) {
+                contentTypes.add(ContentType.FILE);
+            }
+            if (blacklist.isLinks()) {
+                contentTypes.add(ContentType.LINK);
+            }
+            if (blacklist.isVoice()) {
+                contentTypes.add(ContentType.VOICE);
+            }
+            blockedContentTypes.put(action, contentTypes);
+
+            keywords.put(action, blacklist.getKeywords());
+            regexes.put(action, new ArrayList<>(blacklist.getRegexes().entrySet()));
+            regexOffsets.put(action, allRegexes.size());
+            allRegexes.addAll(blacklist.getRegexes().values());
+
+            for (final String user : blacklist.getUsers()) {
+                actionsByUser.computeIfAbsent(user, name -> EnumSet.noneOf(ModerateAction.class)).add(action);
+            }
+        }
+        keywordMatcher = new KeywordMatcher(keywords);
+        regexSet = (BotConfig.RegexEngine.PATTERN == regexEngine) ? null : new RegexSet(allRegexes);
+        regexOverruns = new AtomicIntegerArray(allRegexes.size());
+
+        final List<RuleStatistics.Counter> counters = new ArrayList<>();
+        keywordMatcherCounter = statistics.counter(RuleStatistics.ALL_ACTIONS, "keyword-matcher",
+                "one pass for all keywords");
+        counters.add(keywordMatcherCounter);
+        if ((null != regexSet) && (regexSet.getAutomatonCount() > 0)) {
+            regexAutomatonCounter = statistics.counter(RuleStatistics.ALL_ACTIONS, "regex-automaton",
+                    "one pass for the automaton regexes");
+            counters.add(regexAutomatonCounter);
+        } else {
+            regexAutomatonCounter = null;
+        }
+        regexCounters = new RuleStatistics.Counter[allRegexes.size()];
+        for (final ModerateAction action : ACTIONS) {
+            final String actionName = action.name().toLowerCase(Locale.US);
+
+            final Map<ContentType, RuleStatistics.Counter> actionContentTypeCounters = new EnumMap<>(
+                    ContentType.class);
+            for (final ContentType contentType : blockedContentTypes.get(action)) {
+                actionContentTypeCounters.put(contentType,
+                        statistics.counter(actionName, "content-type", contentType.name().toLowerCase(Locale.US)));
+            }
+            contentTypeCounters.put(action, actionContentTypeCounters);
+            counters.addAll(actionContentTypeCounters.values());
+
+            final Map<String, RuleStatistics.Counter> actionKeywordCounters = new HashMap<>();
+            for (final String keyword : keywords.get(action)) {
+                actionKeywordCounters.put(keyword, statistics.counter(actionName, "keyword", keyword));
+            }
+            keywordCounters.put(action, actionKeywordCounters);
+            counters.addAll(actionKeywordCounters.values());
+
+            final List<Map.Entry<String, Pattern>> actionRegexes = regexes.get(action);
+            for (int i = 0; i < actionRegexes.size(); i++) {
+                regexCounters[regexOffsets.get(action) + i] = statistics.counter(actionName, "regex",
+                        actionRegexes.get(i).getKey());
+            }
+
+            final Map<String, RuleStatistics.Counter> actionUserCounters = new HashMap<>();
+            for (final String user : get(action).getUsers()) {
+                actionUserCounters.put(user, statistics.counter(actionName, "user", user));
+            }
+            userCounters.put(action, actionUserCounters);
+            counters.addAll(actionUserCounters.values());
+        }
+        counters.addAll(List.of(regexCounters));
+        statistics.retain(counters);
+    }
+
+    /**
+     * Reads the blacklist files in the given config directory, missing files
+     * are empty blacklists.
+     *
+     * @param statistics the counters of the rules, the ones of removed rules
+     *                   are dropped
+     */
+    public static ModerationRules read(Path configDirectory, RuleStatistics statistics) throws IOException {
+        return new ModerationRules(
+                Blacklist.read(configDirectory.resolve(ModerateBotConstants.BLOCK_BLACKLIST_FILENAME)),
+                Blacklist.read(configDirectory.resolve(ModerateBotConstants.MODERATE_BLACKLIST_FILENAME)),
+                Blacklist.read(configDirectory.resolve(ModerateBotConstants.REPORT_BLACKLIST_FILENAME)), statistics);
+    }
+
+    /**
+     * @return <code>true</code> if the given file is one of the blacklist files
+     */
+    public static boolean isBlacklistFile(Path file) {
+
+        final String fileName = file.getFileName().toString();
+        return ModerateBotConstants.BLOCK_BLACKLIST_FILENAME.equals(fileName)
+                || ModerateBotConstants.MODERATE_BLACKLIST_FILENAME.equals(fileName)
+                || ModerateBotConstants.REPORT_BLACKLIST_FILENAME.equals(fileName);
+    }
+
+    /**
+     * Checks the message against all three blacklists. For each blacklist the
+     * first matching rule is the reason, in this order: content type, keyword
+     * (first in the file), regex (first in the file), user. Only the report
+     * blacklist applies to messages of other content types (e.g. reports).
+     *
+     * @return the reason per matching action, the most severe action first;
+     *         empty if the message is fine
+     */
+    public Map<ModerateAction, String> evaluate(GroupMessage message) {
+
+        final Map<ModerateAction, String> reasons = new EnumMap<>(ModerateAction.class);
+        final ContentType contentType = ContentType.of(message.getType());
+        final String text = message.getText();
+        statistics.countMessage();
+        final long keywordStart = System.nanoTime();
+        final Map<ModerateAction, String> matchedKeywords = keywordMatcher.match(text); // one pass for all
+        keywordMatcherCounter.evaluated(System.nanoTime() - keywordStart);
+        final RegexBudget regexBudget = new RegexBudget(regexTimeBudgetMillis);
+        final RegexSet.Scan regexScan = ((null == regexSet) || (null == text)) ? null
+                : regexSet.scan(text, regexBudget.deadlineNanoseconds);
+        final Set<ModerateAction> userActions = actionsByUser.getOrDefault(message.getMember().getDisplayName(),
+                Collections.emptySet());
+
+        for (final ModerateAction action : ACTIONS) {
+
+            if ((ModerateAction.REPORT != action) && (ContentType.OTHER == contentType)) {
+                continue;
+            }
+
+            if (blockedContentTypes.get(action).contains(contentType)) {
+                contentTypeCounters.get(action).get(contentType).hit();
+                reasons.put(action, contentType.getReason());
+                continue;
+            }
+
+            final String keyword = matchedKeywords.get(action);
+            if (null != keyword) {
+                keywordCounters.get(action).get(keyword).hit();
+                reasons.put(action, "*KEYWORD* '" + keyword + "'");
+                continue;
+            }
+
+            final String regex = findRegex(action, text, regexScan, regexBudget);
+            if (null != regex) {
+                reasons.put(action, "*REGEX* '" + regex + "'");
+                continue;
+            }
+
+            if (userActions.contains(action)) {
+                userCounters.get(action).get(message.getMember().getDisplayName()).hit();
+                reasons.put(action, "*USER* '" + message.getMember().getDisplayName() + "'");
+            }
+        }
+
+        if ((null != regexScan) && regexScan.hasRunAutomaton()) {
+            regexAutomatonCounter.evaluated(regexScan.getAutomatonNanoseconds());
+        }
+        if (regexBudget.exceeded) {
+            overrun(regexBudget, text);
+        }
+        return reasons;
+    }
+
+    /**
+     * The time of the {@link Pattern} regexes for one message.
+     */
+    private static class RegexBudget {
+
+        private final long deadlineNanoseconds;
+        private boolean exceeded = false;
+        private int skippedRegexes = 0;
+        private int slowestIndex = -1;
+        private long slowestNanoseconds = -1;
+
+        private RegexBudget(long budgetMillis) {
+            deadlineNanoseconds = (budgetMillis <= 0) ? DeadlineCharSequence.NO_DEADLINE
+                    : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        }
+
+        private void ran(int index, long elapsedNanoseconds) {
+
+            if (elapsedNanoseconds > slowestNanoseconds) {
+                slowestIndex = index;
+                slowestNanoseconds = elapsedNanoseconds;
+            }
+        }
+    }
+
+    /**
+     * @return the source of the first regex that matches the whole text or
+     *         <code>null</code>
+     */
+    private String findRegex(ModerateAction action, String text, RegexSet.Scan regexScan, RegexBudget regexBudget) {
+
+        if (null == text) {
+            return null;
+        }
+
+        final List<Map.Entry<String, Pattern>> actionRegexes = regexes.get(action);
+        final int offset = regexOffsets.get(action);
+        for (int i = 0; i < actionRegexes.size(); i++) {
+            final int index = offset + i;
+            final boolean usesPattern = (BotConfig.RegexEngine.AUTOMATON != regexEngine)
+                    || !regexSet.isInAutomaton(index);
+            if (usesPattern && regexBudget.exceeded && !quarantinedRegexes.contains(index)) {
+                regexBudget.skippedRegexes++; // the message has used up its time
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            final boolean matched = matches(action, actionRegexes.get(i), text, regexScan, index, regexBudget);
+            if (usesPattern) {
+                final long elapsedNanoseconds = System.nanoTime() - start;
+                regexCounters[index].evaluated(elapsedNanoseconds); // the automaton is counted as a whole
+                regexBudget.ran(index, elapsedNanoseconds);
+            }
+            if (matched) {
+                regexCounters[index].hit();
+                return actionRegexes.get(i).getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A regex that is still running at the deadline of the message does not
+     * match, see {@link #overrun(RegexBudget, String)}. A regex that overflows
+     * the stack (caused by excessive backtracking, not by timing) does not
+     * match and is quarantined right away.
+     */
+    private boolean matches(ModerateAction action, Map.Entry<String, Pattern> regex, String text,
+            RegexSet.Scan regexScan, int index, RegexBudget regexBudget) {
+
+        if (quarantinedRegexes.contains(index)) {
+            return false;
+        }
+
+        final long deadlineNanoseconds = regexBudget.deadlineNanoseconds;
+        try {
+            switch (regexEngine) {
+
+            case AUTOMATON:
+                return regexScan.matches(index);
+
+            case VALIDATE:
+                final boolean expected = DeadlineCharSequence.matches(regex.getValue(), text, deadlineNanoseconds);
+                if (regexScan.matches(index) != expected) {
+                    Util.logWarning("[" + ModerationRules.class.getSimpleName() + "] The regex automaton "
+                            + (expected ? "missed" : "wrongly matched") + " the regex '" + regex.getKey()
+                            + "' for the text: " + text, null, null, null);
+                }
+                return expected;
+
+            default:
+                return DeadlineCharSequence.matches(regex.getValue(), text, deadlineNanoseconds);
+            }
+
+        } catch (final RegexTimeoutException ex) {
+            regexBudget.exceeded = true;
+        } catch (final StackOverflowError ex) {
+            quarantine(index, "The " + describeRegex(index) + " overflowed the stack for a message of "
+                    + text.length() + " characters");
+        }
+        return false;
+    }
+
+    /**
+     * The slowest regex of a message that exceeded the time budget gets an
+     * overrun, it is quarantined after {@value #MAX_REGEX_OVERRUNS} of them.
+     * The slowest one is blamed, as the one that was running at the deadline
+     * might just have come after it.
+     */
+    private void overrun(RegexBudget regexBudget, String text) {
+
+        final int index = regexBudget.slowestIndex;
+        final String problem = "The regexes of the blacklists took more than " + regexTimeBudgetMillis
+                + " ms for a message of " + text.length() + " characters, " + regexBudget.skippedRegexes
+                + " regex(es) were not checked. The slowest one, " + describeRegex(index) + ", took "
+                + TimeUnit.NANOSECONDS.toMillis(regexBudget.slowestNanoseconds) + " ms";
+
+        final int overruns = regexOverruns.incrementAndGet(index);
+        if (overruns < MAX_REGEX_OVERRUNS) {
+            quarantineReports.add(problem + " (overrun " + overruns + " of " + MAX_REGEX_OVERRUNS + ").");
+        } else {
+            quarantine(index, problem + " (overrun " + overruns + " of " + MAX_REGEX_OVERRUNS + ")");
+        }
+    }
+
+    private void quarantine(int index, String problem) {
+
+        if (quarantinedRegexes.add(index)) {
+            quarantineReports.add(problem + ", the regex is disabled until its blacklist is changed!");
+        }
+    }
+
+    /**
+     * @return e.g. "regex '.*spam' of the block blacklist"
+     */
+    private String describeRegex(int index) {
+
+        for (final ModerateAction action : ACTIONS) {
+            final int offset = regexOffsets.get(action);
+            final List<Map.Entry<String, Pattern>> actionRegexes = regexes.get(action);
+            if ((index >= offset) && (index < (offset + actionRegexes.size()))) {
+                return "regex '" + actionRegexes.get(index - offset).getKey() + "' of the "
+                        + action.name().toLowerCase(Locale.US) + " blacklist";
+            }
+        }
+        return "regex #" + index;
+    }
+
+    /**
+     * @return the reports about the regexes that exceeded the time budget or
+     *         were quarantined since the last call, for the bot admins
+     */
+    public List<String> takeQuarantineReports() {
+
+        final List<String> reports = new ArrayList<>();
+        String report;
+        while (null != (report = quarantineReports.poll())) {
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    public Blacklist getBlock() {
+        return block;
+    }
+
+    public Blacklist getModerate() {
+        return moderate;
+    }
+
+    public Blacklist getReport() {
+        return report;
+    }
+
+    public Blacklist get(ModerateAction action) {
+
+        switch (action) {
+        case BLOCK:
+            return block;
+        case MODERATE:
+            return moderate;
+        case REPORT:
+            return report;
+        default:
+            throw new IllegalStateException("unknown " + ModerateAction.class.getSimpleName() + ": " + action);
+        }
+    }
+
+    /**
+     * @return the settings for the log
+     */
+    public String toLogString() {
+        return block.toLogString("block") + " " + moderate.toLogString("moderate") + " "
+                + report.toLogString("report")
+                + ((null == regexSet) ? ""
+                        : " *regexAutomaton.size*=" + regexSet.getAutomatonCount() + " *regexPrefilter.size*="
+                                + regexSet.getPrefilterCount());
+    }
+}
@@ -0,0 +1,195 @@
+package eu.ncalex42.simplexbot.modules.moderatebot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How often each rule of the blacklists of one {@link ModerateBot} has been
+ * the reason for an action and how much time it has cost, so that rules
+ * that never fire can be removed and expensive ones rewritten. The counters
+ * survive reloads for the rules that are still there. They are striped
+ * (see {@link LongAdder}), so counting does not slow down the evaluation.
+ */
+public class RuleStatistics {
+
+    /** the action of a pass that checks the rules of all blacklists at once */
+    static final String ALL_ACTIONS = "all";
+
+    private static final int TOP_RULES = 5;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final LongAdder messages = new LongAdder();
+    private final long startMilliseconds = System.currentTimeMillis();
+
+    /**
+     * The statistics of one rule.
+     */
+    public static class Counter {
+
+        private final String action;
+        private final String type;
+        private final String rule;
+        private final long createdMilliseconds = System.currentTimeMillis();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder evaluations = new LongAdder();
+        private final LongAdder nanoseconds = new LongAdder();
+        private final LongAccumulator lastHitMilliseconds = new LongAccumulator(Math::max, 0);
+
+        private Counter(String action, String type, String rule) {
+            this.action = action;
+            this.type = type;
+            this.rule = rule;
+        }
+
+        void hit() {
+            hits.increment();
+            lastHitMilliseconds.accumulate(System.currentTimeMillis());
+        }
+
+        void evaluated(long elapsedNanoseconds) {
+            evaluations.increment();
+            nanoseconds.add(elapsedNanoseconds);
+        }
+
+        /**
+         * @return <code>false</code> for a pass over all rules, which has no
+         *         hits of its own
+         */
+        private boolean isRule() {
+            return !ALL_ACTIONS.equals(action);
+        }
+
+        private String describe() {
+            return action + " " + type + " '" + rule + "'";
+        }
+    }
+
+    /**
+     * @param action e.g. "block", or {@link #ALL_ACTIONS}
+     * @param type   e.g. "keyword" or "regex"
+     * @return the counter of the rule, created on first use
+     */
+    Counter counter(String action, String type, String rule) {
+        return counters.computeIfAbsent(action + "\n" + type + "\n" + rule, key -> new Counter(action, type, rule));
+    }
+
+    /**
+     * Forgets the counters of the rules that have been removed from the
+     * blacklists.
+     */
+    void retain(Collection<Counter> currentCounters) {
+
+        final Set<Counter> current = new HashSet<>(currentCounters);
+        counters.values().removeIf(counter -> !current.contains(counter));
+    }
+
+    void countMessage() {
+        messages.increment();
+    }
+
+    /**
+     * @return a short summary for the bot admins: the rules with the most hits
+     *         and the most time, and the number of rules without any hit
+     */
+    public String toReport() {
+
+        final List<Snapshot> all = snapshot();
+        final long rules = all.stream().filter(rule -> rule.counter.isRule()).count();
+        final long rulesWithoutHits = all.stream().filter(rule -> rule.counter.isRule() && (0 == rule.hits)).count();
+
+        final StringBuilder report = new StringBuilder();
+        report.append(messages.sum()).append(" message(s) checked since ")
+                .append(Instant.ofEpochMilli(startMilliseconds)).append(", ").append(rulesWithoutHits)
+                .append(" of ").append(rules).append(" rule(s) without any hit.");
+
+        all.sort(Comparator.comparingLong((Snapshot rule) -> rule.hits).reversed());
+        report.append("\nMost hits:");
+        for (final Snapshot rule : all.subList(0, Math.min(TOP_RULES, all.size()))) {
+            if (rule.hits > 0) {
+                report.append("\n- ").append(rule.counter.describe()).append(": ").append(rule.hits);
+            }
+        }
+
+        all.sort(Comparator.comparingLong((Snapshot rule) -> rule.nanoseconds).reversed());
+        report.append("\nMost time:");
+        for (final Snapshot rule : all.subList(0, Math.min(TOP_RULES, all.size()))) {
+            if (rule.nanoseconds > 0) {
+                report.append("\n- ").append(rule.counter.describe()).append(": ")
+                        .append(TimeUnit.NANOSECONDS.toMillis(rule.nanoseconds)).append(" ms");
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Writes all counters as CSV, replacing the file atomically.
+     */
+    public void writeDump(Path file) throws IOException {
+
+        final List<Snapshot> all = snapshot();
+        all.sort(Comparator.comparing((Snapshot rule) -> rule.counter.action)
+                .thenComparing(rule -> rule.counter.type).thenComparing(rule -> rule.counter.rule));
+
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write("action,type,rule,hits,evaluations,total_microseconds,average_nanoseconds,last_hit,since\n");
+            for (final Snapshot rule : all) {
+                writer.write(rule.counter.action + "," + rule.counter.type + "," + quote(rule.counter.rule) + ","
+                        + rule.hits + "," + rule.evaluations + "," + TimeUnit.NANOSECONDS.toMicros(rule.nanoseconds)
+                        + "," + ((0 == rule.evaluations) ? "" : (rule.nanoseconds / rule.evaluations)) + ","
+                        + ((0 == rule.lastHitMilliseconds) ? "" : Instant.ofEpochMilli(rule.lastHitMilliseconds))
+                        + "," + Instant.ofEpochMilli(rule.counter.createdMilliseconds) + "\n");
+            }
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The counters keep changing, so they are read once before sorting.
+     */
+    private List<Snapshot> snapshot() {
+
+        final List<Snapshot> snapshots = new ArrayList<>();
+        for (final Counter counter : counters.values()) {
+            snapshots.add(new Snapshot(counter));
+        }
+        return snapshots;
+    }
+
+    private static class Snapshot {
+
+        private final Counter counter;
+        private final long hits;
+        private final long evaluations;
+        private final long nanoseconds;
+        private final long lastHitMilliseconds;
+
+        private Snapshot(Counter counter) {
+            this.counter = counter;
+            hits = counter.hits.sum();
+            evaluations = counter.evaluations.sum();
+            nanoseconds = counter.nanoseconds.sum();
+            lastHitMilliseconds = counter.lastHitMilliseconds.get();
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,103 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.Arrays;
+
+/**
+ * Sets of code points as sorted, disjoint and inclusive ranges
+ * <code>[from0, to0, from1, to1, ...]</code>.
+ */
+final class CharRanges {
+
+    static final int[] EMPTY = new int[0];
+
+    /** like <code>.</code> without the DOTALL flag: no line terminators */
+    static final int[] DOT = complement(
+            union(union(of('\n', '\n'), of('\r', '\r')), union(of(0x85, 0x85), of(0x2028, 0x2029))));
+    static final int[] DIGIT = of('0', '9');
+    static final int[] WORD = union(union(of('a', 'z'), of('A', 'Z')), union(of('_', '_'), DIGIT));
+    static final int[] SPACE = union(of('\t', '\r'), of(' ', ' ')); // [ \t\n\x0B\f\r]
+
+    private CharRanges() {
+    }
+
+    static int[] of(int from, int to) {
+        return new int[] { from, to };
+    }
+
+    static boolean contains(int[] ranges, int codePoint) {
+
+        // binary search for the last range that starts at or before the code point:
+        int low = 0;
+        int high = (ranges.length / 2) - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (ranges[2 * middle] > codePoint) {
+                high = middle - 1;
+            } else if (ranges[(2 * middle) + 1] < codePoint) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int[] union(int[] a, int[] b) {
+
+        final int[] all = new int[a.length + b.length];
+        System.arraycopy(a, 0, all, 0, a.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+
+        // sort the ranges by their start:
+        final long[] sorted = new long[all.length / 2];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ((long) all[2 * i] << 32) | all[(2 * i) + 1];
+        }
+        Arrays.sort(sorted);
+
+        final int[] result = new int[all.length];
+        int size = 0;
+        for (final long range : sorted) {
+            final int from = (int) (range >>> 32);
+            final int to = (int) range;
+            if ((size > 0) && (from <= (result[size - 1] + 1))) {
+                result[size - 1] = Math.max(result[size - 1], to);
+            } else {
+                result[size++] = from;
+                result[size++] = to;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static int[] complement(int[] ranges) {
+
+        final int[] result = new int[ranges.length + 2];
+        int size = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[size++] = next;
+                result[size++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_CODE_POINT) {
+            result[size++] = next;
+            result[size++] = Character.MAX_CODE_POINT;
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @return the number of code points
+     */
+    static long size(int[] ranges) {
+
+        long size = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            size += (ranges[i + 1] - ranges[i]) + 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,77 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.regex.Pattern;
+
+/**
+ * A text that throws a {@link RegexTimeoutException} when it is read after a
+ * deadline. <code>java.util.regex</code> reads the text character by character
+ * while it backtracks, so a catastrophically backtracking regex (e.g.
+ * <code>(.*a){20}</code> against "aaaa...c") is aborted instead of blocking
+ * the thread for hours.
+ */
+public class DeadlineCharSequence implements CharSequence {
+
+    /** for {@link #matches(Pattern, String, long)} without a time limit */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** reading the clock on every character would be too expensive */
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final CharSequence text;
+    private final long startNanoseconds;
+    private final long deadlineNanoseconds;
+    private int reads = 0;
+
+    private DeadlineCharSequence(CharSequence text, long startNanoseconds, long deadlineNanoseconds) {
+        this.text = text;
+        this.startNanoseconds = startNanoseconds;
+        this.deadlineNanoseconds = deadlineNanoseconds;
+    }
+
+    /**
+     * Like <code>pattern.matcher(text).matches()</code>, but aborted at the
+     * deadline. Several regexes can share one deadline, e.g. all regexes that
+     * check one message.
+     *
+     * @param deadlineNanoseconds a time of {@link System#nanoTime()} or
+     *                            {@link #NO_DEADLINE}
+     * @throws RegexTimeoutException if the deadline passes
+     */
+    public static boolean matches(Pattern pattern, String text, long deadlineNanoseconds) {
+
+        if (NO_DEADLINE == deadlineNanoseconds) {
+            return pattern.matcher(text).matches();
+        }
+
+        final long start = System.nanoTime();
+        return pattern.matcher(new DeadlineCharSequence(text, start, deadlineNanoseconds)).matches();
+    }
+
+    @Override
+    public char charAt(int index) {
+
+        if (++reads >= CHECK_INTERVAL) {
+            reads = 0;
+            final long now = System.nanoTime();
+            if ((now - deadlineNanoseconds) > 0) {
+                throw new RegexTimeoutException(now - startNanoseconds);
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new DeadlineCharSequence(text.subSequence(start, end), startNanoseconds, deadlineNanoseconds);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,376 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches many regexes against the whole text in one pass. The regexes are
+ * compiled into one NFA, whose DFA states are only built when a text needs
+ * them and are cached. The cache is bounded, so the memory stays bounded even
+ * for regexes whose DFA would explode.
+ */
+class LazyDfa {
+
+    /** larger bounds would blow up the NFA, e.g. <code>.{1000}</code> */
+    private static final int MAX_REPEAT = 100;
+    private static final int MAX_NFA_STATES_PER_REGEX = 10_000;
+    private static final int MAX_DFA_STATES = 10_000;
+    private static final int MAX_NON_ASCII_TRANSITIONS = 256;
+    private static final int ASCII = 128;
+
+    // the NFA, one entry per state:
+    private final List<int[]> ranges = new ArrayList<>(); // null for a split or a match
+    private final List<int[]> targets = new ArrayList<>(); // next states
+    private final List<Integer> matchedRegex = new ArrayList<>(); // -1 unless a match
+
+    private int regexCount = 0;
+    private final List<Integer> startStates = new ArrayList<>();
+
+    // built by finish():
+    private int[][] nfaRanges;
+    private int[][] nfaTargets;
+    private int[] nfaMatch;
+
+    // guarded by 'this':
+    private int[] marks;
+    private int mark = 0;
+    private int[] closureStack;
+    private int[] closureResult;
+
+    private final Map<StateKey, DfaState> dfaStates = new HashMap<>();
+    private DfaState start;
+    private long cacheFlushes = 0;
+
+    private static class DfaState {
+
+        private final int[] nfaStates; // sorted
+        private final DfaState[] asciiTransitions = new DfaState[ASCII];
+        private final Map<Integer, DfaState> otherTransitions = new HashMap<>();
+
+        private DfaState(int[] nfaStates) {
+            this.nfaStates = nfaStates;
+        }
+
+        private boolean isDead() {
+            return 0 == nfaStates.length;
+        }
+    }
+
+    private static class StateKey {
+
+        private final int[] nfaStates;
+        private final int hash;
+
+        private StateKey(int[] nfaStates) {
+            this.nfaStates = nfaStates;
+            hash = Arrays.hashCode(nfaStates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof StateKey) && Arrays.equals(nfaStates, ((StateKey) other).nfaStates);
+        }
+    }
+
+    /**
+     * Adds a regex, unless it uses constructs that a DFA can not match.
+     *
+     * @param regexIndex the index that {@link #match(CharSequence)} reports
+     * @return <code>false</code> if the regex was not added
+     */
+    boolean add(RegexNode regex, int regexIndex) {
+
+        final int rollback = ranges.size();
+        try {
+            final int match = newState(null, new int[0], regexIndex);
+            startStates.add(compile(stripTrailingAnchors(stripLeadingAnchors(regex)), match, rollback));
+            regexCount++;
+            return true;
+        } catch (final UnsupportedRegexException ex) {
+            while (ranges.size() > rollback) {
+                final int last = ranges.size() - 1;
+                ranges.remove(last);
+                targets.remove(last);
+                matchedRegex.remove(last);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Prepares the NFA for matching, no regex can be added afterwards.
+     */
+    void finish() {
+
+        final int size = ranges.size();
+        nfaRanges = ranges.toArray(new int[0][]);
+        nfaTargets = targets.toArray(new int[0][]);
+        nfaMatch = new int[size];
+        for (int i = 0; i < size; i++) {
+            nfaMatch[i] = matchedRegex.get(i);
+        }
+        marks = new int[size];
+        closureStack = new int[size];
+        closureResult = new int[size];
+        ranges.clear();
+        targets.clear();
+        matchedRegex.clear();
+    }
+
+    int getRegexCount() {
+        return regexCount;
+    }
+
+    synchronized long getCacheFlushes() {
+        return cacheFlushes;
+    }
+
+    /**
+     * @return the indexes of the regexes that match the whole text
+     */
+    synchronized BitSet match(CharSequence text) {
+
+        final BitSet result = new BitSet();
+        if (0 == regexCount) {
+            return result;
+        }
+
+        if (null == start) {
+            final int[] startStateArray = startStates.stream().mapToInt(Integer::intValue).toArray();
+            start = state(closure(startStateArray));
+        }
+
+        DfaState state = start;
+        for (int i = 0; i < text.length();) {
+            final int codePoint = Character.codePointAt(text, i);
+            i += Character.charCount(codePoint);
+
+            state = next(state, codePoint);
+            if (state.isDead()) {
+                return result; // no regex can match anymore
+            }
+        }
+
+        for (final int nfaState : state.nfaStates) {
+            if (nfaMatch[nfaState] >= 0) {
+                result.set(nfaMatch[nfaState]);
+            }
+        }
+        return result;
+    }
+
+    private DfaState next(DfaState state, int codePoint) {
+
+        DfaState next = (codePoint < ASCII) ? state.asciiTransitions[codePoint]
+                : state.otherTransitions.get(codePoint);
+        if (null != next) {
+            return next;
+        }
+
+        final int[] nextStates = new int[state.nfaStates.length];
+        int size = 0;
+        for (final int nfaState : state.nfaStates) {
+            final int[] nfaStateRanges = nfaRanges[nfaState];
+            if ((null != nfaStateRanges) && CharRanges.contains(nfaStateRanges, codePoint)) {
+                nextStates[size++] = nfaTargets[nfaState][0];
+            }
+        }
+        next = state(closure(Arrays.copyOf(nextStates, size)));
+
+        if (codePoint < ASCII) {
+            state.asciiTransitions[codePoint] = next;
+        } else {
+            if (state.otherTransitions.size() >= MAX_NON_ASCII_TRANSITIONS) {
+                state.otherTransitions.clear();
+            }
+            state.otherTransitions.put(codePoint, next);
+        }
+        return next;
+    }
+
+    private DfaState state(int[] nfaStates) {
+
+        final StateKey key = new StateKey(nfaStates);
+        DfaState state = dfaStates.get(key);
+        if (null == state) {
+            if (dfaStates.size() >= MAX_DFA_STATES) {
+                // start over, the states of the current text stay usable until it is done:
+                dfaStates.clear();
+                start = null;
+                cacheFlushes++;
+            }
+            state = new DfaState(nfaStates);
+            dfaStates.put(key, state);
+        }
+        return state;
+    }
+
+    /**
+     * @return the sorted states that consume a character or match, reachable
+     *         from the given states without consuming a character
+     */
+    private int[] closure(int[] nfaStates) {
+
+        mark++;
+        final int[] stack = closureStack;
+        int stackSize = 0;
+        final int[] result = closureResult;
+        int size = 0;
+
+        for (final int nfaState : nfaStates) {
+            if (marks[nfaState] != mark) {
+                marks[nfaState] = mark;
+                stack[stackSize++] = nfaState;
+            }
+        }
+        while (stackSize > 0) {
+            final int nfaState = stack[--stackSize];
+            if ((null != nfaRanges[nfaState]) || (nfaMatch[nfaState] >= 0)) {
+                result[size++] = nfaState;
+                continue;
+            }
+            for (final int target : nfaTargets[nfaState]) {
+                if (marks[target] != mark) {
+                    marks[target] = mark;
+                    stack[stackSize++] = target;
+                }
+            }
+        }
+
+        final int[] sorted = Arrays.copyOf(result, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Compiles the node backwards, so that its last state leads to the given
+     * next state.
+     *
+     * @return the first state of the node
+     */
+    private int compile(RegexNode node, int next, int firstState) throws UnsupportedRegexException {
+
+        if ((ranges.size() - firstState) > MAX_NFA_STATES_PER_REGEX) {
+            throw new UnsupportedRegexException("too many states");
+        }
+
+        if (node instanceof RegexNode.Chars) {
+            return newState(((RegexNode.Chars) node).ranges, new int[] { next }, -1);
+        }
+
+        if (node instanceof RegexNode.Concat) {
+            final List<RegexNode> items = ((RegexNode.Concat) node).items;
+            int first = next;
+            for (int i = items.size() - 1; i >= 0; i--) {
+                first = compile(items.get(i), first, firstState);
+            }
+            return first;
+        }
+
+        if (node instanceof RegexNode.Alternation) {
+            final List<RegexNode> branches = ((RegexNode.Alternation) node).branches;
+            final int[] branchStates = new int[branches.size()];
+            for (int i = 0; i < branchStates.length; i++) {
+                branchStates[i] = compile(branches.get(i), next, firstState);
+            }
+            return newState(null, branchStates, -1);
+        }
+
+        if (node instanceof RegexNode.Repeat) {
+            final RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+            if (repeat.possessive) {
+                throw new UnsupportedRegexException("possessive quantifier");
+            }
+            if ((repeat.min > MAX_REPEAT) || (repeat.max > MAX_REPEAT)) {
+                throw new UnsupportedRegexException("repeat bound above " + MAX_REPEAT);
+            }
+
+            int first;
+            if (RegexNode.UNBOUNDED == repeat.max) {
+                // a loop: either one more repetition or on to the next state
+                final int loop = newState(null, new int[] { next }, -1);
+                targets.set(loop, new int[] { compile(repeat.item, loop, firstState), next });
+                first = loop;
+            } else {
+                // the optional repetitions, each of them can skip the rest:
+                first = next;
+                for (int i = repeat.min; i < repeat.max; i++) {
+                    first = newState(null, new int[] { compile(repeat.item, first, firstState), next }, -1);
+                }
+            }
+            for (int i = 0; i < repeat.min; i++) {
+                first = compile(repeat.item, first, firstState);
+            }
+            return first;
+        }
+
+        // anchors in the middle of the regex, lookarounds, ...:
+        throw new UnsupportedRegexException(node.getClass().getSimpleName());
+    }
+
+    private int newState(int[] stateRanges, int[] stateTargets, int regexIndex) {
+
+        ranges.add(stateRanges);
+        targets.add(stateTargets);
+        matchedRegex.add(regexIndex);
+        return ranges.size() - 1;
+    }
+
+    /**
+     * The whole text has to match, so a <code>^</code> at the start of the
+     * regex is always true.
+     */
+    private static RegexNode stripLeadingAnchors(RegexNode node) {
+
+        if ((node instanceof RegexNode.Anchor) && ((RegexNode.Anchor) node).begin) {
+            return new RegexNode.Concat(List.of());
+        }
+        if (node instanceof RegexNode.Alternation) {
+            final List<RegexNode> branches = new ArrayList<>();
+            for (final RegexNode branch : ((RegexNode.Alternation) node).branches) {
+                branches.add(stripLeadingAnchors(branch));
+            }
+            return new RegexNode.Alternation(branches);
+        }
+        if ((node instanceof RegexNode.Concat) && !((RegexNode.Concat) node).items.isEmpty()) {
+            final List<RegexNode> items = new ArrayList<>(((RegexNode.Concat) node).items);
+            items.set(0, stripLeadingAnchors(items.get(0)));
+            return new RegexNode.Concat(items);
+        }
+        return node;
+    }
+
+    /**
+     * Like {@link #stripLeadingAnchors(RegexNode)} for a <code>$</code> at the
+     * end.
+     */
+    private static RegexNode stripTrailingAnchors(RegexNode node) {
+
+        if ((node instanceof RegexNode.Anchor) && !((RegexNode.Anchor) node).begin) {
+            return new RegexNode.Concat(List.of());
+        }
+        if (node instanceof RegexNode.Alternation) {
+            final List<RegexNode> branches = new ArrayList<>();
+            for (final RegexNode branch : ((RegexNode.Alternation) node).branches) {
+                branches.add(stripTrailingAnchors(branch));
+            }
+            return new RegexNode.Alternation(branches);
+        }
+        if ((node instanceof RegexNode.Concat) && !((RegexNode.Concat) node).items.isEmpty()) {
+            final List<RegexNode> items = new ArrayList<>(((RegexNode.Concat) node).items);
+            final int last = items.size() - 1;
+            items.set(last, stripTrailingAnchors(items.get(last)));
+            return new RegexNode.Concat(items);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,91 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.List;
+
+/**
+ * The syntax tree of a regex, see {@link RegexParser}.
+ */
+abstract class RegexNode {
+
+    /** unbounded maximum of a {@link Repeat} */
+    static final int UNBOUNDED = -1;
+
+    /**
+     * One code point out of a set, e.g. a literal character, a character class
+     * or <code>.</code>.
+     */
+    static final class Chars extends RegexNode {
+
+        final int[] ranges;
+
+        Chars(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        Chars(int codePoint) {
+            this(CharRanges.of(codePoint, codePoint));
+        }
+
+        boolean isLiteral() {
+            return (2 == ranges.length) && (ranges[0] == ranges[1]);
+        }
+    }
+
+    static final class Concat extends RegexNode {
+
+        final List<RegexNode> items;
+
+        Concat(List<RegexNode> items) {
+            this.items = items;
+        }
+    }
+
+    static final class Alternation extends RegexNode {
+
+        final List<RegexNode> branches;
+
+        Alternation(List<RegexNode> branches) {
+            this.branches = branches;
+        }
+    }
+
+    static final class Repeat extends RegexNode {
+
+        final RegexNode item;
+        final int min;
+        final int max;
+        /** e.g. <code>a*+</code>, which never gives back what it has matched */
+        final boolean possessive;
+
+        Repeat(RegexNode item, int min, int max, boolean possessive) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+            this.possessive = possessive;
+        }
+    }
+
+    /** <code>^</code> or <code>$</code> */
+    static final class Anchor extends RegexNode {
+
+        final boolean begin;
+
+        Anchor(boolean begin) {
+            this.begin = begin;
+        }
+    }
+
+    /**
+     * A construct that is only understood by <code>java.util.regex</code>, e.g.
+     * a lookaround, a word boundary or an atomic group.
+     */
+    static final class Opaque extends RegexNode {
+
+        /** <code>true</code> if it does not consume any text */
+        final boolean zeroWidth;
+
+        Opaque(boolean zeroWidth) {
+            this.zeroWidth = zeroWidth;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the subset of the <code>java.util.regex</code> syntax (without flags)
+ * that {@link RegexSet} can reason about. The regex has already been compiled
+ * by {@link java.util.regex.Pattern}, so it is known to be valid. Everything
+ * else (e.g. inline flags, backreferences and Unicode properties) throws an
+ * {@link UnsupportedRegexException}, lookarounds, word boundaries and atomic
+ * groups become {@link RegexNode.Opaque}.
+ */
+class RegexParser {
+
+    private final String regex;
+    private int position = 0;
+
+    private RegexParser(String regex) {
+        this.regex = regex;
+    }
+
+    static RegexNode parse(String regex) throws UnsupportedRegexException {
+
+        final RegexParser parser = new RegexParser(regex);
+        final RegexNode node = parser.parseAlternation();
+        if (parser.position < regex.length()) {
+            throw new UnsupportedRegexException("unexpected '" + parser.peek() + "' at " + parser.position);
+        }
+        return node;
+    }
+
+    private RegexNode parseAlternation() throws UnsupportedRegexException {
+
+        final List<RegexNode> branches = new ArrayList<>();
+        branches.add(parseConcat());
+        while (more() && ('|' == peek())) {
+            position++;
+            branches.add(parseConcat());
+        }
+        return (1 == branches.size()) ? branches.get(0) : new RegexNode.Alternation(branches);
+    }
+
+    private RegexNode parseConcat() throws UnsupportedRegexException {
+
+        final List<RegexNode> items = new ArrayList<>();
+        while (more() && ('|' != peek()) && (')' != peek())) {
+            final int c = peek();
+            if (('\\' == c) && ((position + 1) < regex.length()) && ('Q' == regex.charAt(position + 1))) {
+                parseQuote(items);
+                continue;
+            }
+            items.add(parseQuantifier(parseAtom()));
+        }
+        return (1 == items.size()) ? items.get(0) : new RegexNode.Concat(items);
+    }
+
+    /**
+     * <code>\Q...\E</code>, the quoted characters are literals.
+     */
+    private void parseQuote(List<RegexNode> items) throws UnsupportedRegexException {
+
+        position += 2;
+        int end = regex.indexOf("\\E", position);
+        if (end < 0) {
+            end = regex.length();
+        }
+        final List<RegexNode> literals = new ArrayList<>();
+        while (position < end) {
+            literals.add(new RegexNode.Chars(next()));
+        }
+        position = Math.min(regex.length(), end + 2);
+
+        // a quantifier applies to the last quoted character only:
+        if (!literals.isEmpty()) {
+            final int last = literals.size() - 1;
+            literals.set(last, parseQuantifier(literals.get(last)));
+        }
+        items.addAll(literals);
+    }
+
+    private RegexNode parseAtom() throws UnsupportedRegexException {
+
+        final int c = next();
+        switch (c) {
+
+        case '(':
+            return parseGroup();
+
+        case '[':
+            return new RegexNode.Chars(parseClass());
+
+        case '.':
+            return new RegexNode.Chars(CharRanges.DOT);
+
+        case '^':
+            return new RegexNode.Anchor(true);
+
+        case '$':
+            return new RegexNode.Anchor(false);
+
+        case '\\':
+            return parseEscape();
+
+        case '*':
+        case '+':
+        case '?':
+        case '{':
+            throw new UnsupportedRegexException("dangling quantifier at " + (position - 1));
+
+        default:
+            return new RegexNode.Chars(c);
+        }
+    }
+
+    private RegexNode parseGroup() throws UnsupportedRegexException {
+
+        RegexNode.Opaque opaque = null;
+        if (more() && ('?' == peek())) {
+            position++;
+            final int kind = next();
+            if (':' == kind) {
+                // non-capturing group
+            } else if (('=' == kind) || ('!' == kind)) {
+                opaque = new RegexNode.Opaque(true); // lookahead
+            } else if ('>' == kind) {
+                opaque = new RegexNode.Opaque(false); // atomic group
+            } else if ('<' == kind) {
+                if (more() && (('=' == peek()) || ('!' == peek()))) {
+                    position++;
+                    opaque = new RegexNode.Opaque(true); // lookbehind
+                } else {
+                    // named group:
+                    while (more() && ('>' != peek())) {
+                        position++;
+                    }
+                    position++;
+                }
+            } else {
+                throw new UnsupportedRegexException("inline flags at " + (position - 1));
+            }
+        }
+
+        final RegexNode node = parseAlternation();
+        if (!more() || (')' != next())) {
+            throw new UnsupportedRegexException("unclosed group");
+        }
+        return (null == opaque) ? node : opaque;
+    }
+
+    private RegexNode parseEscape() throws UnsupportedRegexException {
+
+        final int c = next();
+        switch (c) {
+
+        case 'd':
+            return new RegexNode.Chars(CharRanges.DIGIT);
+        case 'D':
+            return new RegexNode.Chars(CharRanges.complement(CharRanges.DIGIT));
+        case 'w':
+            return new RegexNode.Chars(CharRanges.WORD);
+        case 'W':
+            return new RegexNode.Chars(CharRanges.complement(CharRanges.WORD));
+        case 's':
+            return new RegexNode.Chars(CharRanges.SPACE);
+        case 'S':
+            return new RegexNode.Chars(CharRanges.complement(CharRanges.SPACE));
+
+        case 'b':
+        case 'B':
+        case 'A':
+        case 'G':
+        case 'Z':
+        case 'z':
+            if (('b' == c) && more() && ('{' == peek())) {
+                throw new UnsupportedRegexException("\\b{...} at " + (position - 2));
+            }
+            return new RegexNode.Opaque(true);
+
+        default:
+            return new RegexNode.Chars(parseEscapedLiteral(c));
+        }
+    }
+
+    /**
+     * @param c the character after the backslash
+     * @return the code point of an escaped literal
+     */
+    private int parseEscapedLiteral(int c) throws UnsupportedRegexException {
+
+        switch (c) {
+        case 't':
+            return '\t';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 'f':
+            return '\f';
+        case 'a':
+            return 0x07;
+        case 'e':
+            return 0x1B;
+
+        case 'x':
+            if (more() && ('{' == peek())) {
+                position++;
+                final int end = regex.indexOf('}', position);
+                if (end < 0) {
+                    throw new UnsupportedRegexException("unclosed \\x{");
+                }
+                final int codePoint = parseHex(position, end);
+                position = end + 1;
+                return codePoint;
+            }
+            position += 2;
+            return parseHex(position - 2, position);
+
+        case 'u':
+            position += 4;
+            final int unit = parseHex(position - 4, position);
+            if (Character.isHighSurrogate((char) unit) && regex.startsWith("\\u", position)) {
+                // a surrogate pair is one code point:
+                final int low = parseHex(position + 2, position + 6);
+                if (Character.isLowSurrogate((char) low)) {
+                    position += 6;
+                    return Character.toCodePoint((char) unit, (char) low);
+                }
+            }
+            return unit;
+
+        default:
+            if (!Character.isLetterOrDigit(c)) {
+                return c; // e.g. \. or \\
+            }
+            throw new UnsupportedRegexException("\\" + new String(Character.toChars(c)) + " at " + (position - 2));
+        }
+    }
+
+    private int parseHex(int from, int to) throws UnsupportedRegexException {
+
+        try {
+            return Integer.parseInt(regex.substring(from, to), 16);
+        } catch (final RuntimeException ex) {
+            throw new UnsupportedRegexException("invalid hex escape at " + from);
+        }
+    }
+
+    /**
+     * A character class after the <code>[</code>, e.g. <code>[^a-z\d]</code>.
+     */
+    private int[] parseClass() throws UnsupportedRegexException {
+
+        boolean negated = false;
+        if (more() && ('^' == peek())) {
+            position++;
+            negated = true;
+        }
+        if (more() && (']' == peek())) {
+            throw new UnsupportedRegexException("']' at the start of a character class");
+        }
+
+        int[] ranges = CharRanges.EMPTY;
+        while (true) {
+            if (!more()) {
+                throw new UnsupportedRegexException("unclosed character class");
+            }
+
+            int c = next();
+            if (']' == c) {
+                break;
+            }
+            if ('[' == c) {
+                throw new UnsupportedRegexException("nested character class");
+            }
+            if (('&' == c) && more() && ('&' == peek())) {
+                throw new UnsupportedRegexException("character class intersection");
+            }
+
+            if ('\\' == c) {
+                final int[] predefined = parseClassEscape();
+                if (null != predefined) {
+                    ranges = CharRanges.union(ranges, predefined);
+                    continue;
+                }
+                c = parseEscapedLiteral(next());
+            }
+
+            // a range, unless the '-' is the last character of the class:
+            if (more() && ('-' == peek()) && ((position + 1) < regex.length())
+                    && (']' != regex.charAt(position + 1))) {
+                position++;
+                int to = next();
+                if ('[' == to) {
+                    throw new UnsupportedRegexException("nested character class");
+                }
+                if ('\\' == to) {
+                    if (null != parseClassEscape()) {
+                        throw new UnsupportedRegexException("range to a predefined class");
+                    }
+                    to = parseEscapedLiteral(next());
+                }
+                if (to < c) {
+                    throw new UnsupportedRegexException("invalid range");
+                }
+                ranges = CharRanges.union(ranges, CharRanges.of(c, to));
+            } else {
+                ranges = CharRanges.union(ranges, CharRanges.of(c, c));
+            }
+        }
+
+        return negated ? CharRanges.complement(ranges) : ranges;
+    }
+
+    /**
+     * @return the ranges of a predefined class such as <code>\d</code> after
+     *         the backslash, or <code>null</code> if the escape is a literal
+     *         (the position is then unchanged)
+     */
+    private int[] parseClassEscape() throws UnsupportedRegexException {
+
+        if (!more()) {
+            throw new UnsupportedRegexException("dangling backslash");
+        }
+        switch (peek()) {
+        case 'd':
+            position++;
+            return CharRanges.DIGIT;
+        case 'D':
+            position++;
+            return CharRanges.complement(CharRanges.DIGIT);
+        case 'w':
+            position++;
+            return CharRanges.WORD;
+        case 'W':
+            position++;
+            return CharRanges.complement(CharRanges.WORD);
+        case 's':
+            position++;
+            return CharRanges.SPACE;
+        case 'S':
+            position++;
+            return CharRanges.complement(CharRanges.SPACE);
+        default:
+            return null;
+        }
+    }
+
+    private RegexNode parseQuantifier(RegexNode item) throws UnsupportedRegexException {
+
+        if (!more()) {
+            return item;
+        }
+
+        final int min;
+        final int max;
+        switch (peek()) {
+        case '*':
+            position++;
+            min = 0;
+            max = RegexNode.UNBOUNDED;
+            break;
+        case '+':
+            position++;
+            min = 1;
+            max = RegexNode.UNBOUNDED;
+            break;
+        case '?':
+            position++;
+            min = 0;
+            max = 1;
+            break;
+        case '{':
+            final int end = regex.indexOf('}', position);
+            if (end < 0) {
+                throw new UnsupportedRegexException("unclosed quantifier");
+            }
+            final String bounds = regex.substring(position + 1, end);
+            final int comma = bounds.indexOf(',');
+            try {
+                if (comma < 0) {
+                    min = Integer.parseInt(bounds);
+                    max = min;
+                } else {
+                    min = Integer.parseInt(bounds.substring(0, comma));
+                    max = (comma == bounds.length() - 1) ? RegexNode.UNBOUNDED
+                            : Integer.parseInt(bounds.substring(comma + 1));
+                }
+            } catch (final NumberFormatException ex) {
+                throw new UnsupportedRegexException("invalid quantifier '{" + bounds + "}'");
+            }
+            position = end + 1;
+            break;
+        default:
+            return item;
+        }
+
+        boolean possessive = false;
+        if (more() && ('?' == peek())) {
+            position++; // lazy, matches the same texts
+        } else if (more() && ('+' == peek())) {
+            position++;
+            possessive = true;
+        }
+
+        if (more() && (('*' == peek()) || ('+' == peek()) || ('?' == peek()) || ('{' == peek()))) {
+            throw new UnsupportedRegexException("stacked quantifiers at " + position);
+        }
+        return new RegexNode.Repeat(item, min, max, possessive);
+    }
+
+    private boolean more() {
+        return position < regex.length();
+    }
+
+    private int peek() {
+        return regex.codePointAt(position);
+    }
+
+    private int next() {
+
+        final int c = regex.codePointAt(position);
+        position += Character.charCount(c);
+        return c;
+    }
+}
@@ -0,0 +1,146 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a list of regexes against whole texts like
+ * <code>pattern.matcher(text).matches()</code>, but in one pass over the
+ * text: the regexes that only use regular constructs share one lazily built
+ * DFA. The others (e.g. with lookarounds, backreferences or inline flags) are
+ * matched by their {@link Pattern}, and only if the text contains one of the
+ * literals that every match has to contain. Immutable apart from the DFA
+ * cache, thread-safe.
+ */
+public class RegexSet {
+
+    private final List<Pattern> patterns;
+    private final LazyDfa dfa = new LazyDfa();
+    private final boolean[] inDfa;
+    private final List<Set<String>> literals = new ArrayList<>();
+    private int prefilterCount = 0;
+
+    public RegexSet(List<Pattern> patterns) {
+
+        this.patterns = new ArrayList<>(patterns);
+        inDfa = new boolean[patterns.size()];
+
+        for (int i = 0; i < patterns.size(); i++) {
+            RegexNode regex;
+            try {
+                regex = RegexParser.parse(patterns.get(i).pattern());
+            } catch (final UnsupportedRegexException ex) {
+                regex = null;
+            }
+
+            inDfa[i] = (null != regex) && dfa.add(regex, i);
+            final Set<String> regexLiterals = ((null == regex) || inDfa[i]) ? null : RequiredLiterals.of(regex);
+            literals.add(regexLiterals);
+            if (null != regexLiterals) {
+                prefilterCount++;
+            }
+        }
+        dfa.finish();
+    }
+
+    /**
+     * @param deadlineNanoseconds the deadline of the {@link Pattern} regexes
+     *                            for this text, see
+     *                            {@link DeadlineCharSequence#matches(Pattern, String, long)}
+     * @return the matches of the regexes against the text, computed when they
+     *         are needed
+     */
+    public Scan scan(String text, long deadlineNanoseconds) {
+        return new Scan(text, deadlineNanoseconds);
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    /**
+     * @return the number of regexes that are matched by the DFA
+     */
+    public int getAutomatonCount() {
+        return dfa.getRegexCount();
+    }
+
+    /**
+     * @return the number of other regexes that have literals to rule out texts
+     */
+    public int getPrefilterCount() {
+        return prefilterCount;
+    }
+
+    /**
+     * @return <code>true</code> if the regex at the given index is matched by
+     *         the DFA
+     */
+    public boolean isInAutomaton(int index) {
+        return inDfa[index];
+    }
+
+    /**
+     * @return how often the DFA cache was full and had to start over
+     */
+    public long getCacheFlushes() {
+        return dfa.getCacheFlushes();
+    }
+
+    /**
+     * The matches against one text, not thread-safe.
+     */
+    public class Scan {
+
+        private final String text;
+        private final long deadlineNanoseconds;
+        private BitSet dfaMatches;
+        private long dfaNanoseconds = 0;
+
+        private Scan(String text, long deadlineNanoseconds) {
+            this.text = text;
+            this.deadlineNanoseconds = deadlineNanoseconds;
+        }
+
+        /**
+         * @return <code>true</code> if the regex at the given index matches the
+         *         whole text
+         * @throws RegexTimeoutException if the {@link Pattern} of the regex
+         *                               is still running at the deadline
+         */
+        public boolean matches(int index) {
+
+            if (inDfa[index]) {
+                if (null == dfaMatches) {
+                    final long start = System.nanoTime();
+                    dfaMatches = dfa.match(text); // all regexes of the DFA at once
+                    dfaNanoseconds = System.nanoTime() - start;
+                }
+                return dfaMatches.get(index);
+            }
+
+            final Set<String> regexLiterals = literals.get(index);
+            if ((null != regexLiterals) && !RequiredLiterals.containsAny(text, regexLiterals)) {
+                return false;
+            }
+            return DeadlineCharSequence.matches(patterns.get(index), text, deadlineNanoseconds);
+        }
+
+        /**
+         * @return <code>true</code> if the DFA has run for this text
+         */
+        public boolean hasRunAutomaton() {
+            return null != dfaMatches;
+        }
+
+        /**
+         * @return the time the DFA took for this text
+         */
+        public long getAutomatonNanoseconds() {
+            return dfaNanoseconds;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+/**
+ * A regex was still running at the deadline of its text, see
+ * {@link DeadlineCharSequence}.
+ */
+public class RegexTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long elapsedNanoseconds;
+
+    RegexTimeoutException(long elapsedNanoseconds) {
+        super("regex timed out after " + (elapsedNanoseconds / 1_000_000) + " ms");
+        this.elapsedNanoseconds = elapsedNanoseconds;
+    }
+
+    public long getElapsedNanoseconds() {
+        return elapsedNanoseconds;
+    }
+}
@@ -0,0 +1,220 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts literal strings from a regex of which every matching text contains
+ * at least one, e.g. "spam" and "scam" for <code>.*(sp|sc)am\d+</code>. If
+ * none of them is contained in a message, the regex can not match and does not
+ * have to run.
+ */
+class RequiredLiterals {
+
+    private static final int MAX_LITERALS = 16;
+    private static final int MAX_LITERAL_LENGTH = 64;
+    /** shorter literals would not rule out enough messages to be worth it */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    /**
+     * What is known about the texts that a part of the regex matches.
+     */
+    private static class Info {
+
+        /** all texts it can match or <code>null</code> if there are too many */
+        private final Set<String> exact;
+        /** every text it matches contains one of these, or <code>null</code> */
+        private final Set<String> required;
+
+        private Info(Set<String> exact, Set<String> required) {
+            this.exact = exact;
+            this.required = required;
+        }
+
+        private Set<String> best() {
+            return better(exact, required);
+        }
+    }
+
+    private RequiredLiterals() {
+    }
+
+    /**
+     * @return the literals or <code>null</code> if there are no useful ones
+     */
+    static Set<String> of(RegexNode regex) {
+
+        final Set<String> literals = analyze(regex).best();
+        return (minLength(literals) >= MIN_LITERAL_LENGTH) ? literals : null;
+    }
+
+    /**
+     * @return <code>true</code> if the text contains at least one of the
+     *         literals
+     */
+    static boolean containsAny(String text, Set<String> literals) {
+
+        for (final String literal : literals) {
+            if (text.contains(literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Info analyze(RegexNode node) {
+
+        if (node instanceof RegexNode.Chars) {
+            final int[] ranges = ((RegexNode.Chars) node).ranges;
+            if (CharRanges.size(ranges) > MAX_LITERALS) {
+                return new Info(null, null);
+            }
+            final Set<String> exact = new LinkedHashSet<>();
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int codePoint = ranges[i]; codePoint <= ranges[i + 1]; codePoint++) {
+                    exact.add(new String(Character.toChars(codePoint)));
+                }
+            }
+            return new Info(exact, null);
+        }
+
+        if (node instanceof RegexNode.Anchor) {
+            return new Info(Set.of(""), null);
+        }
+
+        if (node instanceof RegexNode.Opaque) {
+            return new Info(((RegexNode.Opaque) node).zeroWidth ? Set.of("") : null, null);
+        }
+
+        if (node instanceof RegexNode.Concat) {
+            return analyzeConcat(((RegexNode.Concat) node).items);
+        }
+
+        if (node instanceof RegexNode.Alternation) {
+            Set<String> exact = new LinkedHashSet<>();
+            Set<String> required = new LinkedHashSet<>();
+            for (final RegexNode branch : ((RegexNode.Alternation) node).branches) {
+                final Info info = analyze(branch);
+                exact = union(exact, info.exact);
+                required = union(required, info.best());
+            }
+            return new Info(exact, required);
+        }
+
+        final RegexNode.Repeat repeat = (RegexNode.Repeat) node;
+        final Info item = analyze(repeat.item);
+        if (0 == repeat.max) {
+            return new Info(Set.of(""), null);
+        }
+        if (0 == repeat.min) {
+            final Set<String> exact = (1 == repeat.max) ? union(Set.of(""), item.exact) : null;
+            return new Info(exact, null);
+        }
+
+        // at least one repetition:
+        Set<String> exact = null;
+        if ((repeat.min == repeat.max) && (null != item.exact)) {
+            exact = Set.of("");
+            for (int i = 0; (i < repeat.min) && (null != exact); i++) {
+                exact = product(exact, item.exact);
+            }
+        }
+        return new Info(exact, item.best());
+    }
+
+    private static Info analyzeConcat(List<RegexNode> items) {
+
+        // a run of items with exact texts is one literal part of the text:
+        Set<String> run = Set.of("");
+        Set<String> required = null;
+        boolean allExact = true;
+
+        for (final RegexNode item : items) {
+            final Info info = analyze(item);
+            required = better(required, info.required);
+
+            if (null == info.exact) {
+                required = better(required, run);
+                run = Set.of("");
+                allExact = false;
+                continue;
+            }
+
+            final Set<String> longerRun = product(run, info.exact);
+            if (null == longerRun) {
+                required = better(required, run);
+                run = info.exact;
+                allExact = false;
+            } else {
+                run = longerRun;
+            }
+        }
+
+        return new Info(allExact ? run : null, better(required, run));
+    }
+
+    /**
+     * @return all concatenations or <code>null</code> if they are too many or
+     *         too long
+     */
+    private static Set<String> product(Set<String> prefixes, Set<String> suffixes) {
+
+        if ((null == prefixes) || (null == suffixes) || ((prefixes.size() * suffixes.size()) > MAX_LITERALS)) {
+            return null;
+        }
+
+        final Set<String> result = new LinkedHashSet<>();
+        for (final String prefix : prefixes) {
+            for (final String suffix : suffixes) {
+                if ((prefix.length() + suffix.length()) > MAX_LITERAL_LENGTH) {
+                    return null;
+                }
+                result.add(prefix + suffix);
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+
+        if ((null == a) || (null == b) || ((a.size() + b.size()) > MAX_LITERALS)) {
+            return null;
+        }
+        final Set<String> result = new LinkedHashSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    /**
+     * @return the set that rules out more texts: the one with the longer
+     *         shortest literal, then the smaller one
+     */
+    private static Set<String> better(Set<String> a, Set<String> b) {
+
+        if (null == a) {
+            return b;
+        }
+        if (null == b) {
+            return a;
+        }
+        final int minLengthA = minLength(a);
+        final int minLengthB = minLength(b);
+        if (minLengthA != minLengthB) {
+            return (minLengthA > minLengthB) ? a : b;
+        }
+        return (a.size() <= b.size()) ? a : b;
+    }
+
+    private static int minLength(Set<String> literals) {
+
+        if ((null == literals) || literals.isEmpty()) {
+            return 0;
+        }
+        int minLength = Integer.MAX_VALUE;
+        for (final String literal : literals) {
+            minLength = Math.min(minLength, literal.length());
+        }
+        return minLength;
+    }
+}
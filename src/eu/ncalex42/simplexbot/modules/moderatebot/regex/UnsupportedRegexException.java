@@ -0,0 +1,13 @@
+package eu.ncalex42.simplexbot.modules.moderatebot.regex;
+
+/**
+ * The regex uses a construct that only <code>java.util.regex</code> can match.
+ */
+class UnsupportedRegexException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedRegexException(String message) {
+        super(message);
+    }
+}
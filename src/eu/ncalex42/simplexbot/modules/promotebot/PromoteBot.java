@@ -7,11 +7,14 @@ import java.nio.file.Path;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import eu.ncalex42.simplexbot.Start;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
+import eu.ncalex42.simplexbot.scheduler.CronTrigger;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.model.GroupMember;
 
@@ -19,7 +22,7 @@ import eu.ncalex42.simplexbot.simplex.model.GroupMember;
  * This module changes the role of every member in a given group from 'observer'
  * to 'member'.
  */
-public class PromoteBot implements Runnable {
+public class PromoteBot implements BotModule {
 
     private final SimplexConnection simplexConnection;
     private final String groupToProcess;
@@ -28,14 +31,13 @@ public class PromoteBot implements Runnable {
 
     private final int[] weekdaysToRun;
     private final int[] hoursToRun;
-    private final int sleepTimeInMinutes;
+    private final CronTrigger schedule;
     private final int minWaitTimePerMemberInDays;
 
     private final List<String> contactsForReporting;
     private final List<String> groupsForReporting;
 
-    private String lastRunDate = "";
-    private int lastRunHour = -1;
+    private long nextRunMilliseconds = 0;
 
     public static PromoteBot init(Path configFile) throws IOException {
 
@@ -45,7 +47,6 @@ public class PromoteBot implements Runnable {
         final List<String> groupsForOutput = new LinkedList<>();
         int[] weekDaysToRun = null;
         int[] hoursToRun = null;
-        int sleepTimeInMinutes = -59;
         int minWaitTimePerMemberInDays = -1;
         final List<String> contactsForReporting = new LinkedList<>();
         final List<String> groupsForReporting = new LinkedList<>();
@@ -108,12 +109,6 @@ public class PromoteBot implements Runnable {
                 }
                 break;
 
-            case PromoteBotConstants.CONFIG_SLEEP_TIME_MINUTES:
-                if (!value.isBlank()) {
-                    sleepTimeInMinutes = Integer.parseInt(value);
-                }
-                break;
-
             case PromoteBotConstants.CONFIG_MIN_WAIT_TIME_DAYS:
                 if (!value.isBlank()) {
                     minWaitTimePerMemberInDays = Integer.parseInt(value);
@@ -148,35 +143,38 @@ public class PromoteBot implements Runnable {
                     + PromoteBotConstants.CONFIG_PORT + "' and '" + PromoteBotConstants.CONFIG_GROUP + "'");
         }
 
-        if ((null == weekDaysToRun) || (null == hoursToRun) || (sleepTimeInMinutes < 0)
-                || (minWaitTimePerMemberInDays < 0)) {
+        if ((null == weekDaysToRun) || (null == hoursToRun) || (minWaitTimePerMemberInDays < 0)) {
             Util.logWarning("[" + PromoteBot.class.getSimpleName()
                     + "] Some config properties are missing or are invalid, using defaults!", null, null, null);
         }
 
         SimplexConnection.initSimplexConnection(port);
         return new PromoteBot(SimplexConnection.get(port), groupToProcess, contactsForOutput, groupsForOutput,
-                weekDaysToRun, hoursToRun, sleepTimeInMinutes, minWaitTimePerMemberInDays, contactsForReporting,
-                groupsForReporting);
+                weekDaysToRun, hoursToRun, minWaitTimePerMemberInDays, contactsForReporting, groupsForReporting);
     }
 
     private PromoteBot(SimplexConnection simplexConnection, String groupToProcess, List<String> contactsForOutput,
-            List<String> groupsForOutput, int[] weekdaysToRun, int[] hoursToRun, int sleepTimeInMinutes,
-            int minWaitTimePerMemberInDays, List<String> contactsForReporting, List<String> groupsForReporting) {
+            List<String> groupsForOutput, int[] weekdaysToRun, int[] hoursToRun, int minWaitTimePerMemberInDays,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
         this.simplexConnection = simplexConnection;
         this.groupToProcess = groupToProcess;
         this.contactsForOutput = contactsForOutput;
         this.groupsForOutput = groupsForOutput;
         this.weekdaysToRun = weekdaysToRun;
         this.hoursToRun = hoursToRun;
-        this.sleepTimeInMinutes = Math.abs(sleepTimeInMinutes);
+        this.schedule = new CronTrigger(weekdaysToRun, hoursToRun);
         this.minWaitTimePerMemberInDays = Math.abs(minWaitTimePerMemberInDays);
         this.contactsForReporting = contactsForReporting;
         this.groupsForReporting = groupsForReporting;
     }
 
     @Override
-    public void run() {
+    public CompletableFuture<?> whenReady() {
+        return simplexConnection.whenConnected();
+    }
+
+    @Override
+    public void start(Runnable wakeUp) {
 
         Util.log(PromoteBot.class.getSimpleName() + " " + Start.VERSION + " has started with config: *"
                 + PromoteBotConstants.CONFIG_PORT + "*=" + simplexConnection.getPort() + " *"
@@ -185,124 +183,93 @@ public class PromoteBot implements Runnable {
                 + PromoteBotConstants.CONFIG_OUTPUT_GROUPS + "*=" + Util.listToString(groupsForOutput) + " *"
                 + PromoteBotConstants.CONFIG_WEEKDAYS + "*=" + Util.intArrayToString(weekdaysToRun) + " *"
                 + PromoteBotConstants.CONFIG_HOURS + "*=" + Util.intArrayToString(hoursToRun) + " *"
-                + PromoteBotConstants.CONFIG_SLEEP_TIME_MINUTES + "*=" + sleepTimeInMinutes + " *"
+                + "schedule*='" + schedule + "' *"
                 + PromoteBotConstants.CONFIG_MIN_WAIT_TIME_DAYS + "*=" + minWaitTimePerMemberInDays + " *"
                 + PromoteBotConstants.CONFIG_REPORT_TO_CONTACTS + "*=" + Util.listToString(contactsForReporting) + " *"
                 + PromoteBotConstants.CONFIG_REPORT_TO_GROUPS + "*=" + Util.listToString(groupsForReporting),
                 simplexConnection, contactsForReporting, groupsForReporting);
 
-        try {
-            while (true) {
-
-                if (shouldRun()) {
-
-                    Util.log(
-                            "Promoting members in group '" + groupToProcess + "' from '" + GroupMember.ROLE_OBSERVER
-                                    + "' to '" + GroupMember.ROLE_MEMBER + "'",
-                            simplexConnection, contactsForReporting, groupsForReporting);
-
-                    try {
-
-                        int countOfPromotedMembers = 0;
-                        final List<GroupMember> members = simplexConnection.getGroupMembers(groupToProcess,
-                                contactsForReporting, groupsForReporting);
-
-                        final long nowInSeconds = TimeUtil.getUtcSeconds();
-                        for (final GroupMember member : members) {
-
-                            // ignore members that left:
-                            if (!member.isPresent()) {
-                                continue;
-                            }
-
-                            if (!GroupMember.ROLE_OBSERVER.equalsIgnoreCase(member.getRole())) {
-                                continue;
-                            }
-
-                            final String memberConnectedTs = member.getCreatedAt();
-                            if ((null != memberConnectedTs) && !memberConnectedTs.isBlank()) {
-                                if (Math.abs(nowInSeconds - TimeUtil.timestampWithNanosToUtcSeconds(
-                                        memberConnectedTs)) < (minWaitTimePerMemberInDays * TimeUtil.SECONDS_PER_DAY)) {
-                                    continue;
-                                }
-                            } else {
-                                Util.logWarning(
-                                        "Member *'" + member.getDisplayName() + "'* [" + member.getLocalName()
-                                                + "] in group *'" + groupToProcess + "'* is not connected!",
-                                        simplexConnection, contactsForReporting, groupsForReporting);
-                            }
-
-                            if (!simplexConnection.changeGroupMemberRole(groupToProcess, member.getLocalName(),
-                                    GroupMember.ROLE_MEMBER, contactsForReporting, groupsForReporting)) {
-                                continue;
-                            }
-
-                            countOfPromotedMembers++;
-                        }
+        nextRunMilliseconds = schedule.firstFireTime(System.currentTimeMillis());
+    }
 
-                        final String successMessage = "!2 Promoted! " + countOfPromotedMembers + " member(s) in group '"
-                                + groupToProcess + "'";
-                        Util.log(successMessage, simplexConnection, contactsForReporting, groupsForReporting);
-                        if (countOfPromotedMembers > 0) {
-                            Util.outputToContactsAndGroups(successMessage, simplexConnection, contactsForOutput,
-                                    groupsForOutput, contactsForReporting, groupsForReporting);
-                        }
+    @Override
+    public long runOnce() {
 
-                    } catch (final Exception ex) {
-                        Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
-                                contactsForReporting, groupsForReporting);
-                    }
-                }
+        if (System.currentTimeMillis() >= nextRunMilliseconds) {
 
-                Thread.sleep(sleepTimeInMinutes * TimeUtil.MILLISECONDS_PER_MINUTE);
-            }
-        } catch (final Exception ex) {
-            Util.logError(
-                    PromoteBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
-                    simplexConnection, contactsForReporting, groupsForReporting);
-        }
-    }
+            Util.log("Promoting members in group '" + groupToProcess + "' from '" + GroupMember.ROLE_OBSERVER + "' to '"
+                    + GroupMember.ROLE_MEMBER + "'", simplexConnection, contactsForReporting, groupsForReporting);
 
-    private boolean shouldRun() {
-        if (checkWeekdays() && checkHours() && checkLastRun()) {
-            lastRunDate = TimeUtil.getDate();
-            lastRunHour = TimeUtil.getHourOfDay();
-            return true;
-        }
-        return false;
-    }
+            try {
 
-    private boolean checkWeekdays() {
+                final List<CompletableFuture<Boolean>> promotions = new LinkedList<>();
+                final List<GroupMember> members = simplexConnection.getGroupMembers(groupToProcess,
+                        contactsForReporting, groupsForReporting);
 
-        if (null == weekdaysToRun) {
-            return true;
-        }
+                final long nowInSeconds = TimeUtil.getUtcSeconds();
+                for (final GroupMember member : members) {
 
-        for (final int day : weekdaysToRun) {
-            if (TimeUtil.getDayOfWeek() == day) {
-                return true;
-            }
-        }
+                    // ignore members that left:
+                    if (!member.isPresent()) {
+                        continue;
+                    }
 
-        return false;
-    }
+                    if (!GroupMember.ROLE_OBSERVER.equalsIgnoreCase(member.getRole())) {
+                        continue;
+                    }
 
-    private boolean checkHours() {
+                    final String memberConnectedTs = member.getCreatedAt();
+                    if ((null != memberConnectedTs) && !memberConnectedTs.isBlank()) {
+                        final long memberConnectedSeconds = TimeUtil.timestampWithNanosToUtcSeconds(memberConnectedTs);
+                        if (Math.abs(nowInSeconds - memberConnectedSeconds) < (minWaitTimePerMemberInDays
+                                * TimeUtil.SECONDS_PER_DAY)) {
+                            continue;
+                        }
+                    } else {
+                        Util.logWarning(
+                                "Member *'" + member.getDisplayName() + "'* [" + member.getLocalName()
+                                        + "] in group *'" + groupToProcess + "'* is not connected!",
+                                simplexConnection, contactsForReporting, groupsForReporting);
+                    }
 
-        if (null == hoursToRun) {
-            return true;
-        }
+                    // send all promotions at once and collect the results afterwards:
+                    promotions.add(simplexConnection.changeGroupMemberRoleAsync(groupToProcess, member.getLocalName(),
+                            GroupMember.ROLE_MEMBER, contactsForReporting, groupsForReporting));
+                }
 
-        for (final int hour : hoursToRun) {
-            if (TimeUtil.getHourOfDay() == hour) {
-                return true;
+                int countOfPromotedMembers = 0;
+                for (final CompletableFuture<Boolean> promotion : promotions) {
+                    if (promotion.join()) {
+                        countOfPromotedMembers++;
+                    }
+                }
+
+                final String successMessage = "!2 Promoted! " + countOfPromotedMembers + " member(s) in group '"
+                        + groupToProcess + "'";
+                Util.log(successMessage, simplexConnection, contactsForReporting, groupsForReporting);
+                if (countOfPromotedMembers > 0) {
+                    Util.outputToContactsAndGroups(successMessage, simplexConnection, contactsForOutput,
+                            groupsForOutput, contactsForReporting, groupsForReporting);
+                }
+
+            } catch (final Exception ex) {
+                Util.logError("Unexpected exception: " + Util.getStackTraceAsString(ex), simplexConnection,
+                        contactsForReporting, groupsForReporting);
             }
         }
 
-        return false;
+        // no wake-ups until the next scheduled hour:
+        final long now = System.currentTimeMillis();
+        if (now >= nextRunMilliseconds) {
+            nextRunMilliseconds = schedule.nextFireTime(now);
+        }
+        return nextRunMilliseconds - now;
     }
 
-    private boolean checkLastRun() {
-        return (lastRunHour != TimeUtil.getHourOfDay()) || !lastRunDate.equals(TimeUtil.getDate());
+    @Override
+    public void onFinishedWithError(Exception ex) {
+        Util.logError(
+                PromoteBot.class.getSimpleName() + " has finished with error: " + Util.getStackTraceAsString(ex),
+                simplexConnection, contactsForReporting, groupsForReporting);
     }
 }
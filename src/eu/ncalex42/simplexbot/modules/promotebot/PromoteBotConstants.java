@@ -10,7 +10,6 @@ public class PromoteBotConstants {
     static final String CONFIG_OUTPUT_GROUPS = "output-groups";
     static final String CONFIG_WEEKDAYS = "weekdays";
     static final String CONFIG_HOURS = "hours";
-    static final String CONFIG_SLEEP_TIME_MINUTES = "sleep-time-minutes";
     static final String CONFIG_MIN_WAIT_TIME_DAYS = "min-wait-time-days-per-member";
     static final String CONFIG_REPORT_TO_CONTACTS = "report-to-contacts";
     static final String CONFIG_REPORT_TO_GROUPS = "report-to-groups";
@@ -0,0 +1,76 @@
+package eu.ncalex42.simplexbot.scheduler;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A polling interval that follows the activity of what is polled: it drops to
+ * the minimum when a poll nearly filled the retrieved window, is halved when
+ * there was something new and doubles up to the maximum while nothing
+ * happens. The delays have a random jitter of &plusmn;{@value #JITTER_PERCENT}%,
+ * so that pollers with the same interval drift apart instead of polling the
+ * simplex-cli at the same moment.
+ *
+ * Not thread-safe.
+ */
+public class AdaptiveRateTrigger {
+
+    private static final int JITTER_PERCENT = 10;
+
+    private long minPeriodMilliseconds;
+    private long maxPeriodMilliseconds;
+    private long periodMilliseconds;
+
+    /**
+     * Starts with the maximum period.
+     */
+    public AdaptiveRateTrigger(long minPeriodMilliseconds, long maxPeriodMilliseconds) {
+        setBounds(minPeriodMilliseconds, maxPeriodMilliseconds);
+        periodMilliseconds = this.maxPeriodMilliseconds;
+    }
+
+    /**
+     * Changes the bounds, the minimum is lowered to the maximum if necessary.
+     */
+    public void setBounds(long minPeriodMilliseconds, long maxPeriodMilliseconds) {
+        this.maxPeriodMilliseconds = Math.max(0, maxPeriodMilliseconds);
+        this.minPeriodMilliseconds = Math.max(0, Math.min(minPeriodMilliseconds, this.maxPeriodMilliseconds));
+        periodMilliseconds = Math.max(this.minPeriodMilliseconds,
+                Math.min(periodMilliseconds, this.maxPeriodMilliseconds));
+    }
+
+    /**
+     * Adapts the period to the result of a poll.
+     *
+     * @param newItems   the number of new items since the previous poll
+     * @param windowSize the number of items a poll can retrieve at most
+     */
+    public void update(int newItems, int windowSize) {
+
+        if ((newItems * 2L) >= windowSize) {
+            periodMilliseconds = minPeriodMilliseconds; // close to missing items
+        } else if (newItems > 0) {
+            periodMilliseconds = Math.max(minPeriodMilliseconds, periodMilliseconds / 2);
+        } else {
+            periodMilliseconds = Math.min(maxPeriodMilliseconds, Math.max(1, periodMilliseconds) * 2);
+        }
+    }
+
+    /**
+     * @return the current period without jitter
+     */
+    public long getPeriodMilliseconds() {
+        return periodMilliseconds;
+    }
+
+    /**
+     * @return the delay until the next poll in milliseconds
+     */
+    public long nextDelay() {
+
+        final long maxJitter = (periodMilliseconds * JITTER_PERCENT) / 100;
+        if (maxJitter <= 0) {
+            return periodMilliseconds;
+        }
+        return periodMilliseconds + ThreadLocalRandom.current().nextLong(-maxJitter, maxJitter + 1);
+    }
+}
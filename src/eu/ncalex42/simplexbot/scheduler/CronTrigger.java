@@ -0,0 +1,135 @@
+package eu.ncalex42.simplexbot.scheduler;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fires at the beginning of every configured hour on every configured weekday
+ * (local time), like the cron expression <code>0 hours * * weekdays</code>.
+ * The fire times are spread by up to {@value #MAX_JITTER_MILLISECONDS} ms, so
+ * that modules with the same schedule do not all hit the simplex-cli at once.
+ * Invalid weekdays and hours (e.g. "-1" to disable a module) never match.
+ */
+public class CronTrigger {
+
+    private static final long MAX_JITTER_MILLISECONDS = 60_000;
+    private static final int MAX_HOURS_TO_SEARCH = 8 * 24; // more than one week because of DST
+
+    private final boolean[] weekdays = new boolean[8]; // 1=Monday, 7=Sunday
+    private final boolean[] hours = new boolean[24];
+
+    /**
+     * @param weekdaysToRun 1=Monday ... 7=Sunday, <code>null</code> for every
+     *                      day
+     * @param hoursToRun    0-23, <code>null</code> for every hour
+     */
+    public CronTrigger(int[] weekdaysToRun, int[] hoursToRun) {
+
+        if (null == weekdaysToRun) {
+            Arrays.fill(weekdays, 1, 8, true);
+        } else {
+            for (final int weekday : weekdaysToRun) {
+                if ((weekday >= 1) && (weekday <= 7)) {
+                    weekdays[weekday] = true;
+                }
+            }
+        }
+
+        if (null == hoursToRun) {
+            Arrays.fill(hours, true);
+        } else {
+            for (final int hour : hoursToRun) {
+                if ((hour >= 0) && (hour <= 23)) {
+                    hours[hour] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the given time is within a configured hour
+     */
+    public boolean matches(long epochMilliseconds) {
+        return matches(toLocalTime(epochMilliseconds));
+    }
+
+    private boolean matches(ZonedDateTime time) {
+        return weekdays[time.getDayOfWeek().getValue()] && hours[time.getHour()];
+    }
+
+    /**
+     * @return the fire time after the hour of the given time, or
+     *         {@link Long#MAX_VALUE} if there is none
+     */
+    public long nextFireTime(long epochMilliseconds) {
+
+        ZonedDateTime time = toLocalTime(epochMilliseconds).truncatedTo(ChronoUnit.HOURS);
+        for (int i = 0; i < MAX_HOURS_TO_SEARCH; i++) {
+            time = time.plusHours(1);
+            if (matches(time)) {
+                return time.toInstant().toEpochMilli() + ThreadLocalRandom.current().nextLong(MAX_JITTER_MILLISECONDS);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the given time if it matches, otherwise the next fire time
+     */
+    public long firstFireTime(long epochMilliseconds) {
+        return matches(epochMilliseconds) ? epochMilliseconds : nextFireTime(epochMilliseconds);
+    }
+
+    private static ZonedDateTime toLocalTime(long epochMilliseconds) {
+        return Instant.ofEpochMilli(epochMilliseconds).atZone(ZoneId.systemDefault());
+    }
+
+    /**
+     * @return the schedule as cron expression, e.g. <code>0 8,20 * * 1-5</code>
+     */
+    @Override
+    public String toString() {
+
+        final String hourField = toCronField(hours, 0, 23);
+        final String weekdayField = toCronField(weekdays, 1, 7);
+        if (hourField.isEmpty() || weekdayField.isEmpty()) {
+            return "never";
+        }
+        return "0 " + hourField + " * * " + weekdayField;
+    }
+
+    private static String toCronField(boolean[] values, int min, int max) {
+
+        final StringBuilder result = new StringBuilder();
+        int value = min;
+        while (value <= max) {
+            if (!values[value]) {
+                value++;
+                continue;
+            }
+
+            int end = value;
+            while ((end < max) && values[end + 1]) {
+                end++;
+            }
+            if ((value == min) && (end == max)) {
+                return "*";
+            }
+
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(value);
+            if (end > value) {
+                result.append('-').append(end);
+            }
+            value = end + 1;
+        }
+
+        return result.toString();
+    }
+}
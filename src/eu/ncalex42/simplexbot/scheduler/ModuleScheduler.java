@@ -0,0 +1,267 @@
+package eu.ncalex42.simplexbot.scheduler;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.modules.BotModule;
+
+/**
+ * Executes all module instances on one bounded pool of worker threads, or with
+ * virtual threads on one virtual thread per iteration (see {@link Threads}).
+ * Each module is a chain of single iterations: after an iteration the next one
+ * is scheduled with the delay returned by the module, or earlier if the module
+ * is woken up. A module is never executed by two threads at the same time.
+ */
+public class ModuleScheduler {
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final ExecutorService virtualThreadExecutor; // null for platform threads
+    private final List<ModuleTask> tasks = new LinkedList<>();
+
+    public ModuleScheduler(int workerThreads) {
+
+        if (Threads.useVirtualThreads()) {
+            // the timer only hands the iterations over to virtual threads:
+            executor = new ScheduledThreadPoolExecutor(1,
+                    newPlatformThreadFactory(ModuleScheduler.class.getSimpleName() + "-timer"));
+            virtualThreadExecutor = Threads.newTaskExecutor(ModuleScheduler.class.getSimpleName());
+        } else {
+            executor = new ScheduledThreadPoolExecutor(workerThreads,
+                    newPlatformThreadFactory(ModuleScheduler.class.getSimpleName()));
+            virtualThreadExecutor = null;
+        }
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory newPlatformThreadFactory(String name) {
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true); // the main thread waits for the modules
+            return thread;
+        };
+    }
+
+    /**
+     * Starts the given module with its first iteration as soon as it is ready
+     * (see {@link BotModule#whenReady()}), independent of the other modules.
+     *
+     * @param name used as thread name while the module is executed
+     */
+    public synchronized void schedule(String name, BotModule module) {
+
+        final ModuleTask task = new ModuleTask(name, module);
+        tasks.add(task);
+        module.whenReady().whenComplete((result, throwable) -> task.scheduleNextRun(0));
+    }
+
+    /**
+     * Waits until all scheduled modules have finished.
+     */
+    public void awaitModules() {
+
+        final List<CompletableFuture<Void>> finishedFutures = new LinkedList<>();
+        synchronized (this) {
+            for (final ModuleTask task : tasks) {
+                finishedFutures.add(task.finished);
+            }
+        }
+
+        for (final CompletableFuture<Void> finished : finishedFutures) {
+            finished.join();
+        }
+        executor.shutdown();
+        if (null != virtualThreadExecutor) {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Stops all modules: no further iterations are started, running iterations
+     * are asked to end soon (see {@link BotModule#requestStop()}) and awaited,
+     * then each started module finishes its pending work and saves its state
+     * (see {@link BotModule#stop(long)}). Everything has to be done within the
+     * given time, modules that are still busy afterwards are abandoned.
+     */
+    public void shutdown(long timeoutMilliseconds) {
+
+        final long deadlineMilliseconds = System.currentTimeMillis() + timeoutMilliseconds;
+
+        final List<ModuleTask> currentTasks;
+        synchronized (this) {
+            currentTasks = new LinkedList<>(tasks);
+        }
+
+        for (final ModuleTask task : currentTasks) {
+            task.stopIntake();
+        }
+
+        for (final ModuleTask task : currentTasks) {
+            try {
+                task.idle.get(Math.max(0, deadlineMilliseconds - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException ex) {
+                Util.logWarning(task.name + " is still running, its current work might be lost!", null, null, null);
+            } catch (final Exception ex) {
+                // not expected, the future never completes exceptionally
+            }
+        }
+
+        for (final ModuleTask task : currentTasks) {
+            task.stop(deadlineMilliseconds);
+        }
+
+        executor.shutdownNow();
+        if (null != virtualThreadExecutor) {
+            virtualThreadExecutor.shutdownNow();
+        }
+    }
+
+    private class ModuleTask implements Runnable {
+
+        private final String name;
+        private final BotModule module;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final long scheduledMillis = System.currentTimeMillis();
+        private final CompletableFuture<Void> idle = new CompletableFuture<>(); // no iteration after stopping
+
+        // guarded by 'this':
+        private ScheduledFuture<?> nextRun = null;
+        private boolean running = false;
+        private boolean wakeUpRequested = false;
+        private boolean started = false;
+        private boolean stopping = false;
+
+        private ModuleTask(String name, BotModule module) {
+            this.name = name;
+            this.module = module;
+        }
+
+        private synchronized void scheduleNextRun(long delayMilliseconds) {
+
+            if (stopping) {
+                return;
+            }
+
+            if (null == virtualThreadExecutor) {
+                nextRun = executor.schedule(this, delayMilliseconds, TimeUnit.MILLISECONDS);
+            } else {
+                nextRun = executor.schedule(() -> virtualThreadExecutor.execute(this), delayMilliseconds,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized void wakeUp() {
+
+            if (finished.isDone() || stopping) {
+                return;
+            }
+
+            if (running) {
+                wakeUpRequested = true; // run again right after the current iteration
+                return;
+            }
+
+            if ((null != nextRun) && nextRun.cancel(false)) {
+                scheduleNextRun(0);
+            }
+        }
+
+        private void stopIntake() {
+
+            final boolean wasStarted;
+            synchronized (this) {
+                stopping = true;
+                if (null != nextRun) {
+                    nextRun.cancel(false);
+                }
+                if (!running) {
+                    idle.complete(null);
+                }
+                wasStarted = started;
+            }
+
+            if (wasStarted) {
+                module.requestStop();
+            }
+        }
+
+        private void stop(long deadlineMilliseconds) {
+
+            synchronized (this) {
+                if (!started) {
+                    finished.complete(null);
+                    return;
+                }
+            }
+
+            try {
+                module.stop(deadlineMilliseconds);
+            } catch (final Exception ex) {
+                Util.logError(name + " could not be stopped properly: " + ex, null, null, null);
+            }
+            finished.complete(null);
+        }
+
+        @Override
+        public void run() {
+
+            final boolean firstRun;
+            synchronized (this) {
+                if (stopping) {
+                    return; // started right before it was cancelled
+                }
+                if (running) {
+                    // woken up while the previous iteration was just starting:
+                    wakeUpRequested = true;
+                    return;
+                }
+                running = true;
+                wakeUpRequested = false;
+                firstRun = !started;
+                started = true;
+            }
+
+            final Thread currentThread = Thread.currentThread();
+            final String threadName = currentThread.getName();
+            currentThread.setName(name);
+
+            long delayMilliseconds;
+            try {
+                if (firstRun) {
+                    module.start(this::wakeUp);
+                    Util.log(name + " is ready after " + (System.currentTimeMillis() - scheduledMillis) + " ms", null,
+                            null, null);
+                }
+                delayMilliseconds = module.runOnce();
+            } catch (final Exception ex) {
+                module.onFinishedWithError(ex);
+                delayMilliseconds = -1;
+            } finally {
+                currentThread.setName(threadName);
+            }
+
+            synchronized (this) {
+                running = false;
+                if (stopping) {
+                    idle.complete(null);
+                    return;
+                }
+                if (delayMilliseconds < 0) {
+                    finished.complete(null);
+                    return;
+                }
+                scheduleNextRun(wakeUpRequested ? 0 : delayMilliseconds);
+            }
+        }
+    }
+}
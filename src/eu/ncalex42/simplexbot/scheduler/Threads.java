@@ -0,0 +1,89 @@
+package eu.ncalex42.simplexbot.scheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.Util;
+
+/**
+ * Creates the threads for modules and blocking I/O. With
+ * {@link BotConfig.ThreadMode#VIRTUAL} virtual threads are used if the JVM
+ * supports them (Java 21+), otherwise platform threads. The virtual thread API
+ * is accessed by reflection, so that the bot still runs on Java 11.
+ */
+public class Threads {
+
+    private static volatile Boolean virtualThreadsEnabled = null;
+
+    /**
+     * @return <code>true</code> if virtual threads are configured and supported
+     */
+    public static boolean useVirtualThreads() {
+
+        Boolean result = virtualThreadsEnabled;
+        if (null == result) {
+            result = (BotConfig.ThreadMode.VIRTUAL == BotConfig.getThreadMode())
+                    && (null != newVirtualThreadFactory("probe"));
+            if ((BotConfig.ThreadMode.VIRTUAL == BotConfig.getThreadMode()) && !result) {
+                Util.logWarning("Virtual threads are not supported by Java " + System.getProperty("java.version")
+                        + ", using platform threads!", null, null, null);
+            }
+            virtualThreadsEnabled = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return a factory for daemon threads named <code>name-1</code>,
+     *         <code>name-2</code>, ...
+     */
+    public static ThreadFactory newThreadFactory(String name) {
+
+        if (useVirtualThreads()) {
+            return newVirtualThreadFactory(name + "-");
+        }
+
+        final AtomicInteger threadCounter = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return an executor that starts one virtual thread per task or a cached
+     *         pool of platform threads
+     */
+    public static ExecutorService newTaskExecutor(String name) {
+
+        final ThreadFactory threadFactory = newThreadFactory(name);
+        if (useVirtualThreads()) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                        .invoke(null, threadFactory);
+            } catch (final ReflectiveOperationException ex) {
+                // unexpected, as virtual threads are supported
+            }
+        }
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * @return <code>null</code> if virtual threads are not supported
+     */
+    private static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (final ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package eu.ncalex42.simplexbot.simplex;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import eu.ncalex42.simplexbot.TimeUtil;
+import eu.ncalex42.simplexbot.Util;
+
+/**
+ * Sends the log lines for the bot admins of one connection in the background.
+ * The lines that are logged within a short window are joined into one chat
+ * message per contact or group, so that logging (e.g. the config of every
+ * module on startup) does not compete with the real work of the modules. If
+ * the admins can not keep up, further lines are dropped and counted.
+ */
+class AdminLogSink {
+
+    private static final int CAPACITY = 1_000;
+    private static final long COALESCE_WINDOW_MILLISECONDS = 500;
+    private static final int MAX_MESSAGE_LENGTH = 8_000;
+
+    private final SimplexConnection simplexConnection;
+    private final ConcurrentLinkedQueue<LogLine> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private static class LogLine {
+
+        private final String text;
+        private final List<String> contacts;
+        private final List<String> groups;
+
+        private LogLine(String text, List<String> contacts, List<String> groups) {
+            this.text = text;
+            this.contacts = contacts;
+            this.groups = groups;
+        }
+    }
+
+    AdminLogSink(SimplexConnection simplexConnection, String threadName) {
+        this.simplexConnection = simplexConnection;
+        writer = new Thread(this::write, threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues the line without waiting, it is dropped if the queue is full.
+     */
+    void offer(String text, List<String> contacts, List<String> groups) {
+
+        if (closed || (((null == contacts) || contacts.isEmpty()) && ((null == groups) || groups.isEmpty()))) {
+            return;
+        }
+
+        if (size.incrementAndGet() > CAPACITY) {
+            size.decrementAndGet();
+            droppedLines.incrementAndGet();
+            return;
+        }
+        queue.add(new LogLine(text, contacts, groups));
+    }
+
+    /**
+     * Sends the queued lines and stops the writer, further lines are ignored.
+     *
+     * @param deadlineMilliseconds point in time in epoch milliseconds
+     */
+    void close(long deadlineMilliseconds) {
+
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(Math.max(1, deadlineMilliseconds - System.currentTimeMillis()));
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+
+        while (true) {
+            if (!closed) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(COALESCE_WINDOW_MILLISECONDS));
+            }
+
+            try {
+                sendQueuedLines();
+            } catch (final Exception ex) {
+                Util.logError("Failed to send the log to the bot admins: " + ex, null, null, null);
+            }
+
+            if (closed && queue.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private void sendQueuedLines() {
+
+        final Map<String, StringBuilder> messagesToContacts = new LinkedHashMap<>();
+        final Map<String, StringBuilder> messagesToGroups = new LinkedHashMap<>();
+        final List<CompletableFuture<Boolean>> results = new LinkedList<>();
+
+        LogLine line;
+        while (null != (line = queue.poll())) {
+            size.decrementAndGet();
+            if (null != line.contacts) {
+                for (final String contact : line.contacts) {
+                    append(messagesToContacts, contact, line.text, true, results);
+                }
+            }
+            if (null != line.groups) {
+                for (final String group : line.groups) {
+                    append(messagesToGroups, group, line.text, false, results);
+                }
+            }
+        }
+
+        final long dropped = droppedLines.getAndSet(0);
+        if (dropped > 0) {
+            final String droppedMessage = "[" + dropped + " log line(s) dropped, see the console]";
+            Util.logWarning("Dropped " + dropped + " log line(s) for the bot admins of port "
+                    + simplexConnection.getPort() + "!", null, null, null);
+            for (final String contact : messagesToContacts.keySet()) {
+                append(messagesToContacts, contact, droppedMessage, true, results);
+            }
+            for (final String group : messagesToGroups.keySet()) {
+                append(messagesToGroups, group, droppedMessage, false, results);
+            }
+        }
+
+        for (final Map.Entry<String, StringBuilder> message : messagesToContacts.entrySet()) {
+            results.add(simplexConnection.sendToContactAsync(message.getKey(), message.getValue().toString(), null,
+                    null));
+        }
+        for (final Map.Entry<String, StringBuilder> message : messagesToGroups.entrySet()) {
+            results.add(
+                    simplexConnection.sendToGroupAsync(message.getKey(), message.getValue().toString(), null, null));
+        }
+
+        // one batch at a time, so that a slow connection slows down the log and not the modules:
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .completeOnTimeout(null, TimeUtil.MILLISECONDS_PER_MINUTE, TimeUnit.MILLISECONDS).join();
+    }
+
+    /**
+     * Appends the line to the pending message of the recipient, a message that
+     * would become too long is sent before.
+     */
+    private void append(Map<String, StringBuilder> messages, String recipient, String text, boolean contact,
+            List<CompletableFuture<Boolean>> results) {
+
+        StringBuilder message = messages.get(recipient);
+        if ((null != message) && ((message.length() + 1 + text.length()) > MAX_MESSAGE_LENGTH)) {
+            results.add(contact ? simplexConnection.sendToContactAsync(recipient, message.toString(), null, null)
+                    : simplexConnection.sendToGroupAsync(recipient, message.toString(), null, null));
+            message = null;
+        }
+
+        if (null == message) {
+            messages.put(recipient, new StringBuilder(text));
+        } else {
+            message.append('\n').append(text);
+        }
+    }
+}
@@ -0,0 +1,691 @@
+package eu.ncalex42.simplexbot.simplex;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.JSONObject;
+
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.TimeUtil;
+import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.scheduler.AdaptiveRateTrigger;
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * The message feed of one group, shared by all modules that process this group.
+ * Pushed events and <code>/tail</code> responses are parsed only once and
+ * deduplicated against a single message window, new and edited messages are
+ * then handed to every {@link Subscription}. Missed messages are only retrieved
+ * as catch-up, i.e. for the first call and after a reconnect: the first
+ * catch-up uses <code>/tail</code>, later ones only retrieve the chat items
+ * after the highest known item id. Every {@value #FULL_CATCH_UP_INTERVAL}th
+ * catch-up uses <code>/tail</code> again to pick up missed edits.
+ *
+ * Only one catch-up of a group runs at a time, its requests run without
+ * holding the lock of the message window, so that pushed events of all groups
+ * of the connection are not held up by a slow response.
+ *
+ * As a safety net for missed events the feed also catches up periodically. The
+ * interval adapts to the activity of the group (see {@link AdaptiveRateTrigger})
+ * between {@link BotConfig#getMinPollIntervalSeconds()} and the shortest
+ * interval requested by a subscriber: busy groups are polled more often, so
+ * that the window does not overflow between two polls, idle groups less often.
+ *
+ * Polls retrieve pages of the expected number of new messages until they reach
+ * the newest message, so that neither a burst is cut off nor thousands of old
+ * messages are retrieved again and again. Gaps, i.e. a full <code>/tail</code>
+ * that does not reach back to the last known message, are filled with the
+ * cursor, counted (see {@link #getGapCount()}) and logged.
+ */
+public class GroupFeed implements SimplexEventListener {
+
+    private static final int WINDOW_SAFETY_BUFFER = 500;
+    private static final int FULL_CATCH_UP_INTERVAL = 10;
+    private static final int MIN_FETCH_SIZE = 20;
+    private static final double FETCH_SIZE_HEADROOM = 2.0;
+    private static final double RATE_SMOOTHING = 0.3;
+
+    private static ConcurrentHashMap<String, GroupFeed> feeds = new ConcurrentHashMap<>();
+
+    // marker to wake up a waiting subscriber without delivering a message:
+    private static final GroupMessage WAKE_UP = new GroupMessage(-1, -1, GroupMessage.TYPE_UNKNOWN, null, null, null,
+            null);
+
+    private final SimplexConnection simplexConnection;
+    private final String groupName;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // locks instead of 'synchronized', so that a virtual thread blocked in a catch-up does not pin its carrier.
+    // 'lock' is only held briefly, 'catchUpLock' during the requests of a catch-up and is always taken first:
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock catchUpLock = new ReentrantLock();
+
+    // guarded by 'lock':
+    private ProcessedMessageIndex processedMessages = new ProcessedMessageIndex(WINDOW_SAFETY_BUFFER);
+    private boolean initialized = false;
+    private final List<GroupMessage> messagesBeforeInitialization = new LinkedList<>();
+    private long groupId = -1;
+    private long lastItemId = -1;
+    private AdaptiveRateTrigger pollInterval = null;
+    private long maxPollIntervalOfSubscribers = Long.MAX_VALUE;
+    private int messagesSinceLastPoll = 0;
+
+    // guarded by 'catchUpLock':
+    private int catchUpCounter = 0;
+    private boolean cursorSupported = true;
+    private long lastPollMilliseconds = 0;
+    private double messagesPerMillisecond = 0;
+    private int fetchSize = MIN_FETCH_SIZE;
+
+    private volatile boolean catchUpPending = true;
+    private volatile long nextPollMilliseconds = Long.MAX_VALUE;
+    private volatile long pollIntervalMilliseconds = -1; // mirrors 'pollInterval' for reading without the lock
+    private volatile long gapCount = 0; // written while holding 'catchUpLock'
+
+    public static GroupFeed get(SimplexConnection simplexConnection, String groupName) {
+        return feeds.computeIfAbsent(simplexConnection.getPort() + "/" + groupName,
+                key -> new GroupFeed(simplexConnection, groupName));
+    }
+
+    private GroupFeed(SimplexConnection simplexConnection, String groupName) {
+        this.simplexConnection = simplexConnection;
+        this.groupName = groupName;
+        simplexConnection.subscribe(groupName, SimplexConstants.VALUE_EVENT_NEW_CHAT_ITEMS, this);
+        simplexConnection.subscribe(groupName, SimplexConstants.VALUE_EVENT_CHAT_ITEM_UPDATED, this);
+        simplexConnection.subscribe(groupName, SimplexConstants.VALUE_EVENT_RECONNECTED, this);
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    /**
+     * @return how often a poll would have missed messages because more than
+     *         the retrieved number of messages had arrived since the last poll
+     */
+    public long getGapCount() {
+        return gapCount;
+    }
+
+    /**
+     * @return the current interval of the safety net polls of this group, or
+     *         -1 without subscribers
+     */
+    public long getPollIntervalMilliseconds() {
+        return pollIntervalMilliseconds;
+    }
+
+    /**
+     * Registers a module for the messages of this group.
+     *
+     * @param knownMessages               messages that were already processed
+     *                                    by the module before (e.g. from its
+     *                                    cache file), they are skipped on their
+     *                                    first appearance
+     * @param retrieveDeprecatedMessages  if <code>false</code> and
+     *                                    'knownMessages' is empty, the messages
+     *                                    that already exist when subscribing
+     *                                    are skipped
+     * @param numberOfMessagesToRetrieve  the number of messages the module
+     *                                    wants to look back
+     * @param maxPollIntervalMilliseconds the longest time the module wants to
+     *                                    wait between two polls of an idle
+     *                                    group
+     */
+    public Subscription subscribe(List<GroupMessage> knownMessages, boolean retrieveDeprecatedMessages,
+            int numberOfMessagesToRetrieve, long maxPollIntervalMilliseconds, List<String> contactsForReporting,
+            List<String> groupsForReporting) {
+
+        lock.lock();
+        try {
+            final Subscription subscription = new Subscription(knownMessages, retrieveDeprecatedMessages,
+                    numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting);
+            subscriptions.add(subscription);
+
+            final long minPollInterval = BotConfig.getMinPollIntervalSeconds() * TimeUtil.MILLISECONDS_PER_SECOND;
+            if (null == pollInterval) {
+                pollInterval = new AdaptiveRateTrigger(minPollInterval, maxPollIntervalMilliseconds);
+            } else if (maxPollIntervalMilliseconds < maxPollIntervalOfSubscribers) {
+                pollInterval.setBounds(minPollInterval, maxPollIntervalMilliseconds);
+            }
+            maxPollIntervalOfSubscribers = Math.min(maxPollIntervalOfSubscribers, maxPollIntervalMilliseconds);
+            pollIntervalMilliseconds = pollInterval.getPeriodMilliseconds();
+
+            final int windowSize = getNumberOfMessagesToRetrieve() + WINDOW_SAFETY_BUFFER;
+            if (windowSize > processedMessages.capacity()) {
+                processedMessages = processedMessages.copyWithCapacity(windowSize);
+            }
+
+            if (initialized && subscription.skipInitialMessages) {
+                subscription.deliverInitialMessages(List.of());
+            }
+            // otherwise a late subscriber retrieves its initial messages with its first call
+
+            return subscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onEvent(String eventType, JSONObject event) {
+
+        if (SimplexConstants.VALUE_EVENT_RECONNECTED.equals(eventType)) {
+            catchUpPending = true;
+            for (final Subscription subscription : subscriptions) {
+                subscription.wakeUp();
+            }
+            return;
+        }
+
+        // report parsing problems to the admins of the first subscriber:
+        Subscription reporter = null;
+        for (final Subscription subscription : subscriptions) {
+            reporter = subscription;
+            break;
+        }
+        if (null == reporter) {
+            return;
+        }
+
+        final List<GroupMessage> messages = GroupMessage.parseMessagesFromEvent(event, simplexConnection,
+                reporter.contactsForReporting, reporter.groupsForReporting);
+
+        lock.lock();
+        try {
+            if (initialized) {
+                deliver(addToWindow(messages));
+            } else {
+                // merged by the first catch-up, which might have requested '/tail' before these messages arrived:
+                messagesBeforeInitialization.addAll(messages);
+                while (messagesBeforeInitialization.size() > processedMessages.capacity()) {
+                    messagesBeforeInitialization.remove(0);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void catchUp(Subscription caller) {
+
+        if (!catchUpLock.tryLock()) {
+            return; // another subscriber is catching up, its messages are delivered to all subscribers
+        }
+        try {
+            if (!catchUpPending && (System.currentTimeMillis() < nextPollMilliseconds)) {
+                return; // another subscriber was faster
+            }
+            // reset before the requests, so that a reconnect in the meantime leads to another catch-up:
+            catchUpPending = false;
+
+            final boolean wasInitialized;
+            final long knownGroupId;
+            final long knownLastItemId;
+            final int windowCapacity;
+            lock.lock();
+            try {
+                wasInitialized = initialized;
+                knownGroupId = groupId;
+                knownLastItemId = lastItemId;
+                windowCapacity = processedMessages.capacity();
+            } finally {
+                lock.unlock();
+            }
+
+            final long previousGapCount = gapCount;
+            List<GroupMessage> messages = null;
+            try {
+                if (cursorSupported && (knownLastItemId >= 0)
+                        && (0 != (++catchUpCounter % FULL_CATCH_UP_INTERVAL))) {
+                    messages = getMessagesAfter(knownGroupId, knownLastItemId, Long.MAX_VALUE, windowCapacity,
+                            caller);
+                    if ((null != messages) && (messages.size() > fetchSize)) {
+                        gapCount++; // a single request would have missed messages
+                    }
+                }
+                if (null == messages) {
+                    messages = simplexConnection.getGroupMessages(groupName, getNumberOfMessagesToRetrieve(),
+                            caller.contactsForReporting, caller.groupsForReporting);
+                    if (wasInitialized) {
+                        messages = fillGap(messages, knownGroupId, knownLastItemId, windowCapacity, caller);
+                    }
+                }
+            } catch (final RuntimeException ex) {
+                catchUpPending = true; // retried with the next call
+                throw ex;
+            }
+
+            lock.lock();
+            try {
+                final List<GroupMessage> newMessages = addToWindow(messages);
+                if (initialized) {
+                    deliver(newMessages);
+                } else {
+                    newMessages.addAll(addToWindow(messagesBeforeInitialization));
+                    messagesBeforeInitialization.clear();
+                    initialized = true;
+                    for (final Subscription subscription : subscriptions) {
+                        subscription.deliverInitialMessages(newMessages);
+                    }
+                    messagesSinceLastPoll = 0; // the initial messages say nothing about the activity
+                }
+
+                // pushed and polled messages count as activity:
+                final long now = System.currentTimeMillis();
+                updateFetchSize(now);
+                pollInterval.update(messagesSinceLastPoll, getNumberOfMessagesToRetrieve());
+                messagesSinceLastPoll = 0;
+                pollIntervalMilliseconds = pollInterval.getPeriodMilliseconds();
+                nextPollMilliseconds = now + pollInterval.nextDelay();
+            } finally {
+                lock.unlock();
+            }
+
+            if (gapCount > previousGapCount) {
+                Util.log("More messages than one request retrieves had arrived in group '" + groupName
+                        + "' since the last poll (" + gapCount + " time(s) since the start), the poll interval is now "
+                        + (getPollIntervalMilliseconds() / TimeUtil.MILLISECONDS_PER_SECOND) + " s", simplexConnection,
+                        caller.contactsForReporting, caller.groupsForReporting);
+            }
+        } finally {
+            catchUpLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the messages after the given item page by page, so that a burst
+     * of messages since the last poll is not cut off. Each page has the size of
+     * the expected messages per poll, see {@link #updateFetchSize(long)}.
+     *
+     * @param untilItemId the first item that is not needed anymore
+     * @param maxMessages the capacity of the window, older messages would be
+     *                    evicted right away
+     * @return <code>null</code> if the simplex-cli does not support this or
+     *         the request failed
+     */
+    private List<GroupMessage> getMessagesAfter(long knownGroupId, long afterItemId, long untilItemId,
+            int maxMessages, Subscription caller) {
+
+        final List<GroupMessage> result = new LinkedList<>();
+        long cursor = afterItemId;
+        while (result.size() < maxMessages) {
+
+            final List<GroupMessage> page;
+            try {
+                page = simplexConnection.getGroupMessagesAfter(knownGroupId, cursor, fetchSize,
+                        caller.contactsForReporting, caller.groupsForReporting);
+            } catch (final UnsupportedOperationException ex) {
+                Util.logWarning("Retrieving only new messages of group '" + groupName
+                        + "' failed, using '/tail' from now on: " + ex.getMessage(), simplexConnection,
+                        caller.contactsForReporting, caller.groupsForReporting);
+                cursorSupported = false;
+                return result.isEmpty() ? null : result;
+            } catch (final IllegalStateException ex) {
+                // e.g. a timeout or a lost connection, the cursor is tried again with the next catch-up:
+                Util.logWarning("Retrieving only new messages of group '" + groupName
+                        + "' failed, using '/tail' this time: " + ex.getMessage(), simplexConnection,
+                        caller.contactsForReporting, caller.groupsForReporting);
+                return result.isEmpty() ? null : result;
+            }
+
+            boolean reachedEnd = page.size() < fetchSize;
+            for (final GroupMessage message : page) {
+                if (message.getId() >= untilItemId) {
+                    reachedEnd = true;
+                    break;
+                }
+                result.add(message);
+                cursor = Math.max(cursor, message.getId());
+            }
+
+            if (reachedEnd) {
+                return result;
+            }
+        }
+
+        Util.logWarning("More than " + maxMessages + " new messages in group '" + groupName
+                + "' since the last check, older ones might be skipped!", simplexConnection,
+                caller.contactsForReporting, caller.groupsForReporting);
+        return result;
+    }
+
+    /**
+     * A full <code>/tail</code> response whose oldest message is still newer
+     * than the last known message means that messages were missed in between
+     * (e.g. while the bot was disconnected). They are retrieved with the
+     * cursor if possible.
+     *
+     * @return the given messages plus the missing ones
+     */
+    private List<GroupMessage> fillGap(List<GroupMessage> messages, long knownGroupId, long knownLastItemId,
+            int windowCapacity, Subscription caller) {
+
+        if ((knownLastItemId < 0) || (messages.size() < getNumberOfMessagesToRetrieve())) {
+            return messages;
+        }
+
+        long oldestItemId = Long.MAX_VALUE;
+        for (final GroupMessage message : messages) {
+            oldestItemId = Math.min(oldestItemId, message.getId());
+        }
+        if (oldestItemId <= knownLastItemId) {
+            return messages; // overlaps with the known messages
+        }
+
+        gapCount++;
+        if (cursorSupported) {
+            final List<GroupMessage> missingMessages = getMessagesAfter(knownGroupId, knownLastItemId, oldestItemId,
+                    windowCapacity, caller);
+            if (null != missingMessages) {
+                Util.log("Retrieved " + missingMessages.size() + " missed messages of group '" + groupName + "'",
+                        simplexConnection, caller.contactsForReporting, caller.groupsForReporting);
+                missingMessages.addAll(messages);
+                return missingMessages;
+            }
+        }
+
+        Util.logWarning("Messages of group '" + groupName + "' were missed between item " + knownLastItemId + " and "
+                + oldestItemId + ", consider increasing 'number-of-messages-to-retrieve'!", simplexConnection,
+                caller.contactsForReporting, caller.groupsForReporting);
+        return messages;
+    }
+
+    /**
+     * Sizes the pages of
+     * {@link #getMessagesAfter(long, long, long, int, Subscription)}
+     * for the observed message rate (moving average) and the current poll
+     * interval, with some headroom. Too small pages only cost additional
+     * requests, as the rest is retrieved page by page.
+     */
+    private void updateFetchSize(long now) {
+
+        if (lastPollMilliseconds > 0) {
+            final double rate = (double) messagesSinceLastPoll / Math.max(1, now - lastPollMilliseconds);
+            messagesPerMillisecond = (RATE_SMOOTHING * rate) + ((1 - RATE_SMOOTHING) * messagesPerMillisecond);
+        }
+        lastPollMilliseconds = now;
+
+        final double expectedMessages = messagesPerMillisecond * pollInterval.getPeriodMilliseconds();
+        fetchSize = (int) Math.min(Math.max(MIN_FETCH_SIZE, Math.ceil(FETCH_SIZE_HEADROOM * expectedMessages)),
+                Math.max(MIN_FETCH_SIZE, getNumberOfMessagesToRetrieve()));
+    }
+
+    /**
+     * A subscriber that joined after the first catch-up needs the latest
+     * messages once for itself, e.g. to process the messages it missed while
+     * the bot was down.
+     */
+    private void catchUpLateSubscriber(Subscription subscriber) {
+
+        lock.lock();
+        try {
+            if (!initialized || !subscriber.initialMessagesPending) {
+                return;
+            }
+            subscriber.messagesDuringCatchUp = new LinkedList<>();
+        } finally {
+            lock.unlock();
+        }
+
+        List<GroupMessage> messages = null;
+        try {
+            messages = simplexConnection.getGroupMessages(groupName, subscriber.numberOfMessagesToRetrieve,
+                    subscriber.contactsForReporting, subscriber.groupsForReporting);
+        } finally {
+            lock.lock();
+            try {
+                if (null != messages) {
+                    mergeLateSubscriber(subscriber, messages);
+                }
+                subscriber.messagesDuringCatchUp = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Called while holding 'lock'.
+     */
+    private void mergeLateSubscriber(Subscription subscriber, List<GroupMessage> messages) {
+
+        // the other subscribers only get what is really new for them:
+        final List<GroupMessage> newMessages = addToWindow(messages);
+        if (!newMessages.isEmpty()) {
+            for (final Subscription subscription : subscriptions) {
+                if (subscription != subscriber) {
+                    subscription.deliver(newMessages);
+                }
+            }
+        }
+
+        // the subscriber also gets the messages pushed during the request, unless the response contained them:
+        final List<GroupMessage> initialMessages = new LinkedList<>(messages);
+        final ProcessedMessageIndex responseIndex = new ProcessedMessageIndex(
+                Math.max(1, messages.size() + subscriber.messagesDuringCatchUp.size()));
+        for (final GroupMessage message : messages) {
+            responseIndex.update(message);
+        }
+        for (final GroupMessage message : subscriber.messagesDuringCatchUp) {
+            if (ProcessedMessageIndex.Result.UNCHANGED != responseIndex.update(message)) {
+                initialMessages.add(message);
+            }
+        }
+        subscriber.deliverInitialMessages(initialMessages);
+    }
+
+    /**
+     * @return the messages that are new or contain new edits
+     */
+    private List<GroupMessage> addToWindow(List<GroupMessage> messages) {
+
+        final List<GroupMessage> result = new LinkedList<>();
+        for (final GroupMessage message : messages) {
+
+            if (message.getId() > lastItemId) {
+                lastItemId = message.getId();
+                groupId = message.getGroupId();
+            }
+
+            if (ProcessedMessageIndex.Result.UNCHANGED != processedMessages.update(message)) {
+                result.add(message);
+            }
+        }
+
+        return result;
+    }
+
+    private void deliver(List<GroupMessage> messages) {
+
+        if (messages.isEmpty()) {
+            return;
+        }
+        messagesSinceLastPoll += messages.size();
+
+        for (final Subscription subscription : subscriptions) {
+            subscription.deliver(messages);
+        }
+    }
+
+    private int getNumberOfMessagesToRetrieve() {
+
+        int result = 0;
+        for (final Subscription subscription : subscriptions) {
+            result = Math.max(result, subscription.numberOfMessagesToRetrieve);
+        }
+        return result;
+    }
+
+    /**
+     * The view of one module on a {@link GroupFeed}.
+     */
+    public class Subscription {
+
+        private final ProcessedMessageIndex knownMessages;
+        private final boolean skipInitialMessages;
+        private final int numberOfMessagesToRetrieve;
+        private final List<String> contactsForReporting;
+        private final List<String> groupsForReporting;
+
+        private final LinkedBlockingDeque<GroupMessage> pendingMessages = new LinkedBlockingDeque<>();
+        private volatile Runnable listener = null;
+        private volatile boolean latestMessagesOnly = false;
+
+        // written while holding the lock of the enclosing feed:
+        private volatile boolean initialMessagesPending = true;
+        private List<GroupMessage> messagesDuringCatchUp = null; // while a late subscriber waits for its request
+
+        private Subscription(List<GroupMessage> knownMessages, boolean retrieveDeprecatedMessages,
+                int numberOfMessagesToRetrieve, List<String> contactsForReporting, List<String> groupsForReporting) {
+            this.knownMessages = new ProcessedMessageIndex(Math.max(1, knownMessages.size()));
+            for (final GroupMessage knownMessage : knownMessages) {
+                this.knownMessages.update(knownMessage.getGroupId(), knownMessage.getId(),
+                        ProcessedMessageIndex.UNKNOWN_TEXT_HASH);
+            }
+            this.skipInitialMessages = knownMessages.isEmpty() && !retrieveDeprecatedMessages;
+            this.numberOfMessagesToRetrieve = numberOfMessagesToRetrieve;
+            this.contactsForReporting = contactsForReporting;
+            this.groupsForReporting = groupsForReporting;
+        }
+
+        private void deliverInitialMessages(Collection<GroupMessage> messages) {
+
+            initialMessagesPending = false;
+            if (!skipInitialMessages) {
+                deliver(messages);
+            }
+        }
+
+        private void deliver(Collection<GroupMessage> messages) {
+
+            if (initialMessagesPending) {
+                if (null != messagesDuringCatchUp) {
+                    messagesDuringCatchUp.addAll(messages);
+                }
+                return;
+            }
+
+            boolean added = false;
+            for (final GroupMessage message : messages) {
+                if (!knownMessages.isEmpty() && knownMessages.remove(message.getGroupId(), message.getId())) {
+                    continue; // processed before the restart
+                }
+                pendingMessages.add(message);
+                added = true;
+            }
+
+            if (latestMessagesOnly) {
+                int droppedMessages = 0;
+                while (pendingMessages.size() > numberOfMessagesToRetrieve) {
+                    pendingMessages.pollFirst();
+                    droppedMessages++;
+                }
+                if (droppedMessages > 0) {
+                    Util.log("Skipped " + droppedMessages + " older pending message(s) of group '" + groupName
+                            + "', only the latest " + numberOfMessagesToRetrieve + " are processed",
+                            simplexConnection, contactsForReporting, groupsForReporting);
+                }
+            }
+
+            if (added) {
+                notifyListener();
+            }
+        }
+
+        private void wakeUp() {
+            pendingMessages.add(WAKE_UP);
+            notifyListener();
+        }
+
+        private void notifyListener() {
+
+            final Runnable currentListener = listener;
+            if (null != currentListener) {
+                currentListener.run();
+            }
+        }
+
+        /**
+         * Sets a callback that is run whenever new messages are pending or a
+         * catch-up is necessary, so that a module does not have to block in
+         * {@link #awaitNewMessages(long)}. The callback must not block.
+         */
+        public void onNewMessages(Runnable listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Lets a module that does not wait for new messages (e.g. outside of
+         * its schedule) only catch up on the latest ones: older pending
+         * messages beyond its number of messages to retrieve are dropped.
+         * Otherwise every message stays pending until the module gets it.
+         */
+        public void keepLatestMessagesOnly() {
+            latestMessagesOnly = true;
+        }
+
+        /**
+         * @return the time until the next safety net poll of the group is due,
+         *         i.e. when the module should call
+         *         {@link #awaitNewMessages(long)} again without being woken up
+         */
+        public long getPollDelayMilliseconds() {
+
+            if (catchUpPending) {
+                return getPollIntervalMilliseconds(); // e.g. the last catch-up failed
+            }
+            return Math.max(0, nextPollMilliseconds - System.currentTimeMillis());
+        }
+
+        /**
+         * @return the current interval of the safety net polls of the group
+         */
+        public long getPollIntervalMilliseconds() {
+            return GroupFeed.this.getPollIntervalMilliseconds();
+        }
+
+        /**
+         * Waits up to the given time for new or edited messages of the group.
+         *
+         * @return the new messages, might be empty
+         */
+        public List<GroupMessage> awaitNewMessages(long timeoutMilliseconds) throws InterruptedException {
+
+            if (catchUpPending || (System.currentTimeMillis() >= nextPollMilliseconds)) {
+                catchUp(this);
+            }
+            if (initialMessagesPending) {
+                catchUpLateSubscriber(this);
+            }
+
+            final List<GroupMessage> result = new LinkedList<>();
+            final GroupMessage firstMessage = pendingMessages.poll(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+            if (null == firstMessage) {
+                return result;
+            }
+            result.add(firstMessage);
+            pendingMessages.drainTo(result);
+            result.removeIf(message -> WAKE_UP == message);
+
+            if (catchUpPending) {
+                catchUp(this);
+                pendingMessages.drainTo(result);
+                result.removeIf(message -> WAKE_UP == message);
+            }
+
+            return result;
+        }
+
+        public void close() {
+            subscriptions.remove(this);
+            pendingMessages.clear();
+        }
+    }
+}
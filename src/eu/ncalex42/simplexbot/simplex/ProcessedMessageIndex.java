@@ -0,0 +1,247 @@
+package eu.ncalex42.simplexbot.simplex;
+
+import java.util.Arrays;
+
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * Remembers which group messages were already processed and a hash of their
+ * text, so that new messages and edits can be detected in constant time. The
+ * index holds at most 'capacity' messages, when it is full the oldest message
+ * is evicted.
+ *
+ * The group id and the message id are packed into one <code>long</code> (24
+ * and 40 bits), the entries are stored in an open addressing hash table with
+ * linear probing plus a ring buffer of keys in insertion order for the
+ * eviction. This takes about 40 bytes per message instead of a whole
+ * {@link GroupMessage}.
+ *
+ * Not thread-safe.
+ */
+public class ProcessedMessageIndex {
+
+    /** the text hash of messages whose text is not known, e.g. from a cache file */
+    public static final long UNKNOWN_TEXT_HASH = 0;
+
+    public enum Result {
+        /** the message was not in the index */
+        NEW,
+        /** the message was in the index with the same text */
+        UNCHANGED,
+        /** the message was in the index with another text */
+        EDITED,
+        /** the message was in the index, but its text was unknown */
+        TEXT_RESOLVED
+    }
+
+    private static final long EMPTY_KEY = -1;
+    private static final int ITEM_ID_BITS = 40;
+    private static final long ITEM_ID_MASK = (1L << ITEM_ID_BITS) - 1;
+
+    private final long[] keys;
+    private final long[] textHashes;
+    private final int mask;
+
+    private final long[] insertionOrder;
+    private int nextInsertionIndex = 0;
+    private int insertionCount = 0; // used positions in 'insertionOrder'
+    private int size = 0;
+
+    public ProcessedMessageIndex(int capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+
+        // keep the load factor at or below 0.5:
+        final int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        keys = new long[tableSize];
+        Arrays.fill(keys, EMPTY_KEY);
+        textHashes = new long[tableSize];
+        mask = tableSize - 1;
+
+        insertionOrder = new long[capacity];
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the given text, never
+     * {@link #UNKNOWN_TEXT_HASH}.
+     */
+    public static long hashText(String text) {
+
+        if (null == text) {
+            return UNKNOWN_TEXT_HASH;
+        }
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return (UNKNOWN_TEXT_HASH == hash) ? 1 : hash;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public int capacity() {
+        return insertionOrder.length;
+    }
+
+    public boolean contains(long groupId, long messageId) {
+        return containsKey(toKey(groupId, messageId));
+    }
+
+    private boolean containsKey(long key) {
+        return EMPTY_KEY != keys[findSlot(key)];
+    }
+
+    /**
+     * @return a copy with the given capacity that keeps the newest messages
+     */
+    public ProcessedMessageIndex copyWithCapacity(int newCapacity) {
+
+        final ProcessedMessageIndex result = new ProcessedMessageIndex(newCapacity);
+
+        // oldest first, so that the eviction order is preserved:
+        for (int i = 0; i < insertionCount; i++) {
+            final int position = (nextInsertionIndex - insertionCount + i + insertionOrder.length)
+                    % insertionOrder.length;
+            final int slot = findSlot(insertionOrder[position]);
+            if ((EMPTY_KEY != keys[slot]) && !result.containsKey(keys[slot])) {
+                result.updateKey(keys[slot], textHashes[slot]);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds or updates the given message.
+     */
+    public Result update(GroupMessage message) {
+        return update(message.getGroupId(), message.getId(), hashText(message.getText()));
+    }
+
+    /**
+     * Adds or updates the given message.
+     *
+     * @param textHash the result of {@link #hashText(String)} or
+     *                 {@link #UNKNOWN_TEXT_HASH}
+     */
+    public Result update(long groupId, long messageId, long textHash) {
+        return updateKey(toKey(groupId, messageId), textHash);
+    }
+
+    private Result updateKey(long key, long textHash) {
+
+        int slot = findSlot(key);
+
+        if (EMPTY_KEY != keys[slot]) {
+            final long oldTextHash = textHashes[slot];
+            if (oldTextHash == textHash) {
+                return Result.UNCHANGED;
+            }
+            if (UNKNOWN_TEXT_HASH == textHash) {
+                return Result.UNCHANGED; // don't forget a known text
+            }
+            textHashes[slot] = textHash;
+            return (UNKNOWN_TEXT_HASH == oldTextHash) ? Result.TEXT_RESOLVED : Result.EDITED;
+        }
+
+        if (insertionCount == insertionOrder.length) {
+            // evict the oldest message, unless it was removed already:
+            final int oldestSlot = findSlot(insertionOrder[nextInsertionIndex]);
+            if (EMPTY_KEY != keys[oldestSlot]) {
+                removeSlot(oldestSlot);
+                size--;
+                slot = findSlot(key); // the slot might have moved
+            }
+        } else {
+            insertionCount++;
+        }
+
+        keys[slot] = key;
+        textHashes[slot] = textHash;
+        insertionOrder[nextInsertionIndex] = key;
+        nextInsertionIndex = (nextInsertionIndex + 1) % insertionOrder.length;
+        size++;
+
+        return Result.NEW;
+    }
+
+    /**
+     * Removes the given message. Its position in the eviction order is only
+     * released when it is due for eviction.
+     *
+     * @return <code>true</code> if the message was in the index
+     */
+    public boolean remove(long groupId, long messageId) {
+
+        final int slot = findSlot(toKey(groupId, messageId));
+        if (EMPTY_KEY == keys[slot]) {
+            return false;
+        }
+        removeSlot(slot);
+        size--;
+        return true;
+    }
+
+    private static long toKey(long groupId, long messageId) {
+        return (groupId << ITEM_ID_BITS) | (messageId & ITEM_ID_MASK);
+    }
+
+    /**
+     * @return the slot of the key or the empty slot where it belongs
+     */
+    private int findSlot(long key) {
+
+        int slot = homeSlot(key);
+        while ((EMPTY_KEY != keys[slot]) && (key != keys[slot])) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int homeSlot(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        hash ^= (hash >>> 32);
+        return (int) hash & mask;
+    }
+
+    /**
+     * Backward shift deletion, so that no tombstones are needed.
+     */
+    private void removeSlot(int slot) {
+
+        int emptySlot = slot;
+        int currentSlot = slot;
+        while (true) {
+            currentSlot = (currentSlot + 1) & mask;
+            final long currentKey = keys[currentSlot];
+            if (EMPTY_KEY == currentKey) {
+                break;
+            }
+
+            // move the entry only if its home slot is not between the empty and the current slot:
+            final int home = homeSlot(currentKey);
+            final boolean staysInPlace = (emptySlot <= currentSlot) ? ((emptySlot < home) && (home <= currentSlot))
+                    : ((emptySlot < home) || (home <= currentSlot));
+            if (staysInPlace) {
+                continue;
+            }
+
+            keys[emptySlot] = currentKey;
+            textHashes[emptySlot] = textHashes[currentSlot];
+            emptySlot = currentSlot;
+        }
+
+        keys[emptySlot] = EMPTY_KEY;
+        textHashes[emptySlot] = UNKNOWN_TEXT_HASH;
+    }
+}
@@ -1,32 +1,85 @@
 package eu.ncalex42.simplexbot.simplex;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
 import java.net.http.WebSocket.Listener;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.BotConfig.JsonParser;
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.scheduler.Threads;
+import eu.ncalex42.simplexbot.simplex.json.JsonPullParser;
 import eu.ncalex42.simplexbot.simplex.model.GroupMember;
 import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+import eu.ncalex42.simplexbot.simplex.model.StreamingResponseParser;
 
 public class SimplexConnection {
 
+    private static final long DEFAULT_COMMAND_TIMEOUT_MILLISECONDS = TimeUtil.MILLISECONDS_PER_MINUTE;
+    private static final long HEARTBEAT_INTERVAL_MILLISECONDS = 10L * TimeUtil.MILLISECONDS_PER_SECOND;
+    private static final long INITIAL_RECONNECT_DELAY_MILLISECONDS = TimeUtil.MILLISECONDS_PER_SECOND;
+    private static final long MAX_RECONNECT_DELAY_MILLISECONDS = TimeUtil.MILLISECONDS_PER_MINUTE;
+    private static final long CLOSE_TIMEOUT_MILLISECONDS = 2L * TimeUtil.MILLISECONDS_PER_SECOND;
+    private static final long ADMIN_LOG_FLUSH_TIMEOUT_MILLISECONDS = 5L * TimeUtil.MILLISECONDS_PER_SECOND;
+
     private static ConcurrentHashMap<Integer, SimplexConnection> connections = new ConcurrentHashMap<>();
 
     private final int port;
-    private volatile WebSocket websocket;
-    private final ConcurrentLinkedQueue<String> responses = new ConcurrentLinkedQueue<>();
+    private volatile WebSocket websocket; // null while disconnected
+    private volatile long lastReceivedMillis;
+    private long reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLISECONDS;
+    private final Object connectionLock = new Object();
+    private final CompletableFuture<Void> connected = new CompletableFuture<>(); // completed on the first connect
+    private boolean closed = false; // guarded by connectionLock
+    private final Object sendLock = new Object();
+
+    // seeded with the current time, so that late responses from a previous run can not be mistaken for ours:
+    private final AtomicLong corrIdCounter = new AtomicLong(System.currentTimeMillis());
+    private final ConcurrentHashMap<String, CompletableFuture<String>> pendingRequests = new ConcurrentHashMap<>();
+
+    // responses are processed here and never on the websocket listener thread, which has to stay free for the
+    // next response (callbacks may send further commands and wait for them):
+    private final ExecutorService callbackExecutor;
+
+    // pushed events are parsed and dispatched in order on a single thread:
+    private final ExecutorService eventExecutor;
+    private final CopyOnWriteArrayList<EventSubscription> eventSubscriptions = new CopyOnWriteArrayList<>();
 
+    // heartbeat and reconnects:
+    private final ScheduledExecutorService supervisor;
+
+    private final AdminLogSink adminLog;
+
+    /**
+     * Creates the connection for the given port once and starts connecting in
+     * the background, see {@link #whenConnected()}.
+     */
     public static synchronized void initSimplexConnection(int port) {
 
         if (connections.containsKey(port)) {
@@ -36,24 +89,62 @@ public class SimplexConnection {
         final SimplexConnection connection = new SimplexConnection(port);
         connections.put(port, connection);
         connection.connect();
-
-        Util.log("Connected to port " + port, null, null, null);
     }
 
     public static SimplexConnection get(int port) {
         return connections.get(port);
     }
 
+    /**
+     * Closes all websockets cleanly when the bot is stopped, there are no
+     * reconnects afterwards.
+     */
+    public static void closeAll() {
+        for (final SimplexConnection connection : connections.values()) {
+            connection.close();
+        }
+    }
+
     private SimplexConnection(int port) {
         this.port = port;
+        this.callbackExecutor = Threads.newTaskExecutor(SimplexConnection.class.getSimpleName() + "-" + port);
+        this.eventExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, SimplexConnection.class.getSimpleName() + "-" + port + "-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.supervisor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable,
+                    SimplexConnection.class.getSimpleName() + "-" + port + "-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.adminLog = new AdminLogSink(this, SimplexConnection.class.getSimpleName() + "-" + port + "-adminlog");
     }
 
     private void connect() {
 
+        openWebsocket().whenComplete((connectedWebsocket, throwable) -> {
+            if (null == throwable) {
+                onConnected(connectedWebsocket, false);
+            } else {
+                final Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+                Util.logWarning("Could not connect to port " + port + ", retrying in the background: " + cause,
+                        null, null, null);
+                scheduleReconnect();
+            }
+        });
+
+        supervisor.scheduleWithFixedDelay(this::checkHeartbeat, HEARTBEAT_INTERVAL_MILLISECONDS,
+                HEARTBEAT_INTERVAL_MILLISECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<WebSocket> openWebsocket() {
+
         final HttpClient client = HttpClient.newHttpClient();
         final URI websocketUri = URI.create("ws://localhost:" + port);
 
-        websocket = client.newWebSocketBuilder().buildAsync(websocketUri, new Listener() {
+        return client.newWebSocketBuilder().buildAsync(websocketUri, new Listener() {
 
             StringBuilder responseBuffer = new StringBuilder();
 
@@ -66,11 +157,14 @@ public class SimplexConnection {
             @Override
             public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
 
+                lastReceivedMillis = System.currentTimeMillis();
                 responseBuffer.append(data);
                 if (last) {
                     final String response = responseBuffer.toString();
-                    if (response.contains("\"corrId\"")) { // only store responses that we requested
-                        responses.add(response);
+                    if (response.contains("\"corrId\"")) {
+                        completePendingRequest(response);
+                    } else if (!eventSubscriptions.isEmpty()) {
+                        eventExecutor.execute(() -> dispatchEvent(response));
                     }
                     responseBuffer = new StringBuilder();
                 }
@@ -83,52 +177,228 @@ public class SimplexConnection {
                 return Listener.super.onBinary(webSocket, data, last);
             }
 
+            @Override
+            public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+                lastReceivedMillis = System.currentTimeMillis();
+                return Listener.super.onPong(webSocket, message);
+            }
+
             @Override
             public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
                 Util.logWarning("Disconnected from the websocket!", null, null, null);
+                onDisconnected(webSocket, "closed with status " + statusCode);
                 return Listener.super.onClose(webSocket, statusCode, reason);
             }
 
             @Override
             public void onError(WebSocket webSocket, Throwable throwable) {
                 Util.logError("Error received from the websocket: " + throwable.toString(), null, null, null);
+                onDisconnected(webSocket, throwable.toString());
                 Listener.super.onError(webSocket, throwable);
             }
-        }).join();
+        });
+    }
+
+    private void onConnected(WebSocket connectedWebsocket, boolean reconnected) {
+
+        synchronized (connectionLock) {
+            if (closed) {
+                connectedWebsocket.abort();
+                return;
+            }
+            websocket = connectedWebsocket;
+            lastReceivedMillis = System.currentTimeMillis();
+            reconnectDelayMillis = INITIAL_RECONNECT_DELAY_MILLISECONDS;
+        }
+        connected.complete(null);
+
+        if (reconnected) {
+            Util.log("Reconnected to port " + port, null, null, null);
+            eventExecutor.execute(this::dispatchReconnectedEvent);
+        }
+    }
+
+    /**
+     * Fails all pending requests immediately instead of letting them run into
+     * their timeout, and starts reconnecting. Notifications for an already
+     * replaced websocket are ignored.
+     */
+    private void onDisconnected(WebSocket disconnectedWebsocket, String reason) {
+
+        synchronized (connectionLock) {
+            if ((null == disconnectedWebsocket) || (disconnectedWebsocket != websocket)) {
+                return;
+            }
+            websocket = null;
+        }
+
+        disconnectedWebsocket.abort();
+
+        final IOException connectionLost = new IOException("Connection to port " + port + " lost: " + reason);
+        for (final CompletableFuture<String> pendingRequest : pendingRequests.values()) {
+            pendingRequest.completeExceptionally(connectionLost);
+        }
+
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+
+        final long delay;
+        synchronized (connectionLock) {
+            if (closed) {
+                return;
+            }
+            delay = reconnectDelayMillis;
+            reconnectDelayMillis = Math.min(reconnectDelayMillis * 2, MAX_RECONNECT_DELAY_MILLISECONDS);
+        }
+
+        supervisor.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reconnect() {
+
+        openWebsocket().whenComplete((connectedWebsocket, throwable) -> {
+            if (null == throwable) {
+                onConnected(connectedWebsocket, true);
+            } else {
+                final Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+                Util.logWarning("Reconnect to port " + port + " failed: " + cause, null, null, null);
+                scheduleReconnect();
+            }
+        });
+    }
+
+    private void close() {
+
+        // the last log lines are sent before the websocket is closed:
+        adminLog.close(System.currentTimeMillis() + ADMIN_LOG_FLUSH_TIMEOUT_MILLISECONDS);
+
+        final WebSocket currentWebsocket;
+        synchronized (connectionLock) {
+            closed = true;
+            currentWebsocket = websocket;
+            websocket = null; // the close notification must not trigger a reconnect
+        }
+
+        supervisor.shutdownNow();
+
+        if (null != currentWebsocket) {
+            try {
+                synchronized (sendLock) {
+                    currentWebsocket.sendClose(WebSocket.NORMAL_CLOSURE, "bot stopped").get(CLOSE_TIMEOUT_MILLISECONDS,
+                            TimeUnit.MILLISECONDS);
+                }
+            } catch (final Exception ex) {
+                Util.logWarning("Could not close the connection to port " + port + " cleanly: " + ex, null, null,
+                        null);
+                currentWebsocket.abort();
+            }
+        }
+
+        final IOException connectionClosed = new IOException("Connection to port " + port + " closed");
+        for (final CompletableFuture<String> pendingRequest : pendingRequests.values()) {
+            pendingRequest.completeExceptionally(connectionClosed);
+        }
+
+        eventExecutor.shutdown();
+        callbackExecutor.shutdown();
+    }
+
+    /**
+     * Pings the websocket regularly and drops the connection if nothing (not
+     * even a pong) was received for a while, because a dead socket is not always
+     * reported by the operating system.
+     */
+    private void checkHeartbeat() {
+
+        final WebSocket currentWebsocket = websocket;
+        if (null == currentWebsocket) {
+            return;
+        }
+
+        if ((System.currentTimeMillis() - lastReceivedMillis) > (HEARTBEAT_INTERVAL_MILLISECONDS * 3)) {
+            Util.logWarning("No heartbeat from port " + port + ", reconnecting!", null, null, null);
+            onDisconnected(currentWebsocket, "heartbeat timeout");
+            return;
+        }
+
+        try {
+            currentWebsocket.sendPing(ByteBuffer.allocate(0));
+        } catch (final RuntimeException ex) {
+            Util.logWarning("Ping to port " + port + " failed: " + ex.toString(), null, null, null);
+        }
     }
 
     public int getPort() {
         return port;
     }
 
+    /**
+     * @return completes when the websocket is connected for the first time
+     */
+    public CompletableFuture<Void> whenConnected() {
+        return connected.copy();
+    }
+
+    /**
+     * Subscribes to events that simplex-cli pushes for the given group.
+     *
+     * @param groupName the local name of the group
+     * @param eventType the event type to receive, or <code>null</code> for all
+     *                  events of the group
+     * @param listener  the listener to notify
+     */
+    public void subscribe(String groupName, String eventType, SimplexEventListener listener) {
+        eventSubscriptions.add(new EventSubscription(groupName, eventType, listener));
+    }
+
+    public void unsubscribe(SimplexEventListener listener) {
+        eventSubscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
     public boolean sendToContact(String contactName, String message, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(sendToContactAsync(contactName, message, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject sendToContactResponse = apiSendToContact(contactName, message);
-        final String sendToContactErrorMessage = retrieveError(sendToContactResponse);
-        if (null != sendToContactErrorMessage) {
-            Util.logError(sendToContactErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> sendToContactAsync(String contactName, String message,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiSendToContact(contactName, message).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
     public boolean sendToGroup(String groupName, String message, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(sendToGroupAsync(groupName, message, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject sendToGroupResponse = apiSendToGroup(groupName, message);
-        final String sendToGroupErrorMessage = retrieveError(sendToGroupResponse);
-        if (null != sendToGroupErrorMessage) {
-            Util.logError(sendToGroupErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> sendToGroupAsync(String groupName, String message,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiSendToGroup(groupName, message).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
     public List<GroupMember> getGroupMembers(String groupName, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(getGroupMembersAsync(groupName, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject groupMembersResponse = apiGetMembersFromGroup(groupName);
+    public CompletableFuture<List<GroupMember>> getGroupMembersAsync(String groupName,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiGetMembersFromGroup(groupName).thenApplyAsync(response -> parseLargeResponse(response,
+                rawResponse -> {
+                    final List<GroupMember> members = StreamingResponseParser.parseGroupMembers(rawResponse);
+                    return ((null == members) || members.isEmpty()) ? null : members;
+                }, jsonResponse -> parseGroupMembersResponse(jsonResponse, contactsForReporting, groupsForReporting),
+                contactsForReporting, groupsForReporting), callbackExecutor);
+    }
+
+    private List<GroupMember> parseGroupMembersResponse(JSONObject groupMembersResponse,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
 
         final String groupMembersErrorMessage = retrieveError(groupMembersResponse);
         if (null != groupMembersErrorMessage) {
@@ -162,21 +432,58 @@ public class SimplexConnection {
 
     public boolean changeGroupMemberRole(String groupName, String memberName, String role,
             List<String> contactsForReporting, List<String> groupsForReporting) {
+        return join(changeGroupMemberRoleAsync(groupName, memberName, role, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject roleChangeResponse = apiChangeGroupMemberRole(groupName, memberName, role);
-        final String roleChangeErrorMessage = retrieveError(roleChangeResponse);
-        if (null != roleChangeErrorMessage) {
-            Util.logError(roleChangeErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> changeGroupMemberRoleAsync(String groupName, String memberName, String role,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiChangeGroupMemberRole(groupName, memberName, role).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
-    public List<GroupMessage> getNewGroupMessages(String groupName, List<GroupMessage> alreadyProcessedMessages,
+    public List<GroupMessage> getNewGroupMessages(String groupName, ProcessedMessageIndex processedMessages,
             boolean retrieveDeprecatedMessages, int numberOfMessagesToRetrieve, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(getNewGroupMessagesAsync(groupName, processedMessages, retrieveDeprecatedMessages,
+                numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting));
+    }
+
+    /**
+     * Note: <code>processedMessages</code> is updated when the returned future
+     * completes, so the caller must not modify it in the meantime.
+     */
+    public CompletableFuture<List<GroupMessage>> getNewGroupMessagesAsync(String groupName,
+            ProcessedMessageIndex processedMessages, boolean retrieveDeprecatedMessages,
+            int numberOfMessagesToRetrieve, List<String> contactsForReporting, List<String> groupsForReporting) {
 
-        final JSONObject tailResponse = apiGetLatestMessagesFromGroup(groupName, numberOfMessagesToRetrieve);
+        return getGroupMessagesAsync(groupName, numberOfMessagesToRetrieve, contactsForReporting, groupsForReporting)
+                .thenApply(messages -> GroupMessage.filterNewMessages(messages, processedMessages,
+                        retrieveDeprecatedMessages));
+    }
+
+    /**
+     * Retrieves the latest group messages, without any deduplication.
+     */
+    public List<GroupMessage> getGroupMessages(String groupName, int numberOfMessagesToRetrieve,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+        return join(getGroupMessagesAsync(groupName, numberOfMessagesToRetrieve, contactsForReporting,
+                groupsForReporting));
+    }
+
+    public CompletableFuture<List<GroupMessage>> getGroupMessagesAsync(String groupName,
+            int numberOfMessagesToRetrieve, List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiGetLatestMessagesFromGroup(groupName, numberOfMessagesToRetrieve).thenApplyAsync(
+                response -> parseLargeResponse(response, StreamingResponseParser::parseMessagesFromGroup,
+                        jsonResponse -> parseGroupMessagesResponse(jsonResponse, contactsForReporting,
+                                groupsForReporting),
+                        contactsForReporting, groupsForReporting),
+                callbackExecutor);
+    }
+
+    private List<GroupMessage> parseGroupMessagesResponse(JSONObject tailResponse, List<String> contactsForReporting,
+            List<String> groupsForReporting) {
 
         final String tailErrorMessage = retrieveError(tailResponse);
         if (null != tailErrorMessage) {
@@ -186,15 +493,14 @@ public class SimplexConnection {
 
         try {
 
-            final List<GroupMessage> newMessages = GroupMessage.parseNewMessagesFromGroup(tailResponse,
-                    alreadyProcessedMessages, retrieveDeprecatedMessages, numberOfMessagesToRetrieve, this,
+            final List<GroupMessage> messages = GroupMessage.parseMessagesFromGroup(tailResponse, this,
                     contactsForReporting, groupsForReporting);
-            if (null == newMessages) {
-                Util.logError("Unexpected response for 'getNewGroupMessages':\n" + tailResponse.toString(2), this,
+            if (null == messages) {
+                Util.logError("Unexpected response for 'getGroupMessages':\n" + tailResponse.toString(2), this,
                         contactsForReporting, groupsForReporting);
                 throw new IllegalStateException("Unexpected response!");
             }
-            return newMessages;
+            return messages;
 
         } catch (final JSONException jsonException) {
             Util.logError(Util.getStackTraceAsString(jsonException), this, contactsForReporting, groupsForReporting);
@@ -204,139 +510,449 @@ public class SimplexConnection {
         }
     }
 
+    /**
+     * Retrieves only the group messages that are newer than the given item,
+     * without any deduplication.
+     *
+     * @throws UnsupportedOperationException if the simplex-cli answers with an
+     *                                       error or an unexpected response,
+     *                                       e.g. because it does not support
+     *                                       the command
+     * @throws IllegalStateException         if there is no valid response,
+     *                                       e.g. after a timeout
+     */
+    public List<GroupMessage> getGroupMessagesAfter(long groupId, long itemId, int count,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+        return join(getGroupMessagesAfterAsync(groupId, itemId, count, contactsForReporting, groupsForReporting));
+    }
+
+    public CompletableFuture<List<GroupMessage>> getGroupMessagesAfterAsync(long groupId, long itemId, int count,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiGetMessagesFromGroupAfter(groupId, itemId, count).thenApplyAsync(
+                response -> parseLargeResponse(response, StreamingResponseParser::parseMessagesFromChat,
+                        jsonResponse -> parseGroupMessagesAfterResponse(jsonResponse, contactsForReporting,
+                                groupsForReporting),
+                        contactsForReporting, groupsForReporting),
+                callbackExecutor);
+    }
+
+    private List<GroupMessage> parseGroupMessagesAfterResponse(JSONObject chatResponse,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        if (null == chatResponse) {
+            throw new IllegalStateException("No valid response while retrieving group messages!"); // already logged
+        }
+
+        final String chatErrorMessage = retrieveError(chatResponse);
+        if (null != chatErrorMessage) {
+            Util.logError(chatErrorMessage, this, contactsForReporting, groupsForReporting);
+            throw new UnsupportedOperationException("Error while retrieving group messages!");
+        }
+
+        try {
+
+            final List<GroupMessage> messages = GroupMessage.parseMessagesFromChat(chatResponse, this,
+                    contactsForReporting, groupsForReporting);
+            if (null == messages) {
+                Util.logError("Unexpected response for 'getGroupMessagesAfter':\n" + chatResponse.toString(2), this,
+                        contactsForReporting, groupsForReporting);
+                throw new UnsupportedOperationException("Unexpected response!");
+            }
+            return messages;
+
+        } catch (final JSONException jsonException) {
+            Util.logError(Util.getStackTraceAsString(jsonException), this, contactsForReporting, groupsForReporting);
+            Util.logError("Unexpected JSON:\n" + chatResponse.toString(2), this, contactsForReporting,
+                    groupsForReporting);
+            throw new UnsupportedOperationException("Unexpected JSON!");
+        }
+    }
+
     public boolean moderateGroupMessage(long groupId, long messageId, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(moderateGroupMessageAsync(groupId, messageId, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject moderateResponse = apiModerateGroupMessage(groupId, messageId);
-        final String moderateErrorMessage = retrieveError(moderateResponse);
-        if (null != moderateErrorMessage) {
-            Util.logError(moderateErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> moderateGroupMessageAsync(long groupId, long messageId,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiModerateGroupMessage(groupId, messageId).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
     public boolean blockForAll(String groupName, String memberName, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(blockForAllAsync(groupName, memberName, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject blockForAllResponse = apiBlockForAll(groupName, memberName);
-        final String blockForAllErrorMessage = retrieveError(blockForAllResponse);
-        if (null != blockForAllErrorMessage) {
-            Util.logError(blockForAllErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> blockForAllAsync(String groupName, String memberName,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiBlockForAll(groupName, memberName).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
     public boolean removeMemberFromGroup(String groupName, String memberName, List<String> contactsForReporting,
             List<String> groupsForReporting) {
+        return join(removeMemberFromGroupAsync(groupName, memberName, contactsForReporting, groupsForReporting));
+    }
 
-        final JSONObject removeFromGroupResponse = apiRemoveFromGroup(groupName, memberName);
-        final String removeFromGroupErrorMessage = retrieveError(removeFromGroupResponse);
-        if (null != removeFromGroupErrorMessage) {
-            Util.logError(removeFromGroupErrorMessage, this, contactsForReporting, groupsForReporting);
-            return false;
-        }
-        return true;
+    public CompletableFuture<Boolean> removeMemberFromGroupAsync(String groupName, String memberName,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        return apiRemoveFromGroup(groupName, memberName).thenApplyAsync(
+                response -> checkResponse(response, contactsForReporting, groupsForReporting), callbackExecutor);
     }
 
     /**
-     * Send logmessage to configured bot-admins from module config.
-     *
-     * @param logMessage the message to send
-     * @param contacts   list of contacts to send message to
-     * @param groups     list of groups to send message to
+     * Queues the log line for the given contacts and groups without waiting,
+     * see {@link AdminLogSink}.
      */
     public void logToBotAdmins(String logMessage, List<String> contacts, List<String> groups) {
-        sendToContactsAndGroups(logMessage, contacts, groups, null, null);
+        adminLog.offer(logMessage, contacts, groups);
     }
 
     public void sendToContactsAndGroups(String message, List<String> contacts, List<String> groups,
             List<String> contactsForReporting, List<String> groupsForReporting) {
+        join(sendToContactsAndGroupsAsync(message, contacts, groups, contactsForReporting, groupsForReporting));
+    }
+
+    /**
+     * Sends the message to all contacts and groups at once, the returned future
+     * completes when all of them have been answered.
+     */
+    public CompletableFuture<Void> sendToContactsAndGroupsAsync(String message, List<String> contacts,
+            List<String> groups, List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        final List<CompletableFuture<Boolean>> results = new LinkedList<>();
 
         if (null != contacts) {
             for (final String contact : contacts) {
-                sendToContact(contact, message, contactsForReporting, groupsForReporting);
+                results.add(sendToContactAsync(contact, message, contactsForReporting, groupsForReporting));
             }
         }
 
         if (null != groups) {
             for (final String group : groups) {
-                sendToGroup(group, message, contactsForReporting, groupsForReporting);
+                results.add(sendToGroupAsync(group, message, contactsForReporting, groupsForReporting));
             }
         }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]));
     }
 
-    private JSONObject apiSendToContact(String contactName, String message) {
-        return send("@'" + contactName + "' " + message);
+    private CompletableFuture<JSONObject> apiSendToContact(String contactName, String message) {
+        return sendAsync("@'" + contactName + "' " + message);
     }
 
     @SuppressWarnings("unused")
-    private JSONObject apiGetLatestMessagesFromContact(String contactName, int count) {
-        return send("/tail @'" + contactName + "' " + count);
+    private CompletableFuture<JSONObject> apiGetLatestMessagesFromContact(String contactName, int count) {
+        return sendAsync("/tail @'" + contactName + "' " + count);
+    }
+
+    private CompletableFuture<JSONObject> apiSendToGroup(String groupName, String message) {
+        return sendAsync("#'" + groupName + "' " + message);
+    }
+
+    private CompletableFuture<String> apiGetMembersFromGroup(String groupName) {
+        return sendRawAsync("/members '" + groupName + "'");
+    }
+
+    private CompletableFuture<JSONObject> apiChangeGroupMemberRole(String groupName, String memberName, String role) {
+        return sendAsync("/member role #'" + groupName + "' '" + memberName + "' " + role);
     }
 
-    private JSONObject apiSendToGroup(String groupName, String message) {
-        return send("#'" + groupName + "' " + message);
+    private CompletableFuture<String> apiGetLatestMessagesFromGroup(String groupName, int count) {
+        return sendRawAsync("/tail #'" + groupName + "' " + count);
     }
 
-    private JSONObject apiGetMembersFromGroup(String groupName) {
-        return send("/members '" + groupName + "'");
+    private CompletableFuture<String> apiGetMessagesFromGroupAfter(long groupId, long itemId, int count) {
+        return sendRawAsync("/_get chat #" + groupId + " after=" + itemId + " count=" + count);
     }
 
-    private JSONObject apiChangeGroupMemberRole(String groupName, String memberName, String role) {
-        return send("/member role #'" + groupName + "' '" + memberName + "' " + role);
+    private CompletableFuture<JSONObject> apiModerateGroupMessage(long groupId, long messageId) {
+        return sendAsync("/_delete member item #" + groupId + " " + messageId);
     }
 
-    private JSONObject apiGetLatestMessagesFromGroup(String groupName, int count) {
-        return send("/tail #'" + groupName + "' " + count);
+    private CompletableFuture<JSONObject> apiBlockForAll(String groupName, String memberName) {
+        return sendAsync("/block for all #'" + groupName + "' @'" + memberName + "'");
     }
 
-    private JSONObject apiModerateGroupMessage(long groupId, long messageId) {
-        return send("/_delete member item #" + groupId + " " + messageId);
+    private CompletableFuture<JSONObject> apiRemoveFromGroup(String groupName, String memberName) {
+        return sendAsync("/remove '" + groupName + "' '" + memberName + "'");
     }
 
-    private JSONObject apiBlockForAll(String groupName, String memberName) {
-        return send("/block for all #'" + groupName + "' @'" + memberName + "'");
+    private CompletableFuture<JSONObject> sendAsync(String command) {
+        return sendRawAsync(command).thenApplyAsync(this::toJson, callbackExecutor);
     }
 
-    private JSONObject apiRemoveFromGroup(String groupName, String memberName) {
-        return send("/remove '" + groupName + "' '" + memberName + "'");
+    private CompletableFuture<String> sendRawAsync(String command) {
+        return sendRawAsync(command, DEFAULT_COMMAND_TIMEOUT_MILLISECONDS);
     }
 
-    private synchronized JSONObject send(String command) {
+    /**
+     * The returned future never completes exceptionally: errors and timeouts are
+     * logged and result in a <code>null</code> response, just like
+     * {@link #retrieveError(JSONObject)} expects it.
+     */
+    private CompletableFuture<String> sendRawAsync(String command, long timeoutMilliseconds) {
 
-        final long cId = System.currentTimeMillis();
+        final String corrId = String.valueOf(corrIdCounter.incrementAndGet());
         final JSONObject request = new JSONObject(
-                Map.of(SimplexConstants.KEY_CORR_ID, String.valueOf(cId), SimplexConstants.KEY_CMD, command));
+                Map.of(SimplexConstants.KEY_CORR_ID, corrId, SimplexConstants.KEY_CMD, command));
 
-        websocket.sendText(request.toString(), true);
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        pendingRequests.put(corrId, response);
 
-        final long startTime = System.currentTimeMillis();
-        while ((System.currentTimeMillis() - startTime) < (TimeUtil.MILLISECONDS_PER_MINUTE)) { // 60 seconds timeout!
-            final String responseString = responses.poll();
+        try {
+            // the websocket allows only one outstanding send operation at a time:
+            synchronized (sendLock) {
+                final WebSocket currentWebsocket = websocket;
+                if (null == currentWebsocket) {
+                    throw new CompletionException(new IOException("Not connected to port " + port));
+                }
+                currentWebsocket.sendText(request.toString(), true).join();
+            }
+        } catch (final RuntimeException ex) {
+            response.completeExceptionally(ex);
+        }
 
-            if (null != responseString) {
-                try {
-                    final JSONObject jsonResponse = new JSONObject(responseString);
+        return response.orTimeout(timeoutMilliseconds, TimeUnit.MILLISECONDS).handle((rawResponse, throwable) -> {
 
-                    if (String.valueOf(cId).equals(jsonResponse.get(SimplexConstants.KEY_CORR_ID))) {
-                        return jsonResponse;
-                    }
+            pendingRequests.remove(corrId);
+
+            if (null == throwable) {
+                return rawResponse;
+            }
+
+            final Throwable cause = (throwable instanceof CompletionException) ? throwable.getCause() : throwable;
+            if (cause instanceof TimeoutException) {
+                Util.logError("Timeout reached for command: " + command, null, null, null);
+            } else {
+                Util.logError("Failed to send command '" + command + "': " + cause.toString(), null, null, null);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return the parsed response or <code>null</code> if it is missing or
+     *         invalid
+     */
+    private JSONObject toJson(String rawResponse) {
 
-                } catch (final Exception ex) {
-                    Util.logError("Invalid response for command '" + command + "': '" + responseString + "'", null,
-                            null, null);
-                    Util.logError(ex.toString(), null, null, null);
-                    ex.printStackTrace();
-                    return null;
+        if (null == rawResponse) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(rawResponse);
+        } catch (final JSONException ex) {
+            Util.logError("Invalid response: '" + rawResponse + "'", null, null, null);
+            Util.logError(ex.toString(), null, null, null);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a large response according to {@link BotConfig#getJsonParser()}.
+     * The streaming parser only handles the expected response shape, everything
+     * else (e.g. errors) is left to the <code>org.json</code> based parsing.
+     */
+    private <T> T parseLargeResponse(String rawResponse, Function<String, T> streamingParser,
+            Function<JSONObject, T> domParser, List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        final JsonParser jsonParser = BotConfig.getJsonParser();
+
+        if ((JsonParser.STREAMING == jsonParser) && (null != rawResponse)) {
+            try {
+                final T result = streamingParser.apply(rawResponse);
+                if (null != result) {
+                    return result;
                 }
+            } catch (final JSONException ex) {
+                // fall back to org.json, which reports the details
             }
         }
 
-        // timeout reached
-        Util.logError("Timeout reached for command: " + command, null, null, null);
-        return null;
+        final T result = domParser.apply(toJson(rawResponse));
+
+        if ((JsonParser.VALIDATE == jsonParser) && (null != rawResponse)) {
+            String streamingResult;
+            try {
+                streamingResult = String.valueOf(streamingParser.apply(rawResponse));
+            } catch (final JSONException ex) {
+                streamingResult = ex.toString();
+            }
+            if (!String.valueOf(result).equals(streamingResult)) {
+                Util.logWarning("Streaming parser differs from org.json!\norg.json: " + result + "\nstreaming: "
+                        + streamingResult, this, contactsForReporting, groupsForReporting);
+            }
+        }
+
+        return result;
+    }
+
+    private void completePendingRequest(String responseString) {
+
+        try {
+            // only the corrId is needed here, the response itself is parsed by the caller:
+            final String corrId = JsonPullParser.readTopLevelString(responseString, SimplexConstants.KEY_CORR_ID);
+            if (null == corrId) {
+                // pushed event that just happened to contain the key somewhere:
+                if (!eventSubscriptions.isEmpty()) {
+                    eventExecutor.execute(() -> dispatchEvent(responseString));
+                }
+                return;
+            }
+
+            final CompletableFuture<String> response = pendingRequests.remove(corrId);
+            if (null == response) {
+                Util.logWarning("Discarding response for unknown or timed out corrId: " + corrId, null, null, null);
+                return;
+            }
+            response.complete(responseString);
+
+        } catch (final Exception ex) {
+            Util.logError("Invalid response: '" + responseString + "'", null, null, null);
+            Util.logError(ex.toString(), null, null, null);
+        }
+    }
+
+    private void dispatchEvent(String eventString) {
+
+        try {
+            dispatchEvent(new JSONObject(eventString));
+        } catch (final Exception ex) {
+            Util.logError("Invalid event: '" + eventString + "'", null, null, null);
+            Util.logError(ex.toString(), null, null, null);
+        }
+    }
+
+    private void dispatchEvent(JSONObject eventResponse) {
+
+        JSONObject event = eventResponse.optJSONObject(SimplexConstants.KEY_RESP);
+        if (null == event) {
+            return;
+        }
+        final JSONObject right = event.optJSONObject(SimplexConstants.KEY_RIGHT);
+        if (null != right) {
+            // SimpleX >= 6.4
+            event = right;
+        } else if (event.has(SimplexConstants.KEY_LEFT)) {
+            return; // error events are not dispatched
+        }
+
+        final String eventType = event.optString(SimplexConstants.KEY_TYPE);
+
+        final JSONArray chatItems = event.optJSONArray(SimplexConstants.KEY_CHAT_ITEMS);
+        if (null == chatItems) {
+            final String groupName = getGroupName(event);
+            if (null != groupName) {
+                notifySubscribers(groupName, eventType, event);
+            }
+            return;
+        }
+
+        // one event can contain chat items of several groups:
+        final Map<String, JSONArray> chatItemsPerGroup = new HashMap<>();
+        for (int i = 0; i < chatItems.length(); i++) {
+            final JSONObject chatItem = chatItems.optJSONObject(i);
+            final String groupName = null == chatItem ? null : getGroupName(chatItem);
+            if (null != groupName) {
+                chatItemsPerGroup.computeIfAbsent(groupName, name -> new JSONArray()).put(chatItem);
+            }
+        }
+
+        for (final Map.Entry<String, JSONArray> groupChatItems : chatItemsPerGroup.entrySet()) {
+            final JSONObject groupEvent = new JSONObject();
+            groupEvent.put(SimplexConstants.KEY_TYPE, eventType);
+            groupEvent.put(SimplexConstants.KEY_CHAT_ITEMS, groupChatItems.getValue());
+            notifySubscribers(groupChatItems.getKey(), eventType, groupEvent);
+        }
+    }
+
+    /**
+     * Tells every subscribed group that events might have been missed while the
+     * connection was down.
+     */
+    private void dispatchReconnectedEvent() {
+
+        final Set<String> groupNames = new HashSet<>();
+        for (final EventSubscription subscription : eventSubscriptions) {
+            groupNames.add(subscription.groupName);
+        }
+
+        for (final String groupName : groupNames) {
+            final JSONObject event = new JSONObject();
+            event.put(SimplexConstants.KEY_TYPE, SimplexConstants.VALUE_EVENT_RECONNECTED);
+            notifySubscribers(groupName, SimplexConstants.VALUE_EVENT_RECONNECTED, event);
+        }
+    }
+
+    /**
+     * @return the local group name of an event or chat item, or
+     *         <code>null</code> if it does not belong to a group
+     */
+    private static String getGroupName(JSONObject eventOrChatItem) {
+
+        JSONObject groupInfo = eventOrChatItem.optJSONObject(SimplexConstants.KEY_GROUP_INFO);
+
+        if (null == groupInfo) {
+            JSONObject chatInfo = eventOrChatItem.optJSONObject(SimplexConstants.KEY_CHAT_INFO);
+            if (null == chatInfo) {
+                final JSONObject chatItem = eventOrChatItem.optJSONObject(SimplexConstants.KEY_CHAT_ITEM);
+                chatInfo = null == chatItem ? null : chatItem.optJSONObject(SimplexConstants.KEY_CHAT_INFO);
+            }
+            groupInfo = null == chatInfo ? null : chatInfo.optJSONObject(SimplexConstants.KEY_GROUP_INFO);
+        }
+
+        return null == groupInfo ? null : groupInfo.optString(SimplexConstants.KEY_LOCAL_DISPLAY_NAME, null);
+    }
+
+    private void notifySubscribers(String groupName, String eventType, JSONObject event) {
+
+        for (final EventSubscription subscription : eventSubscriptions) {
+            if (!subscription.groupName.equals(groupName)
+                    || ((null != subscription.eventType) && !subscription.eventType.equals(eventType))) {
+                continue;
+            }
+
+            try {
+                subscription.listener.onEvent(eventType, event);
+            } catch (final Exception ex) {
+                Util.logError("Event listener failed for '" + eventType + "' in group '" + groupName + "': "
+                        + Util.getStackTraceAsString(ex), null, null, null);
+            }
+        }
+    }
+
+    /**
+     * Waits for the future and rethrows exceptions from the asynchronous part
+     * unwrapped, so that the blocking methods behave like before.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+
+        try {
+            return future.join();
+        } catch (final CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private boolean checkResponse(JSONObject response, List<String> contactsForReporting,
+            List<String> groupsForReporting) {
+
+        final String errorMessage = retrieveError(response);
+        if (null != errorMessage) {
+            Util.logError(errorMessage, this, contactsForReporting, groupsForReporting);
+            return false;
+        }
+        return true;
     }
 
     private String retrieveError(JSONObject simplexResponse) {
@@ -379,4 +995,17 @@ public class SimplexConnection {
         // no error found:
         return null;
     }
+
+    private static class EventSubscription {
+
+        private final String groupName;
+        private final String eventType;
+        private final SimplexEventListener listener;
+
+        private EventSubscription(String groupName, String eventType, SimplexEventListener listener) {
+            this.groupName = groupName;
+            this.eventType = eventType;
+            this.listener = listener;
+        }
+    }
 }
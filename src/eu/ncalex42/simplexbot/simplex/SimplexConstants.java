@@ -33,11 +33,19 @@ public class SimplexConstants {
     public static final String KEY_DISPLAY_NAME = "displayName";
     public static final String KEY_BLOCKED_BY_ADMIN = "blockedByAdmin";
     public static final String KEY_CREATED_AT = "createdAt";
+    public static final String KEY_CHAT = "chat";
 
     public static final String VALUE_CHAT_CMD_ERROR = "chatCmdError";
     public static final String VALUE_GROUP_MEMBERS = "groupMembers";
     public static final String VALUE_CHAT_ITEMS = "chatItems";
     public static final String VALUE_GROUP = "group";
+    public static final String VALUE_API_CHAT = "apiChat";
+
+    public static final String VALUE_EVENT_NEW_CHAT_ITEMS = "newChatItems";
+    public static final String VALUE_EVENT_CHAT_ITEM_UPDATED = "chatItemUpdated";
+    public static final String VALUE_EVENT_JOINED_GROUP_MEMBER = "joinedGroupMember";
+    // not sent by simplex-cli, dispatched by SimplexConnection after a reconnect:
+    public static final String VALUE_EVENT_RECONNECTED = "reconnected";
 
     public static final String VALUE_CONTENT_TYPE_MSG_CONTENT = "rcvMsgContent";
     public static final String VALUE_MSG_CONTENT_TYPE_TEXT = "text";
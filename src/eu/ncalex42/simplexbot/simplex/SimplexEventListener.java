@@ -0,0 +1,22 @@
+package eu.ncalex42.simplexbot.simplex;
+
+import org.json.JSONObject;
+
+/**
+ * Receives events that are pushed by simplex-cli without being requested, e.g.
+ * new or updated chat items.
+ */
+@FunctionalInterface
+public interface SimplexEventListener {
+
+    /**
+     * Called on the event thread of the {@link SimplexConnection}, so
+     * implementations should return quickly.
+     *
+     * @param eventType the event type, e.g.
+     *                  {@link SimplexConstants#VALUE_EVENT_NEW_CHAT_ITEMS}
+     * @param event     the event without the surrounding response envelope;
+     *                  chat items of other groups are already filtered out
+     */
+    void onEvent(String eventType, JSONObject event);
+}
@@ -0,0 +1,315 @@
+package eu.ncalex42.simplexbot.simplex.json;
+
+import org.json.JSONException;
+
+/**
+ * A minimal pull parser for JSON text. In contrast to <code>org.json</code> it
+ * does not build any object tree, the caller reads the tokens one after another
+ * and skips everything it is not interested in.
+ */
+public class JsonPullParser {
+
+    public enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL, END_OF_INPUT
+    }
+
+    private static final char CONTEXT_OBJECT = '{';
+    private static final char CONTEXT_ARRAY = '[';
+
+    private final CharSequence input;
+    private int position = 0;
+
+    private char[] contextStack = new char[32];
+    private int depth = 0;
+    private boolean expectFieldName = false;
+
+    private Token currentToken = null;
+    private String currentText = null;
+
+    public JsonPullParser(CharSequence input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the value of a top level string field, e.g. the
+     * <code>corrId</code> of a response, without parsing the other values.
+     *
+     * @return the value or <code>null</code> if the field does not exist or is
+     *         no string
+     */
+    public static String readTopLevelString(CharSequence json, String fieldName) {
+
+        final JsonPullParser parser = new JsonPullParser(json);
+        if (Token.START_OBJECT != parser.nextToken()) {
+            throw new JSONException("JSON object expected");
+        }
+
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            if (fieldName.equals(parser.getText())) {
+                return (Token.STRING == parser.nextToken()) ? parser.getText() : null;
+            }
+            parser.skipValue();
+        }
+
+        return null;
+    }
+
+    public Token getCurrentToken() {
+        return currentToken;
+    }
+
+    /**
+     * @return the decoded text of the current field name, string or number
+     */
+    public String getText() {
+        return currentText;
+    }
+
+    public long getLong() {
+
+        if (Token.NUMBER != currentToken) {
+            throw error("Number expected but found " + currentToken);
+        }
+        try {
+            return Long.parseLong(currentText);
+        } catch (final NumberFormatException ex) {
+            throw error("Invalid integer '" + currentText + "'");
+        }
+    }
+
+    public boolean getBoolean() {
+
+        if (Token.TRUE == currentToken) {
+            return true;
+        }
+        if (Token.FALSE == currentToken) {
+            return false;
+        }
+        throw error("Boolean expected but found " + currentToken);
+    }
+
+    /**
+     * Reads the next token and checks its type.
+     */
+    public void expect(Token expectedToken) {
+
+        final Token token = nextToken();
+        if (expectedToken != token) {
+            throw error(expectedToken + " expected but found " + token);
+        }
+    }
+
+    /**
+     * Skips the next value including all of its children, typically called
+     * after a {@link Token#FIELD_NAME} that is not of interest.
+     */
+    public void skipValue() {
+
+        final Token token = nextToken();
+        if ((Token.START_OBJECT != token) && (Token.START_ARRAY != token)) {
+            return;
+        }
+
+        final int targetDepth = depth - 1;
+        while (depth > targetDepth) {
+            if (Token.END_OF_INPUT == nextToken()) {
+                throw error("Unexpected end of input");
+            }
+        }
+    }
+
+    public Token nextToken() {
+
+        currentText = null;
+
+        while (position < input.length()) {
+
+            final char c = input.charAt(position);
+            switch (c) {
+
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ':':
+                position++;
+                continue;
+
+            case ',':
+                position++;
+                expectFieldName = (depth > 0) && (CONTEXT_OBJECT == contextStack[depth - 1]);
+                continue;
+
+            case '{':
+                position++;
+                push(CONTEXT_OBJECT);
+                expectFieldName = true;
+                return currentToken = Token.START_OBJECT;
+
+            case '}':
+                position++;
+                pop(CONTEXT_OBJECT);
+                return currentToken = Token.END_OBJECT;
+
+            case '[':
+                position++;
+                push(CONTEXT_ARRAY);
+                expectFieldName = false;
+                return currentToken = Token.START_ARRAY;
+
+            case ']':
+                position++;
+                pop(CONTEXT_ARRAY);
+                return currentToken = Token.END_ARRAY;
+
+            case '"':
+                currentText = readString();
+                if (expectFieldName) {
+                    expectFieldName = false;
+                    return currentToken = Token.FIELD_NAME;
+                }
+                return currentToken = Token.STRING;
+
+            case 't':
+                readLiteral("true");
+                return currentToken = Token.TRUE;
+
+            case 'f':
+                readLiteral("false");
+                return currentToken = Token.FALSE;
+
+            case 'n':
+                readLiteral("null");
+                return currentToken = Token.NULL;
+
+            default:
+                if (('-' == c) || ((c >= '0') && (c <= '9'))) {
+                    currentText = readNumber();
+                    return currentToken = Token.NUMBER;
+                }
+                throw error("Unexpected character '" + c + "'");
+            }
+        }
+
+        if (depth > 0) {
+            throw error("Unexpected end of input");
+        }
+        return currentToken = Token.END_OF_INPUT;
+    }
+
+    private void push(char context) {
+
+        if (depth == contextStack.length) {
+            final char[] newStack = new char[depth * 2];
+            System.arraycopy(contextStack, 0, newStack, 0, depth);
+            contextStack = newStack;
+        }
+        contextStack[depth++] = context;
+    }
+
+    private void pop(char context) {
+
+        if ((0 == depth) || (context != contextStack[depth - 1])) {
+            throw error("Unbalanced brackets");
+        }
+        depth--;
+        expectFieldName = false;
+    }
+
+    private String readString() {
+
+        position++; // opening quote
+        final int start = position;
+
+        // fast path without escape sequences:
+        while (position < input.length()) {
+            final char c = input.charAt(position);
+            if ('"' == c) {
+                final String result = input.subSequence(start, position).toString();
+                position++;
+                return result;
+            }
+            if ('\\' == c) {
+                break;
+            }
+            position++;
+        }
+
+        final StringBuilder result = new StringBuilder(input.subSequence(start, position));
+        while (position < input.length()) {
+
+            final char c = input.charAt(position++);
+            if ('"' == c) {
+                return result.toString();
+            }
+            if ('\\' != c) {
+                result.append(c);
+                continue;
+            }
+
+            if (position >= input.length()) {
+                break;
+            }
+            final char escaped = input.charAt(position++);
+            switch (escaped) {
+            case 'b':
+                result.append('\b');
+                break;
+            case 'f':
+                result.append('\f');
+                break;
+            case 'n':
+                result.append('\n');
+                break;
+            case 'r':
+                result.append('\r');
+                break;
+            case 't':
+                result.append('\t');
+                break;
+            case 'u':
+                if ((position + 4) > input.length()) {
+                    throw error("Invalid unicode escape sequence");
+                }
+                try {
+                    result.append((char) Integer.parseInt(input.subSequence(position, position + 4).toString(), 16));
+                } catch (final NumberFormatException ex) {
+                    throw error("Invalid unicode escape sequence");
+                }
+                position += 4;
+                break;
+            default: // '"', '\\' and '/'
+                result.append(escaped);
+            }
+        }
+
+        throw error("Unterminated string");
+    }
+
+    private String readNumber() {
+
+        final int start = position;
+        while (position < input.length()) {
+            final char c = input.charAt(position);
+            if (((c >= '0') && (c <= '9')) || ('-' == c) || ('+' == c) || ('.' == c) || ('e' == c) || ('E' == c)) {
+                position++;
+            } else {
+                break;
+            }
+        }
+        return input.subSequence(start, position).toString();
+    }
+
+    private void readLiteral(String literal) {
+
+        if ((position + literal.length()) > input.length()
+                || !literal.contentEquals(input.subSequence(position, position + literal.length()))) {
+            throw error("Invalid literal");
+        }
+        position += literal.length();
+    }
+
+    private JSONException error(String message) {
+        return new JSONException(message + " at position " + position);
+    }
+}
@@ -94,6 +94,13 @@ public class GroupMember {
         return false;
     }
 
+    @Override
+    public String toString() {
+        return "GroupMember [localName=" + localName + ", displayName=" + displayName + ", groupMemberId="
+                + groupMemberId + ", role=" + role + ", status=" + status + ", blockedByAdmin=" + blockedByAdmin
+                + ", createdAt=" + createdAt + "]";
+    }
+
     public static List<GroupMember> parseGroupMembers(JSONObject groupMemberResponse,
             SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting) {
 
@@ -10,6 +10,7 @@ import org.json.JSONObject;
 
 import eu.ncalex42.simplexbot.TimeUtil;
 import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.simplex.ProcessedMessageIndex;
 import eu.ncalex42.simplexbot.simplex.SimplexConnection;
 import eu.ncalex42.simplexbot.simplex.SimplexConstants;
 
@@ -52,6 +53,12 @@ public class GroupMessage {
         return false;
     }
 
+    @Override
+    public String toString() {
+        return "GroupMessage [id=" + id + ", groupId=" + groupId + ", type=" + type + ", text=" + text + ", member="
+                + member + ", itemTs=" + itemTs + ", quotedGroupMessage=" + quotedGroupMessage + "]";
+    }
+
     public long getId() {
         return id;
     }
@@ -80,10 +87,13 @@ public class GroupMessage {
         return quotedGroupMessage;
     }
 
-    public static List<GroupMessage> parseNewMessagesFromGroup(JSONObject tailResponse,
-            List<GroupMessage> alreadyProcessedMessages, boolean retrieveDeprecatedMessages,
-            int numberOfMessagesToRetrieve, SimplexConnection simplexConnection, List<String> contactsForReporting,
-            List<String> groupsForReporting) {
+    /**
+     * Parses the response of <code>/tail</code>.
+     *
+     * @return all group messages of the response, without any deduplication
+     */
+    public static List<GroupMessage> parseMessagesFromGroup(JSONObject tailResponse,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting) {
 
         JSONObject resp = tailResponse.getJSONObject(SimplexConstants.KEY_RESP);
         String type;
@@ -108,86 +118,108 @@ public class GroupMessage {
             return null;
         }
 
-        final boolean firstRun = alreadyProcessedMessages.isEmpty();
+        return parseMessagesFromChatItems(resp.getJSONArray(SimplexConstants.KEY_CHAT_ITEMS), simplexConnection,
+                contactsForReporting, groupsForReporting);
+    }
 
-        final JSONArray chatItems = resp.getJSONArray(SimplexConstants.KEY_CHAT_ITEMS);
+    /**
+     * Parses a pushed {@link SimplexConstants#VALUE_EVENT_NEW_CHAT_ITEMS} or
+     * {@link SimplexConstants#VALUE_EVENT_CHAT_ITEM_UPDATED} event.
+     *
+     * @return all group messages of the event, without any deduplication
+     */
+    public static List<GroupMessage> parseMessagesFromEvent(JSONObject event, SimplexConnection simplexConnection,
+            List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        JSONArray chatItems = event.optJSONArray(SimplexConstants.KEY_CHAT_ITEMS);
+        if (null == chatItems) {
+            final JSONObject chatItem = event.optJSONObject(SimplexConstants.KEY_CHAT_ITEM);
+            if (null == chatItem) {
+                return List.of();
+            }
+            chatItems = new JSONArray().put(chatItem);
+        }
 
-        final List<GroupMessage> result = new LinkedList<>();
-        for (int i = 0; i < chatItems.length(); i++) {
+        return parseMessagesFromChatItems(chatItems, simplexConnection, contactsForReporting, groupsForReporting);
+    }
 
-            final JSONObject chatItem = chatItems.getJSONObject(i);
+    /**
+     * @return the messages that are new or contain new edits compared to
+     *         'processedMessages', which is updated accordingly
+     */
+    public static List<GroupMessage> filterNewMessages(List<GroupMessage> messages,
+            ProcessedMessageIndex processedMessages, boolean retrieveDeprecatedMessages) {
 
-            try {
+        final boolean firstRun = processedMessages.isEmpty();
 
-                // check chatItem type:
-                final String chatItemType = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_INFO)
-                        .getString(SimplexConstants.KEY_TYPE);
-                if (!SimplexConstants.VALUE_GROUP.equals(chatItemType)) {
-                    continue;
-                }
-
-                // check chatItem content type:
-                final String chatItemContentType = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM)
-                        .getJSONObject(SimplexConstants.KEY_CONTENT).getString(SimplexConstants.KEY_TYPE);
-                if (!SimplexConstants.VALUE_CONTENT_TYPE_MSG_CONTENT.equals(chatItemContentType)) {
-                    continue;
-                }
-
-                final long groupId = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_INFO)
-                        .getJSONObject(SimplexConstants.KEY_GROUP_INFO).getLong(SimplexConstants.KEY_GROUP_ID);
-
-                final JSONObject messageMeta = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM)
-                        .getJSONObject(SimplexConstants.KEY_META);
-                final long messageId = messageMeta.getLong(SimplexConstants.KEY_ITEM_ID);
-                final String itemTs = messageMeta.getString(SimplexConstants.KEY_ITEM_TS);
-
-                // itemTs should not contain nanoseconds:
-                if (isUnexpectedTimestampFormat(itemTs)) {
-                    continue;
-                }
-
-                final JSONObject messageContent = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM)
-                        .getJSONObject(SimplexConstants.KEY_CONTENT).getJSONObject(SimplexConstants.KEY_MSG_CONTENT);
-                final String messageType = messageContent.getString(SimplexConstants.KEY_TYPE);
-                final String messageText = messageContent.getString(SimplexConstants.KEY_TEXT);
-
-                final JSONObject groupMember = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM)
-                        .getJSONObject(SimplexConstants.KEY_CHAT_DIR).getJSONObject(SimplexConstants.KEY_GROUP_MEMBER);
-
-                final JSONObject quotedItem = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM)
-                        .optJSONObject(SimplexConstants.KEY_QUOTED_ITEM);
-                QuotedGroupMessage quotedGroupMessage = null;
-                if (null != quotedItem) {
-                    quotedGroupMessage = QuotedGroupMessage.parseQuotedGroupMessage(quotedItem);
-                }
-
-                final GroupMessage currentGroupMessage = new GroupMessage(messageId, groupId, messageType, messageText,
-                        GroupMember.parseGroupMember(groupMember), itemTs, quotedGroupMessage);
-
-                // check if message is new or contains new edits:
-                final int indexOfCurrentMessage = alreadyProcessedMessages.indexOf(currentGroupMessage);
-                if (-1 != indexOfCurrentMessage) {
-
-                    final GroupMessage alreadyProcessedMessage = alreadyProcessedMessages.get(indexOfCurrentMessage);
-                    if (!TYPE_UNKNOWN.equals(alreadyProcessedMessage.getType())
-                            && alreadyProcessedMessage.getText().equals(currentGroupMessage.getText())) {
-                        continue; // no changes
-                    }
-
-                    // replace old text with new text:
-                    alreadyProcessedMessages.remove(indexOfCurrentMessage);
-                    alreadyProcessedMessages.add(indexOfCurrentMessage, currentGroupMessage);
-
-                    if (TYPE_UNKNOWN.equals(alreadyProcessedMessage.getType())) {
-                        continue;
-                    }
-
-                } else {
-                    alreadyProcessedMessages.add(currentGroupMessage);
-                }
+        final List<GroupMessage> result = new LinkedList<>();
+        for (final GroupMessage currentGroupMessage : messages) {
 
+            // check if message is new or contains new edits:
+            switch (processedMessages.update(currentGroupMessage)) {
+            case NEW:
+            case EDITED:
                 result.add(currentGroupMessage);
+                break;
+            default: // no changes or message was processed before with unknown text
+            }
+        }
+
+        if (firstRun && !retrieveDeprecatedMessages) {
+            return List.of();
+        } else {
+            return result;
+        }
+    }
+
+    /**
+     * Parses the response of a paged chat retrieval (<code>/_get chat</code>).
+     *
+     * @return all group messages of the response, without any deduplication
+     */
+    public static List<GroupMessage> parseMessagesFromChat(JSONObject chatResponse,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        JSONObject resp = chatResponse.getJSONObject(SimplexConstants.KEY_RESP);
+        final JSONObject right = resp.optJSONObject(SimplexConstants.KEY_RIGHT);
+        if (null != right) {
+            // SimpleX >= 6.4
+            resp = right;
+        }
+        final String type = resp.getString(SimplexConstants.KEY_TYPE);
+        if (!SimplexConstants.VALUE_API_CHAT.equals(type)) {
+            Util.logError("Unexpected type: " + type, simplexConnection, contactsForReporting, groupsForReporting);
+            return null;
+        }
+
+        final JSONObject chat = resp.getJSONObject(SimplexConstants.KEY_CHAT);
+        final JSONObject chatInfo = chat.getJSONObject(SimplexConstants.KEY_CHAT_INFO);
+        final JSONArray chatItems = chat.getJSONArray(SimplexConstants.KEY_CHAT_ITEMS);
+
+        final List<GroupMessage> result = new LinkedList<>();
+        for (int i = 0; i < chatItems.length(); i++) {
+            final GroupMessage message = parseGroupMessage(chatInfo, chatItems.getJSONObject(i), simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            if (null != message) {
+                result.add(message);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<GroupMessage> parseMessagesFromChatItems(JSONArray chatItems,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting) {
 
+        final List<GroupMessage> result = new LinkedList<>();
+        for (int i = 0; i < chatItems.length(); i++) {
+
+            final JSONObject chatItem = chatItems.getJSONObject(i);
+            final GroupMessage message;
+            try {
+                message = parseGroupMessage(chatItem.getJSONObject(SimplexConstants.KEY_CHAT_INFO),
+                        chatItem.getJSONObject(SimplexConstants.KEY_CHAT_ITEM), simplexConnection,
+                        contactsForReporting, groupsForReporting);
             } catch (final JSONException jsonException) {
                 Util.logError(Util.getStackTraceAsString(jsonException), simplexConnection, contactsForReporting,
                         groupsForReporting);
@@ -195,18 +227,76 @@ public class GroupMessage {
                         groupsForReporting);
                 throw new IllegalStateException("Unexpected JSON!");
             }
+
+            if (null != message) {
+                result.add(message);
+            }
         }
 
-        Util.trimProcessedMessages(alreadyProcessedMessages, numberOfMessagesToRetrieve);
+        return result;
+    }
 
-        if (firstRun && !retrieveDeprecatedMessages) {
-            return List.of();
-        } else {
-            return result;
+    /**
+     * @return the parsed message or <code>null</code> if the chat item is no
+     *         group message
+     */
+    private static GroupMessage parseGroupMessage(JSONObject chatInfo, JSONObject chatItem,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting) {
+
+        try {
+
+            // check chatItem type:
+            final String chatItemType = chatInfo.getString(SimplexConstants.KEY_TYPE);
+            if (!SimplexConstants.VALUE_GROUP.equals(chatItemType)) {
+                return null;
+            }
+
+            // check chatItem content type:
+            final String chatItemContentType = chatItem.getJSONObject(SimplexConstants.KEY_CONTENT)
+                    .getString(SimplexConstants.KEY_TYPE);
+            if (!SimplexConstants.VALUE_CONTENT_TYPE_MSG_CONTENT.equals(chatItemContentType)) {
+                return null;
+            }
+
+            final long groupId = chatInfo.getJSONObject(SimplexConstants.KEY_GROUP_INFO)
+                    .getLong(SimplexConstants.KEY_GROUP_ID);
+
+            final JSONObject messageMeta = chatItem.getJSONObject(SimplexConstants.KEY_META);
+            final long messageId = messageMeta.getLong(SimplexConstants.KEY_ITEM_ID);
+            final String itemTs = messageMeta.getString(SimplexConstants.KEY_ITEM_TS);
+
+            // itemTs should not contain nanoseconds:
+            if (isUnexpectedTimestampFormat(itemTs)) {
+                return null;
+            }
+
+            final JSONObject messageContent = chatItem.getJSONObject(SimplexConstants.KEY_CONTENT)
+                    .getJSONObject(SimplexConstants.KEY_MSG_CONTENT);
+            final String messageType = messageContent.getString(SimplexConstants.KEY_TYPE);
+            final String messageText = messageContent.getString(SimplexConstants.KEY_TEXT);
+
+            final JSONObject groupMember = chatItem.getJSONObject(SimplexConstants.KEY_CHAT_DIR)
+                    .getJSONObject(SimplexConstants.KEY_GROUP_MEMBER);
+
+            final JSONObject quotedItem = chatItem.optJSONObject(SimplexConstants.KEY_QUOTED_ITEM);
+            QuotedGroupMessage quotedGroupMessage = null;
+            if (null != quotedItem) {
+                quotedGroupMessage = QuotedGroupMessage.parseQuotedGroupMessage(quotedItem);
+            }
+
+            return new GroupMessage(messageId, groupId, messageType, messageText,
+                    GroupMember.parseGroupMember(groupMember), itemTs, quotedGroupMessage);
+
+        } catch (final JSONException jsonException) {
+            Util.logError(Util.getStackTraceAsString(jsonException), simplexConnection, contactsForReporting,
+                    groupsForReporting);
+            Util.logError("Unexpected JSON:\n" + chatItem.toString(2), simplexConnection, contactsForReporting,
+                    groupsForReporting);
+            throw new IllegalStateException("Unexpected JSON!");
         }
     }
 
-    private static boolean isUnexpectedTimestampFormat(String itemTs) {
+    static boolean isUnexpectedTimestampFormat(String itemTs) {
 
         try {
             TimeUtil.timestampToUtcSeconds(itemTs);
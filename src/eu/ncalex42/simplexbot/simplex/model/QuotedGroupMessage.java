@@ -34,6 +34,11 @@ public class QuotedGroupMessage {
         return member;
     }
 
+    @Override
+    public String toString() {
+        return "QuotedGroupMessage [id=" + id + ", type=" + type + ", text=" + text + ", member=" + member + "]";
+    }
+
     static QuotedGroupMessage parseQuotedGroupMessage(JSONObject quotedGroupMessageJson) {
 
         final long messageId = quotedGroupMessageJson.optLong(SimplexConstants.KEY_ITEM_ID);
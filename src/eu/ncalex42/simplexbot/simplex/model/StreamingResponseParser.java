@@ -0,0 +1,507 @@
+package eu.ncalex42.simplexbot.simplex.model;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.json.JSONException;
+
+import eu.ncalex42.simplexbot.simplex.SimplexConstants;
+import eu.ncalex42.simplexbot.simplex.json.JsonPullParser;
+import eu.ncalex42.simplexbot.simplex.json.JsonPullParser.Token;
+
+/**
+ * Parses the large responses of simplex-cli (chat items and group members) in
+ * one pass with a {@link JsonPullParser}, i.e. without building an
+ * <code>org.json</code> object tree. Only the fields that are used by the
+ * models are extracted, everything else is skipped.
+ *
+ * All methods return <code>null</code> if the response is not of the expected
+ * type (e.g. an error response) and throw a {@link JSONException} if a required
+ * field is missing, in both cases the caller should fall back to the
+ * <code>org.json</code> based parsing, which reports the details.
+ */
+public class StreamingResponseParser {
+
+    private StreamingResponseParser() {
+    }
+
+    /**
+     * Streaming equivalent of {@link GroupMessage#parseMessagesFromGroup}.
+     */
+    public static List<GroupMessage> parseMessagesFromGroup(CharSequence tailResponse) {
+        return parseResponse(tailResponse, SimplexConstants.VALUE_CHAT_ITEMS, SimplexConstants.KEY_CHAT_ITEMS,
+                StreamingResponseParser::readChatItems);
+    }
+
+    /**
+     * Streaming equivalent of {@link GroupMessage#parseMessagesFromChat}.
+     */
+    public static List<GroupMessage> parseMessagesFromChat(CharSequence chatResponse) {
+        return parseResponse(chatResponse, SimplexConstants.VALUE_API_CHAT, SimplexConstants.KEY_CHAT,
+                StreamingResponseParser::readChat);
+    }
+
+    /**
+     * Streaming equivalent of {@link GroupMember#parseGroupMembers}.
+     */
+    public static List<GroupMember> parseGroupMembers(CharSequence groupMemberResponse) {
+        return parseResponse(groupMemberResponse, SimplexConstants.VALUE_GROUP_MEMBERS, SimplexConstants.KEY_GROUP,
+                StreamingResponseParser::readGroup);
+    }
+
+    private static <T> T parseResponse(CharSequence response, String expectedType, String payloadField,
+            Function<JsonPullParser, T> payloadReader) {
+
+        final JsonPullParser parser = new JsonPullParser(response);
+        parser.expect(Token.START_OBJECT);
+
+        T result = null;
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            if (SimplexConstants.KEY_RESP.equals(parser.getText())) {
+                result = readResp(parser, expectedType, payloadField, payloadReader);
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        return result;
+    }
+
+    private static <T> T readResp(JsonPullParser parser, String expectedType, String payloadField,
+            Function<JsonPullParser, T> payloadReader) {
+
+        parser.expect(Token.START_OBJECT);
+
+        boolean wrapped = false;
+        T unwrappedPayload = null;
+        String type = null;
+        T payload = null;
+        while (Token.FIELD_NAME == parser.nextToken()) {
+
+            final String fieldName = parser.getText();
+            if (SimplexConstants.KEY_RIGHT.equals(fieldName)) {
+                // SimpleX >= 6.4
+                wrapped = true;
+                unwrappedPayload = readResp(parser, expectedType, payloadField, payloadReader);
+            } else if (SimplexConstants.KEY_TYPE.equals(fieldName)) {
+                type = readString(parser);
+            } else if (payloadField.equals(fieldName)) {
+                payload = payloadReader.apply(parser);
+            } else {
+                // e.g. 'Left' for errors, which are handled by the caller:
+                parser.skipValue();
+            }
+        }
+
+        if (wrapped) {
+            return unwrappedPayload;
+        }
+        return expectedType.equals(type) ? payload : null;
+    }
+
+    private static List<GroupMessage> readChatItems(JsonPullParser parser) {
+
+        final List<GroupMessage> result = new LinkedList<>();
+
+        parser.expect(Token.START_ARRAY);
+        while (Token.START_OBJECT == parser.nextToken()) {
+
+            ChatInfoFields chatInfo = null;
+            ChatItemFields chatItem = null;
+            while (Token.FIELD_NAME == parser.nextToken()) {
+                switch (parser.getText()) {
+                case SimplexConstants.KEY_CHAT_INFO:
+                    chatInfo = readChatInfo(parser);
+                    break;
+                case SimplexConstants.KEY_CHAT_ITEM:
+                    chatItem = readChatItem(parser);
+                    break;
+                default:
+                    parser.skipValue();
+                }
+            }
+
+            final GroupMessage message = toGroupMessage(chatInfo, chatItem);
+            if (null != message) {
+                result.add(message);
+            }
+        }
+
+        return result;
+    }
+
+    private static List<GroupMessage> readChat(JsonPullParser parser) {
+
+        ChatInfoFields chatInfo = null;
+        final List<ChatItemFields> chatItems = new LinkedList<>();
+
+        parser.expect(Token.START_OBJECT);
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+            case SimplexConstants.KEY_CHAT_INFO:
+                chatInfo = readChatInfo(parser);
+                break;
+            case SimplexConstants.KEY_CHAT_ITEMS:
+                parser.expect(Token.START_ARRAY);
+                while (Token.START_OBJECT == parser.nextToken()) {
+                    chatItems.add(readChatItemFields(parser));
+                }
+                break;
+            default:
+                parser.skipValue();
+            }
+        }
+
+        final List<GroupMessage> result = new LinkedList<>();
+        for (final ChatItemFields chatItem : chatItems) {
+            final GroupMessage message = toGroupMessage(chatInfo, chatItem);
+            if (null != message) {
+                result.add(message);
+            }
+        }
+        return result;
+    }
+
+    private static List<GroupMember> readGroup(JsonPullParser parser) {
+
+        List<GroupMember> result = null;
+
+        parser.expect(Token.START_OBJECT);
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            if (SimplexConstants.KEY_MEMBERS.equals(parser.getText())) {
+                result = new LinkedList<>();
+                parser.expect(Token.START_ARRAY);
+                while (Token.START_OBJECT == parser.nextToken()) {
+                    result.add(readGroupMemberFields(parser));
+                }
+            } else {
+                parser.skipValue();
+            }
+        }
+
+        if (null == result) {
+            throw new JSONException("'" + SimplexConstants.KEY_MEMBERS + "' not found");
+        }
+        return result;
+    }
+
+    /**
+     * Applies the same checks as the <code>org.json</code> based parsing.
+     *
+     * @return the message or <code>null</code> if the chat item is no group
+     *         message
+     */
+    private static GroupMessage toGroupMessage(ChatInfoFields chatInfo, ChatItemFields chatItem) {
+
+        if ((null == chatInfo) || (null == chatItem)) {
+            throw new JSONException("'" + SimplexConstants.KEY_CHAT_INFO + "' or '" + SimplexConstants.KEY_CHAT_ITEM
+                    + "' not found");
+        }
+
+        if (!SimplexConstants.VALUE_GROUP.equals(require(chatInfo.type, SimplexConstants.KEY_TYPE))) {
+            return null;
+        }
+
+        if (!SimplexConstants.VALUE_CONTENT_TYPE_MSG_CONTENT
+                .equals(require(chatItem.contentType, SimplexConstants.KEY_CONTENT))) {
+            return null;
+        }
+
+        if (null == chatInfo.groupId) {
+            throw new JSONException("'" + SimplexConstants.KEY_GROUP_ID + "' not found");
+        }
+        if (null == chatItem.itemId) {
+            throw new JSONException("'" + SimplexConstants.KEY_ITEM_ID + "' not found");
+        }
+
+        // itemTs should not contain nanoseconds:
+        if (GroupMessage.isUnexpectedTimestampFormat(require(chatItem.itemTs, SimplexConstants.KEY_ITEM_TS))) {
+            return null;
+        }
+
+        return new GroupMessage(chatItem.itemId, chatInfo.groupId,
+                require(chatItem.messageType, SimplexConstants.KEY_MSG_CONTENT),
+                require(chatItem.messageText, SimplexConstants.KEY_TEXT),
+                require(chatItem.member, SimplexConstants.KEY_GROUP_MEMBER), chatItem.itemTs,
+                chatItem.quotedGroupMessage);
+    }
+
+    private static ChatInfoFields readChatInfo(JsonPullParser parser) {
+
+        final ChatInfoFields result = new ChatInfoFields();
+
+        parser.expect(Token.START_OBJECT);
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+            case SimplexConstants.KEY_TYPE:
+                result.type = readString(parser);
+                break;
+            case SimplexConstants.KEY_GROUP_INFO:
+                parser.expect(Token.START_OBJECT);
+                while (Token.FIELD_NAME == parser.nextToken()) {
+                    if (SimplexConstants.KEY_GROUP_ID.equals(parser.getText())) {
+                        result.groupId = readLong(parser);
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+                break;
+            default:
+                parser.skipValue();
+            }
+        }
+
+        return result;
+    }
+
+    private static ChatItemFields readChatItem(JsonPullParser parser) {
+        parser.expect(Token.START_OBJECT);
+        return readChatItemFields(parser);
+    }
+
+    /**
+     * Expects that the opening bracket of the chat item was already read.
+     */
+    private static ChatItemFields readChatItemFields(JsonPullParser parser) {
+
+        final ChatItemFields result = new ChatItemFields();
+
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+
+            case SimplexConstants.KEY_CHAT_DIR:
+                result.member = readChatDirMember(parser);
+                break;
+
+            case SimplexConstants.KEY_META:
+                parser.expect(Token.START_OBJECT);
+                while (Token.FIELD_NAME == parser.nextToken()) {
+                    switch (parser.getText()) {
+                    case SimplexConstants.KEY_ITEM_ID:
+                        result.itemId = readLong(parser);
+                        break;
+                    case SimplexConstants.KEY_ITEM_TS:
+                        result.itemTs = readString(parser);
+                        break;
+                    default:
+                        parser.skipValue();
+                    }
+                }
+                break;
+
+            case SimplexConstants.KEY_CONTENT:
+                parser.expect(Token.START_OBJECT);
+                while (Token.FIELD_NAME == parser.nextToken()) {
+                    switch (parser.getText()) {
+                    case SimplexConstants.KEY_TYPE:
+                        result.contentType = readString(parser);
+                        break;
+                    case SimplexConstants.KEY_MSG_CONTENT:
+                        final String[] typeAndText = readMessageContent(parser);
+                        result.messageType = typeAndText[0];
+                        result.messageText = typeAndText[1];
+                        break;
+                    default:
+                        parser.skipValue();
+                    }
+                }
+                break;
+
+            case SimplexConstants.KEY_QUOTED_ITEM:
+                result.quotedGroupMessage = readQuotedItem(parser);
+                break;
+
+            default:
+                parser.skipValue();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the group member of the chat direction or <code>null</code> if
+     *         there is none
+     */
+    private static GroupMember readChatDirMember(JsonPullParser parser) {
+
+        if (Token.START_OBJECT != parser.nextToken()) {
+            return null;
+        }
+
+        GroupMember result = null;
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            if (SimplexConstants.KEY_GROUP_MEMBER.equals(parser.getText())) {
+                if (Token.START_OBJECT == parser.nextToken()) {
+                    result = readGroupMemberFields(parser);
+                }
+            } else {
+                parser.skipValue();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the type and the text of a message content
+     */
+    private static String[] readMessageContent(JsonPullParser parser) {
+
+        final String[] result = new String[2];
+
+        parser.expect(Token.START_OBJECT);
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+            case SimplexConstants.KEY_TYPE:
+                result[0] = readString(parser);
+                break;
+            case SimplexConstants.KEY_TEXT:
+                result[1] = readString(parser);
+                break;
+            default:
+                parser.skipValue();
+            }
+        }
+
+        require(result[0], SimplexConstants.KEY_TYPE);
+        require(result[1], SimplexConstants.KEY_TEXT);
+        return result;
+    }
+
+    private static QuotedGroupMessage readQuotedItem(JsonPullParser parser) {
+
+        if (Token.START_OBJECT != parser.nextToken()) {
+            return null;
+        }
+
+        long itemId = 0;
+        String[] typeAndText = null;
+        GroupMember member = null;
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+            case SimplexConstants.KEY_ITEM_ID:
+                if (Token.NUMBER == parser.nextToken()) {
+                    itemId = parser.getLong();
+                }
+                break;
+            case SimplexConstants.KEY_CONTENT:
+                typeAndText = readMessageContent(parser);
+                break;
+            case SimplexConstants.KEY_CHAT_DIR:
+                member = readChatDirMember(parser);
+                break;
+            default:
+                parser.skipValue();
+            }
+        }
+
+        require(typeAndText, SimplexConstants.KEY_CONTENT);
+        return new QuotedGroupMessage(itemId, typeAndText[0], typeAndText[1], member);
+    }
+
+    /**
+     * Expects that the opening bracket of the group member was already read.
+     */
+    private static GroupMember readGroupMemberFields(JsonPullParser parser) {
+
+        String localDisplayName = null;
+        String displayName = null;
+        Long groupMemberId = null;
+        String role = null;
+        String status = null;
+        Boolean blockedByAdmin = null;
+        String createdAt = "";
+
+        while (Token.FIELD_NAME == parser.nextToken()) {
+            switch (parser.getText()) {
+
+            case SimplexConstants.KEY_LOCAL_DISPLAY_NAME:
+                localDisplayName = readString(parser);
+                break;
+
+            case SimplexConstants.KEY_MEMBER_PROFILE:
+                parser.expect(Token.START_OBJECT);
+                while (Token.FIELD_NAME == parser.nextToken()) {
+                    if (SimplexConstants.KEY_DISPLAY_NAME.equals(parser.getText())) {
+                        displayName = readString(parser);
+                    } else {
+                        parser.skipValue();
+                    }
+                }
+                break;
+
+            case SimplexConstants.KEY_GROUP_MEMBER_ID:
+                groupMemberId = readLong(parser);
+                break;
+
+            case SimplexConstants.KEY_MEMBER_ROLE:
+                role = readString(parser);
+                break;
+
+            case SimplexConstants.KEY_MEMBER_STATUS:
+                status = readString(parser);
+                break;
+
+            case SimplexConstants.KEY_BLOCKED_BY_ADMIN:
+                parser.nextToken();
+                blockedByAdmin = parser.getBoolean();
+                break;
+
+            case SimplexConstants.KEY_CREATED_AT:
+                final Token token = parser.nextToken();
+                if (Token.STRING == token) {
+                    createdAt = parser.getText();
+                } else if (Token.NULL != token) {
+                    throw new JSONException("Unexpected '" + SimplexConstants.KEY_CREATED_AT + "'");
+                }
+                break;
+
+            default:
+                parser.skipValue();
+            }
+        }
+
+        return new GroupMember(require(localDisplayName, SimplexConstants.KEY_LOCAL_DISPLAY_NAME),
+                require(displayName, SimplexConstants.KEY_DISPLAY_NAME),
+                require(groupMemberId, SimplexConstants.KEY_GROUP_MEMBER_ID),
+                require(role, SimplexConstants.KEY_MEMBER_ROLE), require(status, SimplexConstants.KEY_MEMBER_STATUS),
+                require(blockedByAdmin, SimplexConstants.KEY_BLOCKED_BY_ADMIN), createdAt);
+    }
+
+    private static String readString(JsonPullParser parser) {
+
+        if (Token.STRING != parser.nextToken()) {
+            throw new JSONException("String expected but found " + parser.getCurrentToken());
+        }
+        return parser.getText();
+    }
+
+    private static long readLong(JsonPullParser parser) {
+        parser.nextToken();
+        return parser.getLong();
+    }
+
+    private static <T> T require(T value, String fieldName) {
+
+        if (null == value) {
+            throw new JSONException("'" + fieldName + "' not found");
+        }
+        return value;
+    }
+
+    private static class ChatInfoFields {
+        private String type;
+        private Long groupId;
+    }
+
+    private static class ChatItemFields {
+        private GroupMember member;
+        private Long itemId;
+        private String itemTs;
+        private String contentType;
+        private String messageType;
+        private String messageText;
+        private QuotedGroupMessage quotedGroupMessage;
+    }
+}
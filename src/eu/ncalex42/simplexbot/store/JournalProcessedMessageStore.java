@@ -0,0 +1,322 @@
+package eu.ncalex42.simplexbot.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.simplex.ProcessedMessageIndex;
+import eu.ncalex42.simplexbot.simplex.SimplexConnection;
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * A {@link ProcessedMessageStore} that appends one fixed size record per
+ * processed message to a journal file instead of rewriting the whole cache.
+ *
+ * The file starts with a header (magic number and the number of messages to
+ * retrieve), followed by records of message id, group id and a CRC32 of both.
+ * Added messages are buffered and written with one <code>write</code> per
+ * {@link #commit()}, the file is forced to disk at most once per
+ * {@link BotConfig#getJournalSyncIntervalMillis()}. When the journal has grown
+ * to {@value #COMPACTION_FACTOR} times the number of messages that are kept,
+ * the newest messages are written to a temporary file which then atomically
+ * replaces the journal.
+ *
+ * A record that was only partially written or is corrupted (e.g. after a
+ * crash) ends the journal, the file is truncated at this point on opening.
+ * Cache files of the old text format are converted on opening.
+ */
+public class JournalProcessedMessageStore implements ProcessedMessageStore {
+
+    private static final int MAGIC = 0x53584A31; // "SXJ1"
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int RECORD_SIZE = 2 * Long.BYTES + Integer.BYTES;
+    private static final int SAFETY_BUFFER = 500;
+    private static final int COMPACTION_FACTOR = 2;
+    private static final String TEMP_FILE_SUFFIX = ".compact";
+
+    private final Path file;
+    private final int numberOfMessagesToRetrieve;
+    private final int capacity;
+
+    // newest last, mirrors the eviction order of 'index':
+    private final ArrayDeque<GroupMessage> messages = new ArrayDeque<>();
+    private final ProcessedMessageIndex index;
+    private final ByteBuffer pendingRecords;
+
+    private FileChannel channel;
+    private long recordsInFile = 0;
+    private long lastSyncMillis = System.currentTimeMillis();
+    private boolean unsyncedRecords = false;
+
+    private JournalProcessedMessageStore(Path file, int numberOfMessagesToRetrieve) {
+        this.file = file;
+        this.numberOfMessagesToRetrieve = numberOfMessagesToRetrieve;
+        capacity = numberOfMessagesToRetrieve + SAFETY_BUFFER;
+        index = new ProcessedMessageIndex(capacity);
+        pendingRecords = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    }
+
+    /**
+     * Opens the journal, recovers its content and creates it if necessary.
+     * Outdated or invalid files are reset with a warning, i.e. the store is
+     * empty then.
+     */
+    public static JournalProcessedMessageStore open(Path file, int numberOfMessagesToRetrieve,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting)
+            throws IOException {
+
+        final JournalProcessedMessageStore store = new JournalProcessedMessageStore(file, numberOfMessagesToRetrieve);
+        store.recover(simplexConnection, contactsForReporting, groupsForReporting);
+        return store;
+    }
+
+    private void recover(SimplexConnection simplexConnection, List<String> contactsForReporting,
+            List<String> groupsForReporting) throws IOException {
+
+        if (!Files.exists(file)) {
+            rewrite();
+            return;
+        }
+
+        final byte[] content = Files.readAllBytes(file);
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+
+        if ((content.length < HEADER_SIZE) || (MAGIC != buffer.getInt())) {
+            final String[] lines = new String(content, StandardCharsets.UTF_8).split("\n");
+            final List<GroupMessage> importedMessages = importTextFile(lines);
+            if (null == importedMessages) {
+                Util.logWarning("Invalid cache file found, resetting cache: " + file.toAbsolutePath(),
+                        simplexConnection, contactsForReporting, groupsForReporting);
+            } else if (numberOfMessagesToRetrieve > Integer.parseInt(lines[0].strip())) {
+                Util.logWarning("Outdated cache file found, resetting cache: " + file.toAbsolutePath(),
+                        simplexConnection, contactsForReporting, groupsForReporting);
+            } else {
+                for (final GroupMessage message : importedMessages) {
+                    remember(message.getId(), message.getGroupId());
+                }
+            }
+            rewrite();
+            return;
+        }
+
+        if (numberOfMessagesToRetrieve > buffer.getInt()) {
+            Util.logWarning("Outdated cache file found, resetting cache: " + file.toAbsolutePath(), simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            rewrite();
+            return;
+        }
+
+        final CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_SIZE) {
+
+            final int start = buffer.position();
+            final long messageId = buffer.getLong();
+            final long groupId = buffer.getLong();
+            final int checksum = buffer.getInt();
+
+            crc.reset();
+            crc.update(content, start, 2 * Long.BYTES);
+            if ((int) crc.getValue() != checksum) {
+                buffer.position(start);
+                break;
+            }
+
+            remember(messageId, groupId);
+            recordsInFile++;
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        if (buffer.position() < content.length) {
+            Util.logWarning("Truncating incomplete or corrupted cache file after " + recordsInFile + " records: "
+                    + file.toAbsolutePath(), simplexConnection, contactsForReporting, groupsForReporting);
+            channel.truncate(buffer.position());
+            channel.force(true);
+        }
+        channel.position(buffer.position());
+
+        if (recordsInFile >= (long) COMPACTION_FACTOR * capacity) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Reads the old format: the number of messages to retrieve in the first
+     * line, <code>messageId,groupId;</code> pairs in the second line.
+     *
+     * @return <code>null</code> if the content has not this format
+     */
+    private static List<GroupMessage> importTextFile(String[] lines) {
+
+        if (2 != lines.length) {
+            return null;
+        }
+
+        final List<GroupMessage> result = new LinkedList<>();
+        try {
+            Integer.parseInt(lines[0].strip());
+
+            for (final String message : lines[1].split(";")) {
+                final String[] metaDataPair = message.split(",");
+                if ((metaDataPair.length != 2) || metaDataPair[0].isBlank() || metaDataPair[1].isBlank()) {
+                    continue;
+                }
+                result.add(new GroupMessage(Long.parseLong(metaDataPair[0].strip()),
+                        Long.parseLong(metaDataPair[1].strip()), GroupMessage.TYPE_UNKNOWN, null, null, null, null));
+            }
+        } catch (final NumberFormatException ex) {
+            return null;
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized List<GroupMessage> getProcessedMessages() {
+        return new LinkedList<>(messages);
+    }
+
+    @Override
+    public synchronized void add(GroupMessage message) throws IOException {
+
+        if (!remember(message.getId(), message.getGroupId())) {
+            return;
+        }
+
+        if (!pendingRecords.hasRemaining()) {
+            writePendingRecords();
+        }
+        putRecord(pendingRecords, message.getId(), message.getGroupId());
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+
+        writePendingRecords();
+
+        if (recordsInFile >= (long) COMPACTION_FACTOR * capacity) {
+            rewrite(); // forces the new file anyway
+            return;
+        }
+
+        final long syncInterval = BotConfig.getJournalSyncIntervalMillis();
+        if (unsyncedRecords && ((System.currentTimeMillis() - lastSyncMillis) >= syncInterval)) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+
+        if (null == channel) {
+            return;
+        }
+
+        try {
+            writePendingRecords();
+            if (unsyncedRecords) {
+                sync();
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the message is already known
+     */
+    private boolean remember(long messageId, long groupId) {
+
+        if (ProcessedMessageIndex.Result.NEW != index.update(groupId, messageId,
+                ProcessedMessageIndex.UNKNOWN_TEXT_HASH)) {
+            return false;
+        }
+
+        if (messages.size() == capacity) {
+            messages.removeFirst(); // evicted by 'index' as well
+        }
+        messages.addLast(new GroupMessage(messageId, groupId, GroupMessage.TYPE_UNKNOWN, null, null, null, null));
+        return true;
+    }
+
+    private void writePendingRecords() throws IOException {
+
+        if (0 == pendingRecords.position()) {
+            return;
+        }
+
+        pendingRecords.flip();
+        final long records = pendingRecords.remaining() / RECORD_SIZE;
+        while (pendingRecords.hasRemaining()) {
+            channel.write(pendingRecords);
+        }
+        pendingRecords.clear();
+
+        recordsInFile += records;
+        unsyncedRecords = true;
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        lastSyncMillis = System.currentTimeMillis();
+        unsyncedRecords = false;
+    }
+
+    /**
+     * Writes the current messages to a temporary file and replaces the journal
+     * with it, so that a crash leaves either the old or the new file.
+     */
+    private void rewrite() throws IOException {
+
+        if (null != channel) {
+            channel.close();
+            channel = null;
+        }
+        pendingRecords.clear();
+
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+        final ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + (messages.size() * RECORD_SIZE));
+        content.putInt(MAGIC);
+        content.putInt(numberOfMessagesToRetrieve);
+        for (final GroupMessage message : messages) {
+            putRecord(content, message.getId(), message.getGroupId());
+        }
+        content.flip();
+
+        try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                tempChannel.write(content);
+            }
+            tempChannel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        recordsInFile = messages.size();
+        lastSyncMillis = System.currentTimeMillis();
+        unsyncedRecords = false;
+    }
+
+    private static void putRecord(ByteBuffer buffer, long messageId, long groupId) {
+
+        final int start = buffer.position();
+        buffer.putLong(messageId);
+        buffer.putLong(groupId);
+
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, 2 * Long.BYTES);
+        buffer.putInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,271 @@
+package eu.ncalex42.simplexbot.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.List;
+
+import eu.ncalex42.simplexbot.BotConfig;
+import eu.ncalex42.simplexbot.Util;
+import eu.ncalex42.simplexbot.simplex.ProcessedMessageIndex;
+import eu.ncalex42.simplexbot.simplex.SimplexConnection;
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * A {@link ProcessedMessageStore} backed by a memory-mapped file of fixed size.
+ *
+ * The file consists of a {@value #HEADER_SIZE} byte header (magic number, the
+ * number of messages to retrieve, the capacity, the number of used slots and
+ * the next slot to write) and a ring of 16 byte slots (message id and group
+ * id). Adding a message writes its slot and then advances the head in the
+ * mapped buffer, so nothing has to be parsed or rewritten. {@link #commit()}
+ * forces the mapped pages at most once per
+ * {@link BotConfig#getJournalSyncIntervalMillis()}.
+ *
+ * Files of another format (e.g. of {@link JournalProcessedMessageStore}) or
+ * another capacity are converted on opening.
+ */
+public class MappedProcessedMessageStore implements ProcessedMessageStore {
+
+    private static final int MAGIC = 0x53585231; // "SXR1"
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 2 * Long.BYTES;
+    private static final int SAFETY_BUFFER = 500;
+    private static final String TEMP_FILE_SUFFIX = ".new";
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_NUMBER_OF_MESSAGES = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_HEAD = 16;
+
+    private final Path file;
+    private final int numberOfMessagesToRetrieve;
+    private final int capacity;
+    private final ProcessedMessageIndex index;
+
+    private MappedByteBuffer buffer;
+    private int count = 0;
+    private int head = 0;
+    private long lastSyncMillis = System.currentTimeMillis();
+    private boolean unsyncedSlots = false;
+
+    private MappedProcessedMessageStore(Path file, int numberOfMessagesToRetrieve) {
+        this.file = file;
+        this.numberOfMessagesToRetrieve = numberOfMessagesToRetrieve;
+        capacity = numberOfMessagesToRetrieve + SAFETY_BUFFER;
+        index = new ProcessedMessageIndex(capacity);
+    }
+
+    /**
+     * Maps the ring file and creates or converts it if necessary. Outdated or
+     * invalid files are reset with a warning, i.e. the store is empty then.
+     */
+    public static MappedProcessedMessageStore open(Path file, int numberOfMessagesToRetrieve,
+            SimplexConnection simplexConnection, List<String> contactsForReporting, List<String> groupsForReporting)
+            throws IOException {
+
+        final MappedProcessedMessageStore store = new MappedProcessedMessageStore(file, numberOfMessagesToRetrieve);
+        store.recover(simplexConnection, contactsForReporting, groupsForReporting);
+        return store;
+    }
+
+    private void recover(SimplexConnection simplexConnection, List<String> contactsForReporting,
+            List<String> groupsForReporting) throws IOException {
+
+        if (!Files.exists(file)) {
+            create(List.of());
+            return;
+        }
+
+        if (!isRingFile()) {
+            final List<GroupMessage> importedMessages;
+            try (JournalProcessedMessageStore journal = JournalProcessedMessageStore.open(file,
+                    numberOfMessagesToRetrieve, simplexConnection, contactsForReporting, groupsForReporting)) {
+                importedMessages = journal.getProcessedMessages();
+            }
+            create(importedMessages);
+            return;
+        }
+
+        buffer = map(file);
+        final int numberFromFile = buffer.getInt(OFFSET_NUMBER_OF_MESSAGES);
+        final int capacityFromFile = buffer.getInt(OFFSET_CAPACITY);
+        final int countFromFile = buffer.getInt(OFFSET_COUNT);
+        final int headFromFile = buffer.getInt(OFFSET_HEAD);
+
+        if ((capacityFromFile < 1) || (Files.size(file) != (HEADER_SIZE + ((long) capacityFromFile * SLOT_SIZE)))
+                || (countFromFile < 0) || (countFromFile > capacityFromFile) || (headFromFile < 0)
+                || (headFromFile >= capacityFromFile)) {
+            Util.logWarning("Invalid cache file found, resetting cache: " + file.toAbsolutePath(), simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            create(List.of());
+            return;
+        }
+
+        if (numberOfMessagesToRetrieve > numberFromFile) {
+            Util.logWarning("Outdated cache file found, resetting cache: " + file.toAbsolutePath(), simplexConnection,
+                    contactsForReporting, groupsForReporting);
+            create(List.of());
+            return;
+        }
+
+        final List<GroupMessage> messages = readSlots(capacityFromFile, countFromFile, headFromFile);
+        if ((capacityFromFile != capacity) || (numberFromFile != numberOfMessagesToRetrieve)) {
+            create(messages);
+            return;
+        }
+
+        count = countFromFile;
+        head = headFromFile;
+        for (final GroupMessage message : messages) {
+            index.update(message.getGroupId(), message.getId(), ProcessedMessageIndex.UNKNOWN_TEXT_HASH);
+        }
+    }
+
+    private boolean isRingFile() throws IOException {
+
+        if (Files.size(file) < HEADER_SIZE) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining() && (channel.read(magic) >= 0)) {
+                // read the whole magic number
+            }
+            return !magic.hasRemaining() && (MAGIC == magic.getInt(0));
+        }
+    }
+
+    /**
+     * @return the messages of the ring, oldest first
+     */
+    private List<GroupMessage> readSlots(int slots, int usedSlots, int nextSlot) {
+
+        final List<GroupMessage> result = new LinkedList<>();
+        for (int i = 0; i < usedSlots; i++) {
+            final int slot = (nextSlot - usedSlots + i + slots) % slots;
+            final int offset = HEADER_SIZE + (slot * SLOT_SIZE);
+            result.add(new GroupMessage(buffer.getLong(offset), buffer.getLong(offset + Long.BYTES),
+                    GroupMessage.TYPE_UNKNOWN, null, null, null, null));
+        }
+        return result;
+    }
+
+    /**
+     * Writes a new ring file with the newest of the given messages to a
+     * temporary file, replaces the cache file with it and maps it.
+     */
+    private void create(List<GroupMessage> messages) throws IOException {
+
+        buffer = null;
+        count = 0;
+        head = 0;
+
+        final ByteBuffer content = ByteBuffer.allocate(HEADER_SIZE + (capacity * SLOT_SIZE));
+        content.putInt(OFFSET_MAGIC, MAGIC);
+        content.putInt(OFFSET_NUMBER_OF_MESSAGES, numberOfMessagesToRetrieve);
+        content.putInt(OFFSET_CAPACITY, capacity);
+        for (final GroupMessage message : messages) {
+            if (ProcessedMessageIndex.Result.NEW == index.update(message.getGroupId(), message.getId(),
+                    ProcessedMessageIndex.UNKNOWN_TEXT_HASH)) {
+                putSlot(content, message);
+            }
+        }
+        content.putInt(OFFSET_COUNT, count);
+        content.putInt(OFFSET_HEAD, head);
+
+        final Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+        try (FileChannel tempChannel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) {
+                tempChannel.write(content);
+            }
+            tempChannel.force(true);
+        }
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        buffer = map(file);
+        lastSyncMillis = System.currentTimeMillis();
+        unsyncedSlots = false;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+
+        // the mapping stays valid after closing the channel:
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    /**
+     * Writes the slot at the head and advances the head, the header is not
+     * updated.
+     */
+    private void putSlot(ByteBuffer target, GroupMessage message) {
+
+        final int offset = HEADER_SIZE + (head * SLOT_SIZE);
+        target.putLong(offset, message.getId());
+        target.putLong(offset + Long.BYTES, message.getGroupId());
+
+        head = (head + 1) % capacity;
+        count = Math.min(count + 1, capacity);
+    }
+
+    @Override
+    public synchronized List<GroupMessage> getProcessedMessages() {
+        return readSlots(capacity, count, head);
+    }
+
+    @Override
+    public synchronized void add(GroupMessage message) throws IOException {
+
+        if (null == buffer) {
+            throw new IOException("Cache file is closed: " + file.toAbsolutePath());
+        }
+
+        if (ProcessedMessageIndex.Result.NEW != index.update(message.getGroupId(), message.getId(),
+                ProcessedMessageIndex.UNKNOWN_TEXT_HASH)) {
+            return;
+        }
+
+        // the slot first, so that the header never points to an unwritten slot:
+        putSlot(buffer, message);
+        buffer.putInt(OFFSET_COUNT, count);
+        buffer.putInt(OFFSET_HEAD, head);
+        unsyncedSlots = true;
+    }
+
+    @Override
+    public synchronized void commit() {
+
+        final long syncInterval = BotConfig.getJournalSyncIntervalMillis();
+        if (unsyncedSlots && ((System.currentTimeMillis() - lastSyncMillis) >= syncInterval)) {
+            sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (null == buffer) {
+            return;
+        }
+        if (unsyncedSlots) {
+            sync();
+        }
+        buffer = null; // unmapped by the garbage collector
+    }
+
+    private void sync() {
+        buffer.force();
+        lastSyncMillis = System.currentTimeMillis();
+        unsyncedSlots = false;
+    }
+}
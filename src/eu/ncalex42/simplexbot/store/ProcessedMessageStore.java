@@ -0,0 +1,31 @@
+package eu.ncalex42.simplexbot.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import eu.ncalex42.simplexbot.simplex.model.GroupMessage;
+
+/**
+ * Persists which group messages were already processed by a module, so that
+ * they are not processed again after a restart.
+ */
+public interface ProcessedMessageStore extends Closeable {
+
+    /**
+     * @return the stored messages, oldest first; only their ids are known, i.e.
+     *         their type is {@link GroupMessage#TYPE_UNKNOWN}
+     */
+    List<GroupMessage> getProcessedMessages() throws IOException;
+
+    /**
+     * Adds a processed message, it is only durable after {@link #commit()}.
+     */
+    void add(GroupMessage message) throws IOException;
+
+    /**
+     * Makes the added messages durable, typically called once per processed
+     * batch of messages.
+     */
+    void commit() throws IOException;
+}